@@ -0,0 +1,52 @@
+# Compare two JMH result files (JSON), as written by 'make bench':
+#
+#     python3 compare.py BASELINE RESULTS [THRESHOLD]
+#
+# prints, for each benchmark and parameter setting in both, the baseline
+# and current scores, their ratio, and the allocation per operation, and
+# exits with status 1 if any benchmark is more than THRESHOLD percent
+# (default 10) slower than its baseline.
+
+import json, sys
+
+ALLOC = "·gc.alloc.rate.norm"
+
+def load(name):
+    with open(name) as inp:
+        runs = json.load(inp)
+    result = {}
+    for run in runs:
+        params = ",".join("%s=%s" % p for p in sorted(run.get("params", {})
+                                                      .items()))
+        key = run["benchmark"].rsplit(".", 2)[-2:]
+        key = ".".join(key) + ("(" + params + ")" if params else "")
+        metric = run["primaryMetric"]
+        alloc = run.get("secondaryMetrics", {}).get(ALLOC, {})
+        result[key] = (run["mode"], metric["score"], metric["scoreUnit"],
+                       alloc.get("score"))
+    return result
+
+def main(args):
+    base, current = load(args[0]), load(args[1])
+    threshold = float(args[2]) if len(args) > 2 else 10.0
+    slower = 0
+    for key in sorted(current):
+        if key not in base:
+            print("%-60s %s (new)" % (key, current[key][1]))
+            continue
+        mode, score, unit, alloc = current[key]
+        old = base[key][1]
+        # Throughput modes score higher when faster; the others lower.
+        ratio = old / score if mode == "thrpt" else score / old
+        flag = ""
+        if ratio > 1 + threshold / 100:
+            flag = "  SLOWER"
+            slower += 1
+        print("%-60s %12.3f -> %12.3f %s  x%.2f%s%s"
+              % (key, old, score, unit, ratio,
+                 "" if alloc is None else "  %.0f B/op" % alloc, flag))
+    print("%d of %d benchmarks more than %g%% slower than baseline"
+          % (slower, len(current), threshold))
+    return 1 if slower else 0
+
+sys.exit(main(sys.argv[1:]))
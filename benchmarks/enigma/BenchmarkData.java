@@ -0,0 +1,160 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/** Generated configurations and messages for the benchmarks.  The
+ *  alphabet of size N is the upper-case letters if N <= 26 and N
+ *  consecutive CJK ideographs otherwise, so that large alphabets
+ *  exercise the same paths as real text in them.  Everything is
+ *  generated from a fixed seed, so runs are comparable.
+ *  @author Cheng Zhu
+ */
+final class BenchmarkData {
+
+    /** Not instantiable. */
+    private BenchmarkData() {
+    }
+
+    /** Return the characters of the alphabet of size SIZE. */
+    static String alphabet(int size) {
+        int first = size <= 26 ? 'A' : 0x4e00;
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < size; i += 1) {
+            result.appendCodePoint(first + i);
+        }
+        return result.toString();
+    }
+
+    /** Return the text of a configuration with an alphabet of size SIZE
+     *  and SLOTS rotor slots, of which all but the reflector and the
+     *  leftmost rotor have pawls.  It describes reflectors R0 and R1,
+     *  fixed rotors F0 and F1, and moving rotors M0 .. M(SLOTS-3), each
+     *  with a notch every 8 positions.  SIZE must be even. */
+    static String config(int size, int slots) {
+        Random rand = new Random(46L * size + slots);
+        String chars = alphabet(size);
+        int[] symbols = chars.codePoints().toArray();
+        StringBuilder result = new StringBuilder(chars).append(" ")
+            .append(slots).append(" ").append(slots - 2).append("\n");
+        for (int k = 0; k < 2; k += 1) {
+            result.append("R").append(k).append(" R ")
+                .append(pairs(symbols, rand)).append("\n");
+        }
+        for (int k = 0; k < 2; k += 1) {
+            result.append("F").append(k).append(" N ")
+                .append(cycle(symbols, rand)).append("\n");
+        }
+        for (int k = 0; k < slots - 2; k += 1) {
+            result.append("M").append(k).append(" M");
+            for (int x = k % 8; x < size; x += 8) {
+                result.appendCodePoint(symbols[x]);
+            }
+            result.append(" ").append(cycle(symbols, rand)).append("\n");
+        }
+        return result.toString();
+    }
+
+    /** Return the settings line for the machine of config(SIZE, SLOTS),
+     *  using reflector R0, fixed rotor F0, and all the moving rotors. */
+    static String settingsLine(int size, int slots) {
+        Random rand = new Random(size ^ 46L * slots);
+        String chars = alphabet(size);
+        int[] symbols = chars.codePoints().toArray();
+        StringBuilder result = new StringBuilder("* R0 F0");
+        for (int k = slots - 3; k >= 0; k -= 1) {
+            result.append(" M").append(k);
+        }
+        result.append(" ");
+        for (int k = 1; k < slots; k += 1) {
+            result.appendCodePoint(symbols[rand.nextInt(size)]);
+        }
+        return result.append(" ").append(pairs(symbols, rand, 10))
+            .toString();
+    }
+
+    /** Return the rotor names of settingsLine(SIZE, SLOTS). */
+    static String[] rotors(int slots) {
+        String[] result = new String[slots];
+        result[0] = "R0";
+        result[1] = "F0";
+        for (int k = 2; k < slots; k += 1) {
+            result[k] = "M" + (slots - 1 - k);
+        }
+        return result;
+    }
+
+    /** Return LENGTH random indices into an alphabet of size SIZE. */
+    static int[] message(int size, int length) {
+        Random rand = new Random(length * 31L + size);
+        int[] result = new int[length];
+        for (int i = 0; i < length; i += 1) {
+            result[i] = rand.nextInt(size);
+        }
+        return result;
+    }
+
+    /** Return an input file of at least BYTES bytes for the machine of
+     *  config(SIZE, SLOTS): a settings line every 500 lines, each
+     *  followed by lines of 60 random characters in groups of five. */
+    static String input(int size, int slots, long bytes) {
+        Random rand = new Random(bytes);
+        int[] symbols = alphabet(size).codePoints().toArray();
+        String settings = settingsLine(size, slots);
+        StringBuilder result = new StringBuilder();
+        for (int line = 0; result.length() < bytes; line += 1) {
+            if (line % 500 == 0) {
+                result.append(settings).append("\n");
+            }
+            for (int i = 0; i < 60; i += 1) {
+                if (i > 0 && i % 5 == 0) {
+                    result.append(' ');
+                }
+                result.appendCodePoint(symbols[rand.nextInt(size)]);
+            }
+            result.append("\n");
+        }
+        return result.toString();
+    }
+
+    /** Return a random permutation of SYMBOLS, using RAND, as one
+     *  cycle. */
+    private static String cycle(int[] symbols, Random rand) {
+        List<Integer> order = shuffled(symbols, rand);
+        StringBuilder result = new StringBuilder("(");
+        for (int ch : order) {
+            result.appendCodePoint(ch);
+        }
+        return result.append(")").toString();
+    }
+
+    /** Return a random derangement of SYMBOLS made of two-cycles, using
+     *  RAND. */
+    private static String pairs(int[] symbols, Random rand) {
+        return pairs(symbols, rand, symbols.length / 2);
+    }
+
+    /** Return COUNT disjoint random two-cycles of SYMBOLS, using
+     *  RAND. */
+    private static String pairs(int[] symbols, Random rand, int count) {
+        List<Integer> order = shuffled(symbols, rand);
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < 2 * count && i + 1 < order.size(); i += 2) {
+            result.append("(").appendCodePoint(order.get(i))
+                .appendCodePoint(order.get(i + 1)).append(")");
+        }
+        return result.toString();
+    }
+
+    /** Return SYMBOLS in a random order, using RAND. */
+    private static List<Integer> shuffled(int[] symbols, Random rand) {
+        List<Integer> result = new ArrayList<>();
+        for (int ch : symbols) {
+            result.add(ch);
+        }
+        Collections.shuffle(result, rand);
+        return result;
+    }
+}
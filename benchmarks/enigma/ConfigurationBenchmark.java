@@ -0,0 +1,54 @@
+package enigma;
+
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmark of parsing a configuration file: the alphabet and the
+ *  rotor descriptions (Configuration.readAllRotor), including building
+ *  the rotors' permutations.  Permutations are interned, so every parse
+ *  after the first finds them in the PermutationStore; fresh wiring
+ *  would be slower.
+ *  @author Cheng Zhu
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ConfigurationBenchmark {
+
+    /** Alphabet size. */
+    @Param({ "26", "256", "4096" })
+    public int size;
+
+    /** Number of rotor slots, and so of moving rotors described. */
+    @Param({ "5", "10" })
+    public int slots;
+
+    /** Generate the configuration text. */
+    @Setup
+    public void setup() {
+        _text = BenchmarkData.config(size, slots);
+    }
+
+    /** Parse the configuration. */
+    @Benchmark
+    public Configuration parse() {
+        return new Configuration(new Scanner(_text));
+    }
+
+    /** Text of the configuration. */
+    private String _text;
+}
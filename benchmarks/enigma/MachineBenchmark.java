@@ -0,0 +1,81 @@
+package enigma;
+
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of Machine.convert on machines of 3 to 10 slots, both
+ *  converting whole messages, as Main does, and a character at a time.
+ *  Scores are times per message of LENGTH characters.  The machine is
+ *  not reset between messages, so successive messages see different
+ *  rotor settings, as a long input would.
+ *  @author Cheng Zhu
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MachineBenchmark {
+
+    /** Number of rotor slots. */
+    @Param({ "3", "5", "7", "10" })
+    public int slots;
+
+    /** Alphabet size. */
+    @Param({ "26", "256" })
+    public int size;
+
+    /** Message length. */
+    @Param({ "64", "4096", "262144" })
+    public int length;
+
+    /** Build the machine and message. */
+    @Setup
+    public void setup() {
+        Configuration config =
+            new Configuration(new Scanner(BenchmarkData.config(size,
+                                                               slots)));
+        _machine = config.newMachine();
+        _machine.insertRotors(BenchmarkData.rotors(slots));
+        _machine.setPlugboard(PermutationStore.get("", config.alphabet()));
+        _msg = BenchmarkData.message(size, length);
+        _result = new int[length];
+    }
+
+    /** Convert the message as a whole. */
+    @Benchmark
+    public int[] convert() {
+        _machine.convert(_msg, _result);
+        return _result;
+    }
+
+    /** Convert the message a character at a time. */
+    @Benchmark
+    public int[] convertEach() {
+        for (int i = 0; i < _msg.length; i += 1) {
+            _result[i] = _machine.convert(_msg[i]);
+        }
+        return _result;
+    }
+
+    /** The machine. */
+    private Machine _machine;
+
+    /** The message, as indices. */
+    private int[] _msg;
+
+    /** Its conversion. */
+    private int[] _result;
+}
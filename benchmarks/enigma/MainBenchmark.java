@@ -0,0 +1,70 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmark of complete runs of Main: parsing the configuration,
+ *  then reading, converting, and writing a generated input file of
+ *  MEGABYTES megabytes (in UTF-16 code units) with a settings line
+ *  every 500 lines.  Output is encoded but discarded.
+ *  @author Cheng Zhu
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class MainBenchmark {
+
+    /** Size of the input, in megabytes. */
+    @Param({ "1", "8" })
+    public int megabytes;
+
+    /** Alphabet size. */
+    @Param({ "26", "4096" })
+    public int size;
+
+    /** Number of rotor slots. */
+    @Param({ "5" })
+    public int slots;
+
+    /** Generate the configuration and input. */
+    @Setup
+    public void setup() {
+        _config = BenchmarkData.config(size, slots);
+        _input = BenchmarkData.input(size, slots, megabytes << 20)
+            .getBytes(LineInput.CHARSET);
+    }
+
+    /** Run Main on the input. */
+    @Benchmark
+    public void run() {
+        PrintStream output =
+            new PrintStream(OutputStream.nullOutputStream(), false,
+                            LineInput.CHARSET);
+        new Main(new Configuration(new Scanner(_config)),
+                 new LineInput(new ByteArrayInputStream(_input), 0),
+                 output).process();
+    }
+
+    /** Text of the configuration. */
+    private String _config;
+
+    /** The input file. */
+    private byte[] _input;
+}
@@ -0,0 +1,109 @@
+package enigma;
+
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of the per-character operations: Permutation.permute and
+ *  invert, Alphabet.toInt, and Rotor.convertForward.  Each benchmark
+ *  applies its operation to every character of a message of LENGTH
+ *  characters, so scores are times per message.
+ *  @author Cheng Zhu
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PermutationBenchmark {
+
+    /** Alphabet size. */
+    @Param({ "26", "256", "20000" })
+    public int size;
+
+    /** Message length. */
+    @Param({ "1024" })
+    public int length;
+
+    /** Build the permutation, rotor, and message. */
+    @Setup
+    public void setup() {
+        Configuration config =
+            new Configuration(new Scanner(BenchmarkData.config(size, 3)));
+        _alphabet = config.alphabet();
+        _rotor = config.rotor("M0").copy();
+        _rotor.set(size / 3);
+        _perm = _rotor.permutation();
+        _msg = BenchmarkData.message(size, length);
+        _chars = new int[length];
+        for (int i = 0; i < length; i += 1) {
+            _chars[i] = _alphabet.toCodePoint(_msg[i]);
+        }
+    }
+
+    /** Permute each character of the message. */
+    @Benchmark
+    public int permute() {
+        int result = 0;
+        for (int x : _msg) {
+            result += _perm.permute(x);
+        }
+        return result;
+    }
+
+    /** Invert each character of the message. */
+    @Benchmark
+    public int invert() {
+        int result = 0;
+        for (int x : _msg) {
+            result += _perm.invert(x);
+        }
+        return result;
+    }
+
+    /** Look up the index of each character of the message. */
+    @Benchmark
+    public int toInt() {
+        int result = 0;
+        for (int ch : _chars) {
+            result += _alphabet.toInt(ch);
+        }
+        return result;
+    }
+
+    /** Pass each character of the message forward through a rotor. */
+    @Benchmark
+    public int convertForward() {
+        int result = 0;
+        for (int x : _msg) {
+            result += _rotor.convertForward(x);
+        }
+        return result;
+    }
+
+    /** The alphabet. */
+    private Alphabet _alphabet;
+
+    /** A moving rotor, at a setting other than 0. */
+    private Rotor _rotor;
+
+    /** The rotor's permutation. */
+    private Permutation _perm;
+
+    /** The message, as indices. */
+    private int[] _msg;
+
+    /** The message, as code points. */
+    private int[] _chars;
+}
@@ -1,24 +1,60 @@
 package enigma;
 
+import static enigma.EnigmaException.*;
+
 /** An alphabet of encodable characters.  Provides a mapping from characters
- *  to and from indices into the alphabet.
+ *  to and from indices into the alphabet.  Characters are Unicode code
+ *  points, so an alphabet may hold supplementary characters and tens of
+ *  thousands of symbols.  Each alphabet chooses its own storage: its
+ *  tables hold chars where its characters or indices fit in them, and
+ *  ints otherwise, and characters are indexed by a table over the range
+ *  of code points they span if that range is dense enough, and by a hash
+ *  table otherwise, so that toInt takes constant time either way.
  *  @author Cheng Zhu
  */
 class Alphabet {
 
-    /** A new alphabet containing CHARS. The K-th character has index
-     *  K (numbering from 0). No character may be duplicated. */
+    /** A new alphabet containing the code points of CHARS. The K-th
+     *  character has index K (numbering from 0). No character may be
+     *  duplicated. */
     Alphabet(String chars) {
         _chars = chars;
-        _size = chars.length();
-        char[] charsArr = _chars.toCharArray();
-        for (int i = 0; i < _chars.length(); i++) {
-            for (int j = i + 1; j < _chars.length(); j++) {
-                if (charsArr[i] == charsArr[j]) {
-                    throw new EnigmaException("Wrong alphabet:"
-                            + " there are duplicate characters.");
-                }
+        int[] symbols = chars.codePoints().toArray();
+        _size = symbols.length;
+        int min, max;
+        min = max = _size == 0 ? 0 : symbols[0];
+        for (int ch : symbols) {
+            min = Math.min(min, ch);
+            max = Math.max(max, ch);
+        }
+        if (max <= Character.MAX_VALUE) {
+            _narrowSymbols = new char[_size];
+            for (int i = 0; i < _size; i += 1) {
+                _narrowSymbols[i] = (char) symbols[i];
             }
+            _wideSymbols = null;
+        } else {
+            _narrowSymbols = null;
+            _wideSymbols = symbols;
+        }
+        _min = min;
+        long span = (long) max - min + 1;
+        _hashed = span > Math.max(DENSE_SPAN, DENSE_FACTOR * _size);
+        if (_hashed) {
+            int slots = Integer.highestOneBit(2 * _size - 1) << 1;
+            _mask = slots - 1;
+            allocateIndex(slots);
+        } else {
+            _mask = (int) span - 1;
+            allocateIndex((int) span);
+        }
+        for (int i = 0; i < _size; i += 1) {
+            int k = slot(symbols[i]);
+            if (indexAt(k) != 0) {
+                throw new EnigmaException("Wrong alphabet:"
+                        + " there are duplicate characters.");
+            }
+            setIndexAt(k, i + 1);
         }
     }
 
@@ -33,37 +69,233 @@ class Alphabet {
     }
 
     /** Returns true if CH is in this alphabet. */
-    boolean contains(char ch) {
-        return _chars.indexOf(ch) != -1;
+    boolean contains(int ch) {
+        return index(ch) >= 0;
     }
 
-    /** Returns character number INDEX in the alphabet, where
-     *  0 <= INDEX < size(). If the index is out of range, WRAP it.*/
-    char toChar(int index) {
+    /** Returns the code point of character number INDEX in the alphabet,
+     *  where 0 <= INDEX < size(). If the index is out of range, WRAP
+     *  it. */
+    int toCodePoint(int index) {
         if (index < 0 || index >= size()) {
             index = index % size();
             if (index < 0) {
                 index += size();
             }
         }
-        return _chars.charAt(index);
+        return symbol(index);
+    }
+
+    /** Returns character number INDEX in the alphabet, where
+     *  0 <= INDEX < size(), which must not be a supplementary
+     *  character. If the index is out of range, WRAP it.*/
+    char toChar(int index) {
+        return (char) toCodePoint(index);
     }
 
     /** Returns the index of character CH which must be in
-     *  the alphabet. This is the inverse of toChar().
+     *  the alphabet. This is the inverse of toCodePoint().
      *  If the index is out of range, throw an error.*/
-    int toInt(char ch) {
-        if (!contains(ch)) {
+    int toInt(int ch) {
+        int result = index(ch);
+        if (result < 0) {
             throw new EnigmaException("Error: "
                     + "the character is not in the alphabet");
+        }
+        return result;
+    }
+
+    /** Return the indices of the characters of TEXT, all of which must be
+     *  in the alphabet.  The characters are looked up in one pass that
+     *  merely notes whether any is missing, so that the whole of TEXT is
+     *  rejected, with the offsets (in code points) of all its missing
+     *  characters, before anything is done with it. */
+    int[] toInts(String text) {
+        int[] result = new int[text.codePointCount(0, text.length())];
+        int missing = 0;
+        for (int i = 0, k = 0; k < result.length; k += 1) {
+            int ch = text.codePointAt(i);
+            int x = index(ch);
+            result[k] = x;
+            missing |= x;
+            i += Character.charCount(ch);
+        }
+        if (missing < 0) {
+            throw error("characters not in the alphabet at %s",
+                        offsets(result, text));
+        }
+        return result;
+    }
+
+    /** Check that each element of INDICES is in 0 .. size() - 1, throwing
+     *  an error that gives the offsets of all those that are not. */
+    void checkIndices(int[] indices) {
+        int last = _size - 1;
+        int invalid = 0;
+        for (int x : indices) {
+            invalid |= x | (last - x);
+        }
+        if (invalid < 0) {
+            throw error("indices not in the alphabet at %s",
+                        offsets(indices, null));
+        }
+    }
+
+    /** Return the characters whose indices are INDICES, each in the range
+     *  0 .. size() - 1. */
+    String toString(int[] indices) {
+        if (_narrowSymbols != null) {
+            char[] result = new char[indices.length];
+            for (int i = 0; i < indices.length; i += 1) {
+                result[i] = _narrowSymbols[indices[i]];
+            }
+            return new String(result);
+        }
+        StringBuilder result = new StringBuilder(2 * indices.length);
+        for (int x : indices) {
+            result.appendCodePoint(_wideSymbols[x]);
+        }
+        return result.toString();
+    }
+
+    /** Return my characters, in order. */
+    @Override
+    public String toString() {
+        return _chars;
+    }
+
+    /** Return a description of the offsets in INDICES of elements that
+     *  are not in 0 .. size() - 1, with the characters of TEXT, of which
+     *  INDICES are the indices, at those offsets if TEXT is not null. */
+    private String offsets(int[] indices, String text) {
+        StringBuilder result = new StringBuilder();
+        int count = 0;
+        for (int k = 0, i = 0; k < indices.length; k += 1) {
+            int x = indices[k];
+            if (x < 0 || x >= _size) {
+                if (count < MAX_REPORTED) {
+                    result.append(count == 0 ? "" : ", ").append(k);
+                    if (text != null) {
+                        result.append(" ('").appendCodePoint(
+                            text.codePointAt(i)).append("')");
+                    }
+                }
+                count += 1;
+            }
+            if (text != null) {
+                i += Character.charCount(text.codePointAt(i));
+            }
+        }
+        if (count > MAX_REPORTED) {
+            result.append(String.format(", and %d more",
+                                        count - MAX_REPORTED));
+        }
+        return result.toString();
+    }
+
+    /** Return the code point of character number INDEX, where
+     *  0 <= INDEX < size(). */
+    private int symbol(int index) {
+        return _narrowSymbols != null
+            ? _narrowSymbols[index] : _wideSymbols[index];
+    }
+
+    /** Return the index of CH, or -1 if it is not in the alphabet. */
+    private int index(int ch) {
+        if (!_hashed) {
+            int k = ch - _min;
+            return k < 0 || k > _mask ? -1 : indexAt(k) - 1;
+        }
+        for (int k = hash(ch) & _mask; ; k = (k + 1) & _mask) {
+            int i = indexAt(k) - 1;
+            if (i < 0 || symbol(i) == ch) {
+                return i;
+            }
+        }
+    }
+
+    /** Return the slot of the index table that holds, or will hold, the
+     *  index of CH. */
+    private int slot(int ch) {
+        if (!_hashed) {
+            return ch - _min;
+        }
+        int k = hash(ch) & _mask;
+        while (indexAt(k) != 0 && symbol(indexAt(k) - 1) != ch) {
+            k = (k + 1) & _mask;
+        }
+        return k;
+    }
+
+    /** Return a hash of code point CH, spreading nearby code points
+     *  across the index table. */
+    private static int hash(int ch) {
+        int h = ch * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /** Allocate an index table of SLOTS empty slots, of chars if every
+     *  index + 1 fits in one. */
+    private void allocateIndex(int slots) {
+        if (_size < Character.MAX_VALUE) {
+            _narrowIndex = new char[slots];
         } else {
-            return _chars.indexOf(ch);
+            _wideIndex = new int[slots];
         }
     }
 
+    /** Return the contents of slot K of the index table: 1 + the index
+     *  of the character it holds, or 0 if it is empty. */
+    private int indexAt(int k) {
+        return _narrowIndex != null ? _narrowIndex[k] : _wideIndex[k];
+    }
+
+    /** Set slot K of the index table to V. */
+    private void setIndexAt(int k, int v) {
+        if (_narrowIndex != null) {
+            _narrowIndex[k] = (char) v;
+        } else {
+            _wideIndex[k] = v;
+        }
+    }
+
+    /** Most offsets given in an error message. */
+    private static final int MAX_REPORTED = 10;
+
+    /** Widest range of code points that is always indexed directly. */
+    private static final int DENSE_SPAN = 1 << 10;
+
+    /** An alphabet whose code points span a range more than this many
+     *  times its size (and more than DENSE_SPAN) is hashed. */
+    private static final int DENSE_FACTOR = 4;
+
     /** private variable chars. */
     private final String _chars;
 
     /** private variable size. */
     private final int _size;
+
+    /** My characters by index, if all are in the Basic Multilingual
+     *  Plane, else null. */
+    private final char[] _narrowSymbols;
+
+    /** My characters by index, if any is supplementary, else null. */
+    private final int[] _wideSymbols;
+
+    /** True iff my index table is a hash table, rather than a table over
+     *  the range of my code points starting at _min. */
+    private final boolean _hashed;
+
+    /** My least code point. */
+    private final int _min;
+
+    /** One less than the size of my index table. */
+    private final int _mask;
+
+    /** Index table, if my indices fit in chars, else null.  Each slot
+     *  holds 1 + the index of a character, or 0. */
+    private char[] _narrowIndex;
+
+    /** Index table, if my indices do not fit in chars, else null. */
+    private int[] _wideIndex;
 }
@@ -1,8 +1,15 @@
 package enigma;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
+import static enigma.TestUtils.*;
+
 
 /** The suite of all JUnit tests for the Permutation class.
  *  @author Cheng Zhu
@@ -60,4 +67,152 @@ public class AlphabetTest {
         assertEquals(9, test2.toInt('D'));
         assertEquals(16, test2.toInt('4'));
     }
+
+    @Test
+    public void testSupplementary() {
+        String chars = "AB\ud835\udd38\ud835\udd39\ud83d\ude00\u4e2d";
+        Alphabet alpha = new Alphabet(chars);
+        assertEquals(6, alpha.size());
+        assertEquals(0x1d538, alpha.toCodePoint(2));
+        assertEquals(0x1f600, alpha.toCodePoint(4));
+        assertEquals(0x1f600, alpha.toCodePoint(-2));
+        assertEquals(3, alpha.toInt(0x1d539));
+        assertEquals(5, alpha.toInt(0x4e2d));
+        assertFalse(alpha.contains(0xd835));
+        assertFalse(alpha.contains(0x1d53a));
+        String text = "\ud83d\ude00A\u4e2d\ud835\udd38";
+        assertArrayEquals(new int[] { 4, 0, 5, 2 }, alpha.toInts(text));
+        assertEquals(text, alpha.toString(alpha.toInts(text)));
+        assertEquals(chars, alpha.toString());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testSupplementaryDuplicate() {
+        new Alphabet("A\ud83d\ude00B\ud83d\ude00");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testNotInAlphabet() {
+        new Alphabet("AB\ud83d\ude00").toInts("A\ud83d\ude01");
+    }
+
+    @Test
+    public void testAllMissingReported() {
+        Alphabet alpha = new Alphabet("AB\ud83d\ude00");
+        try {
+            alpha.toInts("Ax\ud83d\ude01BA?");
+            fail("missing characters accepted");
+        } catch (EnigmaException excp) {
+            assertEquals("characters not in the alphabet at 1 ('x'), "
+                         + "2 ('\ud83d\ude01'), 5 ('?')", excp.getMessage());
+        }
+        try {
+            alpha.toInts("ABxxxxxxxxxxxxxxxx");
+            fail("missing characters accepted");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().endsWith(", 11 ('x'), and 6 more"));
+        }
+        alpha.checkIndices(new int[] { 0, 1, 2, 2, 0 });
+        try {
+            alpha.checkIndices(new int[] { 0, 3, 1, -2 });
+            fail("bad indices accepted");
+        } catch (EnigmaException excp) {
+            assertEquals("indices not in the alphabet at 1, 3",
+                         excp.getMessage());
+        }
+    }
+
+    /** Check that ALPHA has the characters CHARS, in order, and none
+     *  of the code points in 0 .. LIMIT - 1 that are not in CHARS. */
+    private static void checkIndex(Alphabet alpha, int[] chars, int limit) {
+        assertEquals(chars.length, alpha.size());
+        boolean[] member = new boolean[limit];
+        for (int i = 0; i < chars.length; i += 1) {
+            assertEquals(chars[i], alpha.toCodePoint(i));
+            assertEquals(i, alpha.toInt(chars[i]));
+            member[chars[i]] = true;
+        }
+        for (int ch = 0; ch < limit; ch += 1) {
+            assertEquals(member[ch], alpha.contains(ch));
+        }
+    }
+
+    @Test
+    public void testLarge() {
+        Random rand = new Random(45);
+        int[] dense = new int[20000];
+        for (int i = 0; i < dense.length; i += 1) {
+            dense[i] = 0x4e00 + (i * 7919) % dense.length;
+        }
+        checkIndex(new Alphabet(new String(dense, 0, dense.length)), dense,
+                   0x10000);
+
+        int[] sparse = new int[70000];
+        boolean[] used = new boolean[Character.MAX_CODE_POINT + 1];
+        for (int i = 0; i < sparse.length; i += 1) {
+            int ch;
+            do {
+                ch = rand.nextInt(used.length);
+            } while (used[ch] || Character.isSurrogate((char) ch)
+                     && ch <= Character.MAX_VALUE);
+            used[ch] = true;
+            sparse[i] = ch;
+        }
+        checkIndex(new Alphabet(new String(sparse, 0, sparse.length)),
+                   sparse, used.length);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testSparseDuplicate() {
+        new Alphabet(new String(new int[] { 0x10000, 'A', 0x10ffff, 'Z',
+                                            0x10000 }, 0, 5));
+    }
+
+    /** Return the output of Main on INPUT with the machine described by
+     *  CONFIG. */
+    private static String run(String config, String input) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new Main(config(config),
+                 new LineInput(new ByteArrayInputStream(
+                     input.getBytes(StandardCharsets.UTF_8)), 0),
+                 new PrintStream(out, true, StandardCharsets.UTF_8))
+            .process();
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testMain() {
+        int[] chars = new int[3000];
+        for (int i = 0; i < chars.length; i += 1) {
+            chars[i] = i % 2 == 0 ? 0x4e00 + i : 0x20000 + i;
+        }
+        String alpha = new String(chars, 0, chars.length);
+        StringBuilder reflector = new StringBuilder();
+        StringBuilder rotor = new StringBuilder("(");
+        for (int i = 0; i < chars.length; i += 2) {
+            reflector.append("(").appendCodePoint(chars[i])
+                .appendCodePoint(chars[(i + 1501) % chars.length])
+                .append(")");
+        }
+        for (int i = 0; i < chars.length; i += 1) {
+            rotor.appendCodePoint(chars[(i * 7) % chars.length]);
+        }
+        rotor.append(")");
+        String config = alpha + " 3 2\n"
+            + "R R " + reflector + "\n"
+            + "F M" + alpha.substring(0, 4) + " " + rotor + "\n"
+            + "G M" + new String(chars, 1, 1) + " " + rotor + "\n";
+        String setting = new String(chars, chars.length - 1, 1)
+            + new String(chars, 1, 1);
+        String msg = new String(chars, 10, 30);
+        String out = run(config, "* R F G " + setting + "\n" + msg + "\n");
+        String[] groups = out.trim().split(" ");
+        assertEquals(6, groups.length);
+        for (String group : groups) {
+            assertEquals(5, group.codePointCount(0, group.length()));
+        }
+        String back = run(config, "* R F G " + setting + "\n"
+                          + out.replace(" ", "") + "\n");
+        assertEquals(msg, back.replace(" ", "").trim());
+    }
 }
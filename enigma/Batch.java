@@ -0,0 +1,215 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static enigma.EnigmaException.*;
+
+/** Batch processing of many input files with one configuration.  The
+ *  configuration is parsed once; each file is then processed by its own
+ *  Main, with its own machine, on a pool of worker threads.  An error in
+ *  one file is recorded and does not stop the others.
+ *
+ *  Each input file F found under the directory or pattern INPUTS gives
+ *  an output file in the output directory at the same relative path,
+ *  with a trailing ".in" replaced by (or otherwise followed by) ".out".
+ *  The output directory also receives a tab-separated manifest, named
+ *  manifest.tsv, with one line per input giving its output file, its
+ *  status (ok or error), the time taken in milliseconds, and any error
+ *  message.  A file whose processing fails with an Error rather than an
+ *  exception is recorded as failed too.
+ *  @author Cheng Zhu
+ */
+class Batch {
+
+    /** A batch that applies CONFIGURATION using JOBS worker threads. */
+    Batch(Configuration configuration, int jobs) {
+        _configuration = configuration;
+        _jobs = jobs;
+    }
+
+    /** Process every input file named by INPUTS, a directory or a glob
+     *  pattern, writing results and the manifest into OUTDIR.  Return
+     *  true iff every file was processed without error. */
+    boolean run(String inputs, Path outDir) {
+        Path base = base(inputs);
+        List<Path> files = inputFiles(inputs, base, outDir);
+        ExecutorService pool = Executors.newFixedThreadPool(_jobs);
+        List<Future<Entry>> results = new ArrayList<>();
+        try {
+            for (Path file : files) {
+                Path output = outDir.resolve(outputName(base, file));
+                results.add(pool.submit(() -> process(file, output)));
+            }
+            List<Entry> entries = new ArrayList<>();
+            for (Future<Entry> result : results) {
+                entries.add(result.get());
+            }
+            return writeManifest(outDir.resolve(MANIFEST), entries);
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("batch interrupted");
+        } catch (ExecutionException excp) {
+            throw error("batch failed: %s", excp.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Process the messages in INPUT, writing the results to OUTPUT, and
+     *  return a manifest entry describing the outcome, even if that is
+     *  an Error. */
+    private Entry process(Path input, Path output) {
+        long start = System.nanoTime();
+        String message = null;
+        try {
+            Files.createDirectories(output.toAbsolutePath().getParent());
+            try (InputStream in = Files.newInputStream(input);
+                 PrintStream out = new PrintStream(new BufferedOutputStream(
+                     Files.newOutputStream(output), 1 << 16), false,
+                                                   LineInput.CHARSET)) {
+                new Main(_configuration, new LineInput(in, 0), out)
+                    .process();
+                if (out.checkError()) {
+                    message = "could not write " + output;
+                }
+            }
+        } catch (EnigmaException excp) {
+            message = excp.getMessage();
+        } catch (IOException excp) {
+            message = "could not process " + input;
+        } catch (Throwable excp) {
+            message = excp.toString();
+        }
+        return new Entry(input, output, message,
+                         (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /** Write ENTRIES to MANIFEST, returning true iff none of them records
+     *  an error. */
+    private boolean writeManifest(Path manifest, List<Entry> entries) {
+        boolean ok = true;
+        try {
+            Files.createDirectories(manifest.toAbsolutePath().getParent());
+            try (PrintStream out =
+                     new PrintStream(Files.newOutputStream(manifest))) {
+                out.print("input\toutput\tstatus\tmillis\terror\n");
+                for (Entry e : entries) {
+                    ok &= e._error == null;
+                    out.printf("%s\t%s\t%s\t%d\t%s\n", e._input, e._output,
+                               e._error == null ? "ok" : "error", e._millis,
+                               e._error == null ? ""
+                               : e._error.replaceAll("\\s", " "));
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", manifest);
+        }
+        return ok;
+    }
+
+    /** Return the directory under which the files described by INPUTS,
+     *  a directory or glob pattern, are found: INPUTS itself, or its
+     *  longest leading sequence of components free of glob characters. */
+    static Path base(String inputs) {
+        Path path = Paths.get(inputs);
+        if (Files.isDirectory(path)) {
+            return path;
+        }
+        Path base = path.isAbsolute() ? path.getRoot() : Paths.get("");
+        for (Path part : path) {
+            if (part.toString().matches(".*[*?\\[\\]{}].*")) {
+                break;
+            }
+            base = base.resolve(part);
+        }
+        if (base.equals(path)) {
+            base = path.toAbsolutePath().getParent();
+        }
+        return base;
+    }
+
+    /** Return the regular files described by INPUTS, a directory or glob
+     *  pattern, found under BASE but not under EXCLUDE, in a fixed
+     *  order. */
+    static List<Path> inputFiles(String inputs, Path base, Path exclude) {
+        Path path = Paths.get(inputs);
+        PathMatcher matcher;
+        if (Files.isDirectory(path)) {
+            matcher = p -> true;
+        } else {
+            PathMatcher glob =
+                FileSystems.getDefault().getPathMatcher("glob:" + inputs);
+            matcher = p -> glob.matches(p) || glob.matches(p.normalize());
+        }
+        try (Stream<Path> files = Files.walk(base)) {
+            return files.filter(Files::isRegularFile)
+                .filter(matcher::matches)
+                .filter(p -> !absolute(p).startsWith(absolute(exclude)))
+                .sorted().collect(Collectors.toList());
+        } catch (IOException excp) {
+            throw error("could not read %s", base);
+        }
+    }
+
+    /** Return the name of the output file for INPUT, found under BASE,
+     *  relative to the output directory. */
+    static Path outputName(Path base, Path input) {
+        Path relative = absolute(base).relativize(absolute(input));
+        String name = relative.getFileName().toString();
+        if (name.endsWith(".in")) {
+            name = name.substring(0, name.length() - ".in".length());
+        }
+        return relative.resolveSibling(name + ".out");
+    }
+
+    /** Return PATH as a normalized absolute path. */
+    private static Path absolute(Path path) {
+        return path.toAbsolutePath().normalize();
+    }
+
+    /** The manifest line for one input file. */
+    private static class Entry {
+        /** The entry for INPUT, written to OUTPUT in MILLIS milliseconds,
+         *  with error message ERROR, or null if it succeeded. */
+        Entry(Path input, Path output, String error, long millis) {
+            _input = input;
+            _output = output;
+            _error = error;
+            _millis = millis;
+        }
+
+        /** Input file. */
+        private final Path _input;
+        /** Output file. */
+        private final Path _output;
+        /** Error message, or null. */
+        private final String _error;
+        /** Processing time in milliseconds. */
+        private final long _millis;
+    }
+
+    /** Name of the manifest in the output directory. */
+    static final String MANIFEST = "manifest.tsv";
+
+    /** The shared, parsed configuration. */
+    private final Configuration _configuration;
+
+    /** Number of worker threads. */
+    private final int _jobs;
+}
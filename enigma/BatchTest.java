@@ -0,0 +1,94 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Batch class.
+ *  @author Cheng Zhu
+ */
+public class BatchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /** A message section of the naval configuration. */
+    private static final String GOOD =
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)\n"
+        + ENGLISH + "\n";
+
+    /** Milliseconds that the failing job takes before it fails. */
+    private static final long FAIL_MILLIS = 100;
+
+    @Test
+    public void testFailures() throws IOException {
+        Path in = Files.createTempDirectory("batch");
+        Path out = Files.createTempDirectory("batch");
+        AtomicInteger machines = new AtomicInteger();
+        Configuration config =
+            new Configuration(new Scanner(NAVAL_CONFIG)) {
+                @Override
+                Machine newMachine() {
+                    if (machines.incrementAndGet() == 2) {
+                        try {
+                            Thread.sleep(FAIL_MILLIS);
+                        } catch (InterruptedException excp) {
+                            Thread.currentThread().interrupt();
+                        }
+                        throw new AssertionError("no machine");
+                    }
+                    return super.newMachine();
+                }
+            };
+        try {
+            Files.writeString(in.resolve("a.in"), GOOD);
+            Files.writeString(in.resolve("b.in"), GOOD);
+            Files.writeString(in.resolve("c.in"), ENGLISH + "\n");
+            Files.writeString(in.resolve("d.in"), GOOD);
+            assertFalse(new Batch(config, 1).run(in.toString(), out));
+
+            List<String> manifest =
+                Files.readAllLines(out.resolve(Batch.MANIFEST));
+            assertEquals(5, manifest.size());
+            assertEquals("input\toutput\tstatus\tmillis\terror",
+                         manifest.get(0));
+            String[][] rows = new String[5][];
+            for (int k = 1; k < 5; k += 1) {
+                rows[k] = manifest.get(k).split("\t", -1);
+                assertEquals(5, rows[k].length);
+                assertEquals(in.resolve("abcd".charAt(k - 1) + ".in")
+                             .toString(), rows[k][0]);
+                assertEquals(out.resolve("abcd".charAt(k - 1) + ".out")
+                             .toString(), rows[k][1]);
+            }
+            assertEquals("ok", rows[1][2]);
+            assertEquals("", rows[1][4]);
+            assertEquals("error", rows[2][2]);
+            assertTrue(Long.parseLong(rows[2][3]) >= FAIL_MILLIS);
+            assertEquals("java.lang.AssertionError: no machine", rows[2][4]);
+            assertEquals("error", rows[3][2]);
+            assertEquals("Invalid configuration file.", rows[3][4]);
+            assertEquals("ok", rows[4][2]);
+            assertEquals(Files.readString(out.resolve("a.out")),
+                         Files.readString(out.resolve("d.out")));
+        } finally {
+            for (String name : new String[] { "a", "b", "c", "d" }) {
+                Files.deleteIfExists(in.resolve(name + ".in"));
+                Files.deleteIfExists(out.resolve(name + ".out"));
+            }
+            Files.deleteIfExists(out.resolve(Batch.MANIFEST));
+            Files.delete(in);
+            Files.delete(out);
+        }
+    }
+}
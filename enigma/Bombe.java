@@ -0,0 +1,363 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+import static enigma.EnigmaException.*;
+
+/** A known-plaintext attack in the manner of the Turing-Welchman bombe.
+ *
+ *  A crib (a guess at some plaintext) placed against the ciphertext at a
+ *  given offset gives a menu: a graph whose nodes are letters and which
+ *  has an edge from P to C, labelled J, for each crib letter P that
+ *  encrypts to ciphertext letter C at crib position J.  For each stop (a
+ *  rotor order and the setting of the rotors just before the crib), the
+ *  rotor core S_J at each crib position is computed once.  Because the
+ *  rotors are reflector-based, each S_J is an involution, so if P is
+ *  steckered (joined by the plugboard) to x, then C is steckered to
+ *  S_J(x).  Starting from one hypothesis about the stecker partner of
+ *  the most connected menu letter, these implications, together with
+ *  the symmetry of the plugboard, are closed over a bitset of live
+ *  (letter, partner) pairs.  A hypothesis whose closure gives some letter
+ *  two partners is refuted, along with every other partner of the test
+ *  letter that its closure implied: implications run both ways, so
+ *  each of those hypotheses implies the refuted one, and the test letter
+ *  then has two partners in its closure too.  Any hypothesis left
+ *  standing is a surviving stop.
+ *
+ *  Stops are tried in parallel on a fork/join pool.  Alphabets are
+ *  limited to 64 characters, so that the partners of a letter fit in
+ *  one long.
+ *  @author Cheng Zhu
+ */
+class Bombe {
+
+    /** A bombe that runs through the stops of KEYS, looking for those
+     *  consistent with crib CRIB placed at offset OFFSET of CIPHERTEXT
+     *  (both as alphabet indices).  The setting of a stop is that of the
+     *  rotors just before the first letter of the crib, which is the
+     *  message key if OFFSET is 0. */
+    Bombe(Keyspace keys, int[] ciphertext, int[] crib, int offset) {
+        if (crib.length == 0) {
+            throw error("crib is empty");
+        }
+        _keys = keys;
+        _size = keys.config().alphabet().size();
+        if (_size > Long.SIZE) {
+            throw error("bombe alphabets are limited to %d characters",
+                        Long.SIZE);
+        }
+        if (offset < 0 || offset + crib.length > ciphertext.length) {
+            throw error("crib does not fit the ciphertext at offset %d",
+                        offset);
+        }
+        for (Rotor r : keys.config().rotors()) {
+            if (r.reflecting() && !involution(r.permutation())) {
+                throw error("reflector %s does not pair letters", r.name());
+            }
+        }
+        _offset = offset;
+        _length = crib.length;
+        _edgeStart = new int[_size + 1];
+        _edgeLetter = new int[2 * _length];
+        _edgePos = new int[2 * _length];
+        for (int j = 0; j < _length; j += 1) {
+            if (crib[j] == ciphertext[offset + j]) {
+                throw error("crib letter %d would encrypt to itself", j);
+            }
+            _edgeStart[crib[j] + 1] += 1;
+            _edgeStart[ciphertext[offset + j] + 1] += 1;
+        }
+        int test = 0;
+        for (int x = 0; x < _size; x += 1) {
+            if (_edgeStart[x + 1] > _edgeStart[test + 1]) {
+                test = x;
+            }
+        }
+        _test = test;
+        for (int x = 0; x < _size; x += 1) {
+            _edgeStart[x + 1] += _edgeStart[x];
+        }
+        int[] next = _edgeStart.clone();
+        for (int j = 0; j < _length; j += 1) {
+            addEdge(crib[j], ciphertext[offset + j], j, next);
+            addEdge(ciphertext[offset + j], crib[j], j, next);
+        }
+    }
+
+    /** Return a bombe for each offset of CIPHERTEXT at which CRIB could
+     *  lie, as found by a CribDrag, in increasing order of offset, each
+     *  running through the stops of KEYS. */
+    static List<Bombe> placements(Keyspace keys, int[] ciphertext,
+                                  int[] crib) {
+        CribDrag drag = new CribDrag(keys.config(), ciphertext);
+        List<Bombe> result = new ArrayList<>();
+        for (int offset : drag.offsets(crib)) {
+            result.add(new Bombe(keys, ciphertext, crib, offset));
+        }
+        return result;
+    }
+
+    /** Return the offset of my crib in the ciphertext. */
+    int offset() {
+        return _offset;
+    }
+
+    /** Try every stop, using POOL, and return the surviving ones, each
+     *  with the plugboard pairs implied by its hypothesis and a score
+     *  equal to the number of letters whose partners it fixes. */
+    List<Candidate> search(ForkJoinPool pool) {
+        return search(0, _keys.size(), pool);
+    }
+
+    /** Try stops FROM .. TO-1 of my keyspace, using POOL, and return all
+     *  the surviving stops found so far, as for search(POOL). */
+    List<Candidate> search(long from, long to, ForkJoinPool pool) {
+        if (_start == 0) {
+            _start = System.nanoTime();
+        }
+        pool.invoke(new Task(from, to));
+        synchronized (_found) {
+            List<Candidate> result = new ArrayList<>(_found);
+            Collections.sort(result, Collections.reverseOrder());
+            return result;
+        }
+    }
+
+    /** Ask the search to stop as soon as possible. */
+    void stop() {
+        _stopped = true;
+    }
+
+    /** Return the number of stops tried so far. */
+    long stops() {
+        return _stops.sum();
+    }
+
+    /** Return the number of hypotheses closed so far: at most the
+     *  alphabet size per stop, and fewer where refuted hypotheses take
+     *  others with them. */
+    long closures() {
+        return _closures.sum();
+    }
+
+    /** Return the number of stops tried per second so far. */
+    double rate() {
+        double seconds = (System.nanoTime() - _start) / 1e9;
+        return _start == 0 || seconds == 0 ? 0 : stops() / seconds;
+    }
+
+    /** Add an edge from letter A to letter B at crib position J, where
+     *  NEXT gives the next free place in A's edge list. */
+    private void addEdge(int a, int b, int j, int[] next) {
+        _edgeLetter[next[a]] = b;
+        _edgePos[next[a]] = j;
+        next[a] += 1;
+    }
+
+    /** Try stops FROM .. TO-1. */
+    private void tryStops(long from, long to) {
+        Machine mach = _machines.get();
+        int[] setting = new int[mach.numRotors() - 1];
+        int[][] cores = new int[_length][_size];
+        long[] lit = new long[_size + 1];
+        int[] stack = new int[_size * _size];
+        int current = -1;
+        long closures = 0;
+        long key;
+        for (key = from; key < to && !_stopped; key += 1) {
+            int order = _keys.orderOf(key);
+            if (order != current) {
+                mach.insertRotors(_keys.order(order));
+                current = order;
+            }
+            _keys.setting(key, setting);
+            mach.setRotors(setting);
+            for (int j = 0; j < _length; j += 1) {
+                mach.stepCore(cores[j]);
+            }
+            long refuted = 0;
+            for (int t = 0; t < _size; t += 1) {
+                if ((refuted & (1L << t)) != 0) {
+                    continue;
+                }
+                closures += 1;
+                if (close(t, cores, lit, stack)) {
+                    record(order, key, lit);
+                } else {
+                    refuted |= lit[_size];
+                }
+            }
+        }
+        _stops.add(key - from);
+        _closures.add(closures);
+    }
+
+    /** Light the hypothesis that my test letter is steckered to T, and
+     *  everything it implies given the rotor cores CORES, in LIT (the
+     *  partners of each letter, as bitsets, with LIT[alphabet size]
+     *  collecting every partner of the test letter implied, even one
+     *  that conflicts), using STACK as scratch space.  Return false as
+     *  soon as some letter gets two partners. */
+    private boolean close(int t, int[][] cores, long[] lit, int[] stack) {
+        for (int x = 0; x <= _size; x += 1) {
+            lit[x] = 0;
+        }
+        lit[_test] = lit[_size] = 1L << t;
+        stack[0] = _test * _size + t;
+        int top = 1;
+        while (top > 0) {
+            top -= 1;
+            int x = stack[top] / _size, y = stack[top] % _size;
+            top = light(y, x, lit, stack, top);
+            for (int e = _edgeStart[x]; e < _edgeStart[x + 1] && top >= 0;
+                 e += 1) {
+                top = light(_edgeLetter[e], cores[_edgePos[e]][y],
+                            lit, stack, top);
+            }
+            if (top < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Light the hypothesis that X is steckered to Y in LIT, pushing it
+     *  onto the first TOP elements of STACK if it is new.  Return the new
+     *  stack size, or -1 if X already has a different partner. */
+    private int light(int x, int y, long[] lit, int[] stack, int top) {
+        long bit = 1L << y;
+        if (x == _test) {
+            lit[_size] |= bit;
+        }
+        if ((lit[x] & bit) != 0) {
+            return top;
+        } else if (lit[x] != 0) {
+            return -1;
+        }
+        lit[x] = bit;
+        stack[top] = x * _size + y;
+        return top + 1;
+    }
+
+    /** Record the surviving stop for rotor order ORDER and key KEY, whose
+     *  consistent closure is LIT. */
+    private void record(int order, long key, long[] lit) {
+        Alphabet alpha = _keys.config().alphabet();
+        StringBuilder plugboard = new StringBuilder();
+        int fixed = 0;
+        for (int x = 0; x < _size; x += 1) {
+            if (lit[x] == 0) {
+                continue;
+            }
+            fixed += 1;
+            int y = Long.numberOfTrailingZeros(lit[x]);
+            if (x < y) {
+                plugboard.append(plugboard.length() == 0 ? "(" : " (")
+                    .appendCodePoint(alpha.toCodePoint(x))
+                    .appendCodePoint(alpha.toCodePoint(y))
+                    .append(")");
+            }
+        }
+        Candidate stop = new Candidate(_keys.orderNames(order),
+                                       _keys.settingString(key),
+                                       plugboard.toString(), fixed);
+        synchronized (_found) {
+            _found.add(stop);
+        }
+    }
+
+    /** Return true iff PERM is its own inverse. */
+    private static boolean involution(Permutation perm) {
+        for (int x = 0; x < perm.size(); x += 1) {
+            if (perm.permute(perm.permute(x)) != x) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** A machine for the current thread, with no plugboard. */
+    private Machine newMachine() {
+        Machine mach = _keys.config().newMachine();
+        mach.setPlugboard(new Permutation("", mach.alphabet()));
+        return mach;
+    }
+
+    /** The task of trying a range of stops. */
+    private class Task extends RecursiveAction {
+        /** The task of trying stops FROM .. TO-1. */
+        Task(long from, long to) {
+            _from = from;
+            _to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (_stopped) {
+                return;
+            }
+            if (_to - _from <= GRAIN) {
+                tryStops(_from, _to);
+            } else {
+                long mid = _from + (_to - _from) / 2;
+                invokeAll(new Task(_from, mid), new Task(mid, _to));
+            }
+        }
+
+        /** First stop to try. */
+        private final long _from;
+        /** Limit of stops to try. */
+        private final long _to;
+    }
+
+    /** Largest number of stops tried by one task without splitting. */
+    private static final long GRAIN = 512;
+
+    /** The stops to try. */
+    private final Keyspace _keys;
+
+    /** Alphabet size. */
+    private final int _size;
+
+    /** Offset of the crib in the ciphertext. */
+    private final int _offset;
+
+    /** Length of the crib. */
+    private final int _length;
+
+    /** The menu letter whose partner is hypothesized. */
+    private final int _test;
+
+    /** The edges from letter X are _edgeStart[X] .. _edgeStart[X+1]-1. */
+    private final int[] _edgeStart;
+
+    /** The letter at the far end of each edge. */
+    private final int[] _edgeLetter;
+
+    /** The crib position labelling each edge. */
+    private final int[] _edgePos;
+
+    /** The surviving stops. */
+    private final List<Candidate> _found = new ArrayList<>();
+
+    /** True once the search should stop. */
+    private volatile boolean _stopped;
+
+    /** Number of stops tried. */
+    private final LongAdder _stops = new LongAdder();
+
+    /** Number of hypotheses closed. */
+    private final LongAdder _closures = new LongAdder();
+
+    /** Time at which searching began, in System.nanoTime units. */
+    private volatile long _start;
+
+    /** Each worker thread's machine. */
+    private final ThreadLocal<Machine> _machines =
+        ThreadLocal.withInitial(this::newMachine);
+}
@@ -0,0 +1,126 @@
+package enigma;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Bombe and CribDrag classes.
+ *  @author Cheng Zhu
+ */
+public class BombeTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /** Plugboard used to encrypt the test message. */
+    private static final String PLUGBOARD = "(AR) (GK) (OX) (TZ) (HN)";
+
+    @Test
+    public void testFindsStop() {
+        Configuration config = config(SMALL_CONFIG);
+        Keyspace keys = new Keyspace(config);
+        int[] cipher = encrypt(config, new String[] { "B", "III", "V" },
+                               "KW", PLUGBOARD);
+        int[] crib = indices(ENGLISH.substring(0, 24), config.alphabet());
+        Bombe bombe = new Bombe(keys, cipher, crib, 0);
+        List<Candidate> stops = bombe.search(new ForkJoinPool(4));
+        assertEquals(keys.size(), bombe.stops());
+        assertTrue(bombe.closures() < keys.size() * 26);
+        assertTrue(stops.size() < keys.size() / 100);
+        Candidate found = null;
+        for (Candidate stop : stops) {
+            if (stop.toString().startsWith("* B III V KW")) {
+                assertNull(found);
+                found = stop;
+            }
+        }
+        assertNotNull(found);
+        assertFalse(found.plugboard().isEmpty());
+        for (String pair : found.plugboard().split(" ")) {
+            assertTrue(pair, PLUGBOARD.contains(pair));
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testEmptyCrib() {
+        Configuration config = config(SMALL_CONFIG);
+        new Bombe(new Keyspace(config), indices("ABC", config.alphabet()),
+                  new int[0], 0);
+    }
+
+    @Test
+    public void testCribAtOffset() {
+        Configuration config = config(SMALL_CONFIG);
+        Keyspace keys = new Keyspace(config);
+        int[] cipher = encrypt(config, new String[] { "C", "I", "II" },
+                               "AA", PLUGBOARD);
+        int[] crib = indices(ENGLISH.substring(10, 34), config.alphabet());
+        Bombe bombe = new Bombe(keys, cipher, crib, 10);
+        boolean found = false;
+        // Ten steps from AA take II to K, and I past its E notch to B.
+        for (Candidate stop : bombe.search(new ForkJoinPool(2))) {
+            found |= stop.toString().startsWith("* C I II BK");
+        }
+        assertTrue(found);
+    }
+
+    @Test
+    public void testCribDrag() {
+        Configuration config = config(SMALL_CONFIG);
+        Random random = new Random(42);
+        int[] cipher = new int[5000];
+        for (int i = 0; i < cipher.length; i += 1) {
+            cipher[i] = random.nextInt(26);
+        }
+        for (int len : new int[] { 1, 5, 63, 64, 65, 130 }) {
+            int[] crib = new int[len];
+            for (int j = 0; j < len; j += 1) {
+                crib[j] = random.nextInt(26);
+            }
+            int[] offsets = new CribDrag(config, cipher).offsets(crib);
+            int n = 0;
+            for (int o = 0; o + len <= cipher.length; o += 1) {
+                boolean possible = true;
+                for (int j = 0; j < len; j += 1) {
+                    possible &= cipher[o + j] != crib[j];
+                }
+                if (possible) {
+                    assertEquals(o, offsets[n]);
+                    n += 1;
+                }
+            }
+            assertEquals(n, offsets.length);
+        }
+    }
+
+    @Test
+    public void testPlacements() {
+        Configuration config = config(SMALL_CONFIG);
+        Keyspace keys = new Keyspace(config);
+        int[] cipher = encrypt(config, new String[] { "B", "III", "V" },
+                               "KW", PLUGBOARD);
+        int[] crib = indices("THEHABITS", config.alphabet());
+        int at = ENGLISH.indexOf("THEHABITS");
+        boolean found = false;
+        for (Bombe bombe : Bombe.placements(keys, cipher, crib)) {
+            assertTrue(bombe.offset() + crib.length <= cipher.length);
+            found |= bombe.offset() == at;
+        }
+        assertTrue(found);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testImpossibleCrib() {
+        Configuration config = config(SMALL_CONFIG);
+        int[] cipher = indices("ABCDE", config.alphabet());
+        int[] crib = indices("XYE", config.alphabet());
+        new Bombe(new Keyspace(config), cipher, crib, 2);
+    }
+}
@@ -0,0 +1,93 @@
+package enigma;
+
+import java.util.Arrays;
+
+/** A candidate key found by a search: a rotor order and initial setting,
+ *  with the score of the decryption it gives (higher is better).
+ *  @author Cheng Zhu
+ */
+class Candidate implements Comparable<Candidate> {
+
+    /** A candidate with rotors named ROTORS (ROTORS[0] naming the
+     *  reflector), initial setting SETTING, and score SCORE. */
+    Candidate(String[] rotors, String setting, double score) {
+        this(rotors, setting, "", score);
+    }
+
+    /** A candidate with rotors named ROTORS (ROTORS[0] naming the
+     *  reflector), initial setting SETTING, plugboard PLUGBOARD (in cycle
+     *  notation), and score SCORE. */
+    Candidate(String[] rotors, String setting, String plugboard,
+              double score) {
+        _rotors = rotors;
+        _setting = setting;
+        _plugboard = plugboard;
+        _score = score;
+    }
+
+    /** Return the names of my rotors, indexed by slot. */
+    String[] rotors() {
+        return _rotors;
+    }
+
+    /** Return my initial setting, as on a settings line. */
+    String setting() {
+        return _setting;
+    }
+
+    /** Return my plugboard, in cycle notation (empty if unknown). */
+    String plugboard() {
+        return _plugboard;
+    }
+
+    /** Return my score. */
+    double score() {
+        return _score;
+    }
+
+    /** Orders candidates by increasing score, then by key, so that the
+     *  best are last. */
+    @Override
+    public int compareTo(Candidate other) {
+        int c = Double.compare(_score, other._score);
+        if (c == 0) {
+            c = other.toString().compareTo(toString());
+        }
+        return c;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof Candidate)) {
+            return false;
+        }
+        Candidate other = (Candidate) obj;
+        return _score == other._score && _setting.equals(other._setting)
+            && _plugboard.equals(other._plugboard)
+            && Arrays.equals(_rotors, other._rotors);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(_rotors) * 31 + _setting.hashCode();
+    }
+
+    /** Return my key as a settings line. */
+    @Override
+    public String toString() {
+        String line = "* " + String.join(" ", _rotors) + " " + _setting;
+        return _plugboard.isEmpty() ? line : line + " " + _plugboard;
+    }
+
+    /** Names of my rotors. */
+    private final String[] _rotors;
+
+    /** My initial setting. */
+    private final String _setting;
+
+    /** My plugboard. */
+    private final String _plugboard;
+
+    /** My score. */
+    private final double _score;
+}
@@ -0,0 +1,134 @@
+package enigma;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import static enigma.EnigmaException.*;
+
+/** The state of a Main job at a line boundary: the settings line of the
+ *  current section, the rotor settings reached within that section, and
+ *  the byte offsets reached in the input and output files.  Replaying
+ *  the section line, restoring the settings, and continuing from the two
+ *  offsets reproduces the rest of the output exactly.
+ *  @author Cheng Zhu
+ */
+class Checkpoint {
+
+    /** A checkpoint taken in the section begun by settings line SECTION,
+     *  with rotors 1 .. SETTINGS.length at SETTINGS, after consuming
+     *  INPUTOFFSET bytes of input and writing OUTPUTOFFSET bytes of
+     *  output. */
+    Checkpoint(String section, int[] settings,
+               long inputOffset, long outputOffset) {
+        _section = section;
+        _settings = settings;
+        _inputOffset = inputOffset;
+        _outputOffset = outputOffset;
+    }
+
+    /** Return the settings line of the current section. */
+    String section() {
+        return _section;
+    }
+
+    /** Return the settings of rotors 1 .. numRotors()-1. */
+    int[] settings() {
+        return _settings;
+    }
+
+    /** Return the offset of the first unprocessed input line. */
+    long inputOffset() {
+        return _inputOffset;
+    }
+
+    /** Return the length of the output written so far. */
+    long outputOffset() {
+        return _outputOffset;
+    }
+
+    /** Write me durably to FILE.  The data goes to a sibling temporary
+     *  file that is forced to disk and then atomically renamed over FILE,
+     *  so that a crash leaves either the old or the new checkpoint. */
+    void write(Path file) {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel =
+                 FileChannel.open(temp, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            DataOutputStream out =
+                new DataOutputStream(Channels.newOutputStream(channel));
+            out.writeInt(MAGIC);
+            out.writeLong(_inputOffset);
+            out.writeLong(_outputOffset);
+            out.writeUTF(_section);
+            out.writeShort(_settings.length);
+            for (int setting : _settings) {
+                out.writeInt(setting);
+            }
+            out.flush();
+            channel.force(true);
+        } catch (IOException excp) {
+            throw error("could not write checkpoint %s", temp);
+        }
+        try {
+            Files.move(temp, file, ATOMIC_MOVE, REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw error("could not write checkpoint %s", file);
+        }
+    }
+
+    /** Return the checkpoint stored in FILE. */
+    static Checkpoint read(Path file) {
+        try (InputStream stream = Files.newInputStream(file)) {
+            DataInputStream in = new DataInputStream(stream);
+            if (in.readInt() != MAGIC) {
+                throw error("%s is not a checkpoint file", file);
+            }
+            long inputOffset = in.readLong();
+            long outputOffset = in.readLong();
+            String section = in.readUTF();
+            int[] settings = new int[in.readShort()];
+            for (int k = 0; k < settings.length; k += 1) {
+                settings[k] = in.readInt();
+            }
+            return new Checkpoint(section, settings,
+                                  inputOffset, outputOffset);
+        } catch (IOException excp) {
+            throw error("could not read checkpoint %s", file);
+        }
+    }
+
+    /** Remove FILE, if it exists. */
+    static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException excp) {
+            throw error("could not remove checkpoint %s", file);
+        }
+    }
+
+    /** First word of every checkpoint file ("ENC1"). */
+    private static final int MAGIC = 0x454e4331;
+
+    /** Settings line of the current section. */
+    private final String _section;
+
+    /** Settings of the non-reflector rotors. */
+    private final int[] _settings;
+
+    /** Offset of the first unprocessed input line. */
+    private final long _inputOffset;
+
+    /** Number of output bytes written. */
+    private final long _outputOffset;
+}
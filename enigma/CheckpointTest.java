@@ -0,0 +1,143 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Checkpoint class and for
+ *  resuming checkpointed jobs.
+ *  @author Cheng Zhu
+ */
+public class CheckpointTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /** Settings line of the second section of the test input. */
+    private static final String SECTION = "* B Gamma III I V ZZMQ (AQ)";
+
+    /** Return the test input, with lines ended by "\r\n", in which
+     *  message line BAD of the second section (if BAD >= 0) has a
+     *  character that is not in the alphabet. */
+    private static String input(int bad) {
+        StringBuilder result = new StringBuilder();
+        result.append("* B Beta III IV I AXLE (HQ) (EX)\r\n");
+        for (int i = 0; i + 40 <= 200; i += 40) {
+            result.append(ENGLISH, i, i + 40).append("\r\n");
+        }
+        result.append("\r\n").append(SECTION).append("\r\n");
+        for (int k = 0; k < 6; k += 1) {
+            String line = ENGLISH.substring(40 * k, 40 * k + 40);
+            if (k == bad) {
+                line = line.substring(0, 20) + "1" + line.substring(21);
+            }
+            result.append(line).append("\r\n");
+        }
+        return result.toString();
+    }
+
+    @Test
+    public void testReadWrite() throws IOException {
+        Path file = Files.createTempFile("enigma", ".ckpt");
+        try {
+            new Checkpoint(SECTION, new int[] { 0, 5, 25, 7 }, 1234, 5678)
+                .write(file);
+            Checkpoint read = Checkpoint.read(file);
+            assertEquals(SECTION, read.section());
+            assertArrayEquals(new int[] { 0, 5, 25, 7 }, read.settings());
+            assertEquals(1234, read.inputOffset());
+            assertEquals(5678, read.outputOffset());
+            assertFalse(Files.exists(
+                file.resolveSibling(file.getFileName() + ".tmp")));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testTruncated() throws IOException {
+        Path file = Files.createTempFile("enigma", ".ckpt");
+        try {
+            new Checkpoint(SECTION, new int[] { 0, 5, 25, 7 }, 1234, 5678)
+                .write(file);
+            byte[] whole = Files.readAllBytes(file);
+            for (int n = 0; n < whole.length; n += 1) {
+                Files.write(file, Arrays.copyOf(whole, n));
+                try {
+                    Checkpoint.read(file);
+                    fail("read a checkpoint truncated to " + n + " bytes");
+                } catch (EnigmaException excp) {
+                    /* Expected. */
+                }
+            }
+            whole[0] ^= 1;
+            Files.write(file, whole);
+            try {
+                Checkpoint.read(file);
+                fail("read a checkpoint with the wrong magic number");
+            } catch (EnigmaException excp) {
+                assertTrue(excp.getMessage().contains("not a checkpoint"));
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testResumeMidSection() throws IOException {
+        Path dir = Files.createTempDirectory("enigma");
+        Path config = dir.resolve("naval.conf");
+        Path in = dir.resolve("input.in");
+        Path out = dir.resolve("output.out");
+        Path expected = dir.resolve("expected.out");
+        Path checkpoint = dir.resolve("job.ckpt");
+        try {
+            Files.writeString(config, NAVAL_CONFIG);
+            Files.writeString(in, input(-1), StandardCharsets.UTF_8);
+            new Main(List.of(config.toString(), in.toString(),
+                             expected.toString())).process();
+
+            Files.writeString(in, input(3), StandardCharsets.UTF_8);
+            try {
+                new Main(List.of(config.toString(), in.toString(),
+                                 out.toString()),
+                         checkpoint.toString(), 1, false).process();
+                fail("converted a line with a bad character");
+            } catch (EnigmaException excp) {
+                /* Expected: the run dies part way through. */
+            }
+            Checkpoint saved = Checkpoint.read(checkpoint);
+            assertEquals(SECTION, saved.section());
+            String text = input(-1);
+            int end = text.indexOf(ENGLISH.substring(120, 160) + "\r\n",
+                                   text.indexOf(SECTION));
+            assertEquals(end, saved.inputOffset());
+            assertFalse(Arrays.equals(new int[] { 25, 25, 12, 16 },
+                                      saved.settings()));
+
+            Files.writeString(in, input(-1), StandardCharsets.UTF_8);
+            new Main(List.of(config.toString(), in.toString(),
+                             out.toString()),
+                     checkpoint.toString(), 1, true).process();
+            assertEquals(Files.readString(expected, StandardCharsets.UTF_8),
+                         Files.readString(out, StandardCharsets.UTF_8));
+            assertFalse(Files.exists(checkpoint));
+        } finally {
+            for (Path p : new Path[] { config, in, out, expected,
+                                       checkpoint }) {
+                Files.deleteIfExists(p);
+            }
+            Files.delete(dir);
+        }
+    }
+}
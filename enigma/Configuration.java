@@ -0,0 +1,183 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+
+import static enigma.EnigmaException.*;
+
+/** A parsed machine configuration file: the alphabet, the number of
+ *  rotor slots and pawls, and the available rotors.  A Configuration is
+ *  never modified once read, so one may be shared by any number of
+ *  machines, each of which gets its own copies of the rotors.
+ *  @author Cheng Zhu
+ */
+class Configuration {
+
+    /** The configuration described by the contents of CONFIG. */
+    Configuration(Scanner config) {
+        _config = config;
+        String alph = _config.next();
+        _alphabet = new Alphabet(alph);
+        if (_alphabet.contains('*') || _alphabet.contains('(')
+                || _alphabet.contains(')')) {
+            throw new EnigmaException("Wrong alphabet: "
+                    + "cannot contain * or ( or ).");
+        }
+        String numRotorsString = _config.next();
+        if (!numRotorsString.matches("[0-9]+")) {
+            throw new EnigmaException("Wrong number of rotors format.");
+        }
+        _numRotors = Integer.parseInt(numRotorsString);
+        String pawlsString = _config.next();
+        if (!pawlsString.matches("[0-9]+")) {
+            throw new EnigmaException("Wrong number of pawls format.");
+        }
+        _pawls = Integer.parseInt(pawlsString);
+        if (_pawls >= _numRotors || _numRotors <= 0 || _pawls <= 0) {
+            throw new EnigmaException("Pawl number should be smaller than "
+                    + "rotor numbers and they should all be larger than 0");
+        }
+        readAllRotor();
+        if (_allRotors.size() < _numRotors) {
+            throw new EnigmaException("Not enough rotors provided.");
+        }
+        _catalog = new RotorCatalog(_allRotors.values());
+        _config = null;
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the number of rotor slots. */
+    int numRotors() {
+        return _numRotors;
+    }
+
+    /** Return the number of pawls. */
+    int numPawls() {
+        return _pawls;
+    }
+
+    /** Return the rotor named NAME, or null if there is none.  The result
+     *  is a prototype that must not be modified. */
+    Rotor rotor(String name) {
+        return _catalog.get(name);
+    }
+
+    /** Return the catalog of my rotors.  A machine from newMachine()
+     *  gives each rotor the same id in its own catalog. */
+    RotorCatalog catalog() {
+        return _catalog;
+    }
+
+    /** Return all available rotors, in the order in which they were
+     *  described.  These are prototypes that must not be modified. */
+    Collection<Rotor> rotors() {
+        return _allRotors.values();
+    }
+
+    /** Return a new machine with my dimensions and fresh copies of all
+     *  my rotors. */
+    Machine newMachine() {
+        List<Rotor> rotors = new ArrayList<>();
+        for (Rotor r : _allRotors.values()) {
+            rotors.add(r.copy());
+        }
+        return new Machine(_alphabet, _numRotors, _pawls, rotors);
+    }
+
+    /** Read ALL rotors into _allRotors. */
+    private void readAllRotor() {
+        while (_config.hasNext()) {
+            readRotor();
+        }
+        if (_tempRotorName != null) {
+            throw new EnigmaException("Invalid rotor description.");
+        }
+    }
+
+    /** Read ONE rotor, reading its description from _config.
+     * Also put it into _allRotors. */
+    private void readRotor() {
+        try {
+            Rotor result;
+            String name;
+            if (_tempRotorName == null) {
+                name = _config.next();
+            } else {
+                name = _tempRotorName;
+                _tempRotorName = null;
+            }
+            String typeAndNotches = _config.next();
+            String cycles = "";
+            while (_config.hasNext()) {
+                String cycle = _config.next();
+                if (cycle.charAt(0) == '('
+                        && cycle.charAt(cycle.length() - 1) == ')') {
+                    cycles += cycle;
+                } else {
+                    _tempRotorName = cycle;
+                    break;
+                }
+            }
+            char type = typeAndNotches.charAt(0);
+            String notches = typeAndNotches.substring(1);
+            if (type == 'M') {
+                result = new MovingRotor(name,
+                        PermutationStore.get(cycles, _alphabet), notches);
+            } else if (type == 'N') {
+                if (!notches.isEmpty()) {
+                    throw new EnigmaException("Fixed rotor should "
+                            + "have no notches.");
+                }
+                result = new FixedRotor(name,
+                        PermutationStore.get(cycles, _alphabet));
+            } else if (type == 'R') {
+                if (!notches.isEmpty()) {
+                    throw new EnigmaException("Reflector should "
+                            + "have no notches.");
+                } else if (cycles.replaceAll("[\\(\\)]", "")
+                        .codePoints().count()
+                        != _alphabet.size()) {
+                    throw new EnigmaException("Reflectors must "
+                            + "implement derangements.");
+                }
+                result = new Reflector(name,
+                        PermutationStore.get(cycles, _alphabet));
+            } else {
+                throw new EnigmaException("Invalid rotor type.");
+            }
+            _allRotors.put(name, result);
+        } catch (NoSuchElementException excp) {
+            throw error("bad rotor description");
+        }
+    }
+
+    /** Alphabet used in this machine. */
+    private final Alphabet _alphabet;
+
+    /** Number of rotor slots. */
+    private final int _numRotors;
+
+    /** Number of pawls. */
+    private final int _pawls;
+
+    /** ALL rotors, by name. */
+    private final LinkedHashMap<String, Rotor> _allRotors =
+        new LinkedHashMap<>();
+
+    /** My rotors, indexed by name. */
+    private final RotorCatalog _catalog;
+
+    /** Source of the configuration while it is being read. */
+    private Scanner _config;
+
+    /** Temp rotor name. */
+    private String _tempRotorName = null;
+}
@@ -0,0 +1,493 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import static enigma.EnigmaException.*;
+
+/** A key search spread over worker processes on this host.  The
+ *  keyspace is cut into leases, consecutive ranges of keys of a fixed
+ *  size.  The coordinator starts Worker JVMs as child processes, which
+ *  connect back to it over a loopback socket, and hands each a lease at
+ *  a time, keeping the best candidates from the results.
+ *
+ *  After each lease is done, the set of completed leases and the best
+ *  candidates so far are written atomically to a checkpoint file, so a
+ *  coordinator started again with the same job and checkpoint continues
+ *  where the last left off.  A worker that dies loses only its current
+ *  lease, which goes back to be handed out again, and is replaced by a
+ *  new process, up to a limit.  So does a worker that hangs: one whose
+ *  result does not arrive within a timeout scaled to the work in a
+ *  lease is taken to have failed.
+ *  @author Cheng Zhu
+ */
+class Coordinator {
+
+    /** A coordinator for the search of the keys of the configuration
+     *  whose text is CONFIG for the key of CIPHERTEXT (as alphabet
+     *  indices), assuming plugboard PLUGBOARD (in cycle notation), that
+     *  keeps the BEST highest scoring candidates.  Leases are of LEASE
+     *  keys, and the checkpoint is kept in CHECKPOINT. */
+    Coordinator(String config, String plugboard, int[] ciphertext,
+                int best, long lease, Path checkpoint) {
+        _config = config;
+        _plugboard = plugboard;
+        _ciphertext = ciphertext;
+        _best = best;
+        _lease = lease;
+        _checkpoint = checkpoint;
+        _keys = new Keyspace(new Configuration(new Scanner(config)));
+        long leases = (_keys.size() + lease - 1) / lease;
+        if (leases > Integer.MAX_VALUE) {
+            throw error("too many leases; use larger ones");
+        }
+        _leases = (int) leases;
+        _timeout = (int) Math.min(Integer.MAX_VALUE,
+                                  MIN_TIMEOUT + lease * ciphertext.length
+                                  / CHARS_PER_MILLI);
+        if (Files.exists(checkpoint)) {
+            readCheckpoint();
+        }
+        for (int k = _completed.nextClearBit(0); k < _leases;
+             k = _completed.nextClearBit(k + 1)) {
+            _pending.add(k);
+        }
+    }
+
+    /** Run the search on WORKERS worker processes, returning the best
+     *  candidates, best first. */
+    List<Candidate> run(int workers) {
+        try (ServerSocket server =
+                 new ServerSocket(0, workers,
+                                  InetAddress.getLoopbackAddress())) {
+            synchronized (this) {
+                _server = server;
+            }
+            Thread acceptor = new Thread(() -> accept(server),
+                                         "coordinator");
+            acceptor.setDaemon(true);
+            acceptor.start();
+            synchronized (this) {
+                _respawns = RESPAWNS_PER_WORKER * workers;
+                for (int k = 0; k < workers && !finished(); k += 1) {
+                    spawn();
+                }
+                while (!finished() && _live > 0 && _failure == null) {
+                    wait();
+                }
+                if (_failure != null) {
+                    throw _failure;
+                }
+                if (!finished()) {
+                    throw error("all workers failed");
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not listen for workers: %s",
+                        excp.getMessage());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("search interrupted");
+        } finally {
+            stopWorkers();
+        }
+        return best();
+    }
+
+    /** Return the best candidates so far, best first. */
+    synchronized List<Candidate> best() {
+        List<Candidate> result = new ArrayList<>(_found);
+        Collections.sort(result, Collections.reverseOrder());
+        return result;
+    }
+
+    /** Return the number of leases completed. */
+    synchronized int completed() {
+        return _completed.cardinality();
+    }
+
+    /** Return the number of leases. */
+    int leases() {
+        return _leases;
+    }
+
+    /** Return the number of keys tried by workers since I was made. */
+    synchronized long trials() {
+        return _trials;
+    }
+
+    /** Return the port on which I listen for workers, or -1 if I am not
+     *  running. */
+    synchronized int port() {
+        return _server == null ? -1 : _server.getLocalPort();
+    }
+
+    /** Accept workers on SERVER until it is closed, serving each on its
+     *  own thread. */
+    private void accept(ServerSocket server) {
+        try {
+            while (true) {
+                Socket socket = server.accept();
+                Thread worker = new Thread(() -> serve(socket), "lease");
+                worker.setDaemon(true);
+                worker.start();
+            }
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /** Send the job and then leases to the worker on SOCKET, collecting
+     *  its results, until all leases are done or the worker fails or
+     *  does not answer within the timeout.  In those cases, its lease is
+     *  released and its process killed, so that it is replaced or the
+     *  run ends.  A failure to checkpoint ends the run. */
+    private void serve(Socket socket) {
+        int lease = -1;
+        Process process = null;
+        try (socket) {
+            socket.setSoTimeout(timeout());
+            DataInputStream in = new DataInputStream(
+                new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(socket.getOutputStream()));
+            process = process(Worker.readHello(in));
+            Worker.writeJob(out, _config, _plugboard, _ciphertext, _best);
+            while (true) {
+                lease = nextLease();
+                if (lease < 0) {
+                    Worker.writeDone(out);
+                    out.flush();
+                    return;
+                }
+                long from = (long) lease * _lease;
+                Worker.writeLease(out, lease, from,
+                                  Math.min(_keys.size(), from + _lease));
+                out.flush();
+                if (in.readInt() != lease) {
+                    throw new IOException("result for the wrong lease");
+                }
+                long trials = in.readLong();
+                List<Candidate> found = new ArrayList<>();
+                for (int n = in.readInt(); n > 0; n -= 1) {
+                    found.add(Worker.readCandidate(in));
+                }
+                complete(lease, trials, found);
+                lease = -1;
+            }
+        } catch (IOException excp) {
+            if (lease >= 0) {
+                release(lease);
+            }
+            if (process != null) {
+                process.destroyForcibly();
+            }
+        } catch (EnigmaException excp) {
+            fail(excp);
+        }
+    }
+
+    /** Return the worker process whose pid is PID, or null if there is
+     *  none. */
+    private synchronized Process process(long pid) {
+        for (Process process : _workers) {
+            if (process.pid() == pid) {
+                return process;
+            }
+        }
+        return null;
+    }
+
+    /** End the run with the error EXCP. */
+    private synchronized void fail(EnigmaException excp) {
+        if (_failure == null) {
+            _failure = excp;
+        }
+        notifyAll();
+    }
+
+    /** Return the number of milliseconds to wait for the result of a
+     *  lease before taking its worker to have failed. */
+    synchronized int timeout() {
+        return _timeout;
+    }
+
+    /** Set the number of milliseconds to wait for the result of a lease
+     *  to MILLIS. */
+    synchronized void setTimeout(int millis) {
+        _timeout = millis;
+    }
+
+    /** Run NAME, which must speak the protocol of Worker, as the main
+     *  class of worker processes. */
+    synchronized void setWorkerClass(String name) {
+        _workerClass = name;
+    }
+
+    /** Return the number of a lease to hand out, waiting if all the
+     *  unfinished leases are out, or -1 if all leases are done or the
+     *  run is over. */
+    private synchronized int nextLease() {
+        while (_pending.isEmpty() && !finished() && !_stopping) {
+            try {
+                wait();
+            } catch (InterruptedException excp) {
+                return -1;
+            }
+        }
+        return finished() || _stopping ? -1 : _pending.poll();
+    }
+
+    /** Return LEASE, which a worker failed to finish, to be handed out
+     *  again. */
+    private synchronized void release(int lease) {
+        _pending.addFirst(lease);
+        notifyAll();
+    }
+
+    /** Record that LEASE was completed after TRIALS keys, with the best
+     *  candidates FOUND, and checkpoint. */
+    private synchronized void complete(int lease, long trials,
+                                       List<Candidate> found) {
+        if (_completed.get(lease)) {
+            return;
+        }
+        _completed.set(lease);
+        _trials += trials;
+        for (Candidate candidate : found) {
+            offer(candidate);
+        }
+        writeCheckpoint();
+        notifyAll();
+    }
+
+    /** Keep CANDIDATE if it is among the best found so far. */
+    private void offer(Candidate candidate) {
+        _found.add(candidate);
+        if (_found.size() > _best) {
+            _found.poll();
+        }
+    }
+
+    /** Return true iff all leases are done. */
+    private boolean finished() {
+        return _completed.cardinality() == _leases;
+    }
+
+    /** Start a worker process. */
+    private synchronized void spawn() {
+        String java = Paths.get(System.getProperty("java.home"), "bin",
+                                "java").toString();
+        ProcessBuilder builder =
+            new ProcessBuilder(java, "-cp",
+                               System.getProperty("java.class.path"),
+                               _workerClass,
+                               Integer.toString(_server.getLocalPort()));
+        builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        try {
+            Process process = builder.start();
+            _workers.add(process);
+            _live += 1;
+            process.onExit().thenRun(this::exited);
+        } catch (IOException excp) {
+            throw error("could not start worker: %s", excp.getMessage());
+        }
+    }
+
+    /** Note that a worker process has exited, replacing it if the search
+     *  is not finished and the limit on replacements allows. */
+    private synchronized void exited() {
+        _live -= 1;
+        if (!finished() && !_stopping && _respawns > 0) {
+            _respawns -= 1;
+            spawn();
+        }
+        notifyAll();
+    }
+
+    /** Stop accepting workers and wait briefly for them to exit, killing
+     *  any that do not. */
+    private void stopWorkers() {
+        List<Process> workers;
+        synchronized (this) {
+            _stopping = true;
+            workers = new ArrayList<>(_workers);
+            notifyAll();
+        }
+        for (Process process : workers) {
+            try {
+                if (!process.waitFor(EXIT_WAIT, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                }
+            } catch (InterruptedException excp) {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            _server = null;
+        }
+    }
+
+    /** Write the completed leases and best candidates durably to my
+     *  checkpoint file, via a temporary file that is forced to disk and
+     *  atomically renamed over it. */
+    private void writeCheckpoint() {
+        Path temp = _checkpoint.resolveSibling(_checkpoint.getFileName()
+                                               + ".tmp");
+        try (FileChannel channel =
+                 FileChannel.open(temp, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(channel)));
+            out.writeInt(MAGIC);
+            out.writeLong(_keys.size());
+            out.writeLong(_lease);
+            long[] words = _completed.toLongArray();
+            out.writeInt(words.length);
+            for (long word : words) {
+                out.writeLong(word);
+            }
+            out.writeInt(_found.size());
+            for (Candidate candidate : _found) {
+                Worker.writeCandidate(out, candidate);
+            }
+            out.flush();
+            channel.force(true);
+        } catch (IOException excp) {
+            throw error("could not write checkpoint %s", temp);
+        }
+        try {
+            Files.move(temp, _checkpoint, ATOMIC_MOVE, REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw error("could not write checkpoint %s", _checkpoint);
+        }
+    }
+
+    /** Restore the completed leases and best candidates from my checkpoint
+     *  file, which must be for a search of the same keys in leases of the
+     *  same size. */
+    private void readCheckpoint() {
+        try (InputStream stream = Files.newInputStream(_checkpoint)) {
+            DataInputStream in =
+                new DataInputStream(new BufferedInputStream(stream));
+            if (in.readInt() != MAGIC || in.readLong() != _keys.size()
+                || in.readLong() != _lease) {
+                throw error("%s is not a checkpoint of this search",
+                            _checkpoint);
+            }
+            long[] words = new long[in.readInt()];
+            for (int k = 0; k < words.length; k += 1) {
+                words[k] = in.readLong();
+            }
+            _completed.or(BitSet.valueOf(words));
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                offer(Worker.readCandidate(in));
+            }
+        } catch (IOException excp) {
+            throw error("could not read checkpoint %s", _checkpoint);
+        }
+    }
+
+    /** Least milliseconds to wait for the result of a lease. */
+    private static final int MIN_TIMEOUT = 60000;
+
+    /** Characters a worker is assumed to decipher and score per
+     *  millisecond at the least, in scaling the timeout to a lease. */
+    private static final long CHARS_PER_MILLI = 100;
+
+    /** Number of replacement workers allowed per worker started. */
+    private static final int RESPAWNS_PER_WORKER = 2;
+
+    /** Seconds to wait for a worker to exit once the search is done. */
+    private static final long EXIT_WAIT = 10;
+
+    /** First word of every coordinator checkpoint ("ENK1"). */
+    private static final int MAGIC = 0x454e4b31;
+
+    /** Text of the configuration. */
+    private final String _config;
+
+    /** The assumed plugboard. */
+    private final String _plugboard;
+
+    /** The message. */
+    private final int[] _ciphertext;
+
+    /** Number of candidates to keep. */
+    private final int _best;
+
+    /** Number of keys in a lease. */
+    private final long _lease;
+
+    /** The checkpoint file. */
+    private final Path _checkpoint;
+
+    /** The keys to search. */
+    private final Keyspace _keys;
+
+    /** Number of leases. */
+    private final int _leases;
+
+    /** Milliseconds to wait for the result of a lease. */
+    private int _timeout;
+
+    /** Leases completed. */
+    private final BitSet _completed = new BitSet();
+
+    /** Leases not completed and not handed out. */
+    private final ArrayDeque<Integer> _pending = new ArrayDeque<>();
+
+    /** The best candidates so far, worst first. */
+    private final PriorityQueue<Candidate> _found = new PriorityQueue<>();
+
+    /** Number of keys tried. */
+    private long _trials;
+
+    /** Worker processes started. */
+    private final List<Process> _workers = new ArrayList<>();
+
+    /** Number of worker processes still running. */
+    private int _live;
+
+    /** Number of replacement workers that may still be started. */
+    private int _respawns;
+
+    /** Main class of worker processes. */
+    private String _workerClass = "enigma.Worker";
+
+    /** The error that ended the run, or null. */
+    private EnigmaException _failure;
+
+    /** True once the search is over. */
+    private boolean _stopping;
+
+    /** Where workers connect, while running. */
+    private ServerSocket _server;
+}
@@ -0,0 +1,203 @@
+package enigma;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Coordinator and Worker classes.
+ *  @author Cheng Zhu
+ */
+public class CoordinatorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(60);
+
+    /** Return the first 200 letters of ENGLISH encrypted by rotors C IV
+     *  II at QD with no plugboard, as indices. */
+    private static int[] cipher() {
+        Configuration config = config(SMALL_CONFIG);
+        Machine mach = config.newMachine();
+        mach.insertRotors(new String[] { "C", "IV", "II" });
+        mach.setRotors("QD");
+        mach.setPlugboard(new Permutation("", config.alphabet()));
+        return indices(mach.convert(ENGLISH.substring(0, 200)),
+                       config.alphabet());
+    }
+
+    /** Act as a worker of process id PID connected over SOCKET: read the
+     *  job and take a lease, without answering it. */
+    private static void takeLease(Socket socket, long pid)
+        throws IOException {
+        DataOutputStream out =
+            new DataOutputStream(socket.getOutputStream());
+        out.writeLong(pid);
+        out.flush();
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        in.skipNBytes(in.readInt());
+        in.skipNBytes(in.readInt());
+        in.skipNBytes(4L * in.readInt());
+        in.readInt();
+        assertEquals(1, in.readByte());
+    }
+
+    /** A worker process that takes a lease and then hangs. */
+    public static class HangingWorker {
+        /** Connect to the coordinator on port ARGS[0], take a lease, and
+         *  never answer. */
+        public static void main(String... args) throws Exception {
+            try (Socket socket =
+                     new Socket(InetAddress.getLoopbackAddress(),
+                                Integer.parseInt(args[0]))) {
+                takeLease(socket, ProcessHandle.current().pid());
+                Thread.sleep(Long.MAX_VALUE);
+            }
+        }
+    }
+
+    @Test
+    public void testSearchAndResume() throws IOException {
+        Path dir = Files.createTempDirectory("coord");
+        Path checkpoint = dir.resolve("search.ckpt");
+        try {
+            Coordinator coord =
+                new Coordinator(SMALL_CONFIG, "", cipher(), 3, 4096,
+                                checkpoint);
+            assertEquals(7, coord.leases());
+            List<Candidate> best = coord.run(2);
+            assertEquals("* C IV II QD", best.get(0).toString());
+            assertEquals(3, best.size());
+            assertEquals(40 * 26 * 26, coord.trials());
+            assertTrue(Files.exists(checkpoint));
+
+            Coordinator resumed =
+                new Coordinator(SMALL_CONFIG, "", cipher(), 3, 4096,
+                                checkpoint);
+            assertEquals(7, resumed.completed());
+            assertEquals(best, resumed.run(2));
+            assertEquals(0, resumed.trials());
+        } finally {
+            Files.deleteIfExists(checkpoint);
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testWorkerLost() throws Exception {
+        Path dir = Files.createTempDirectory("coord");
+        Path checkpoint = dir.resolve("search.ckpt");
+        try {
+            Coordinator coord =
+                new Coordinator(SMALL_CONFIG, "", cipher(), 1, 1024,
+                                checkpoint);
+            List<List<Candidate>> result = new ArrayList<>();
+            Thread runner = new Thread(() -> result.add(coord.run(1)));
+            runner.start();
+            while (coord.port() < 0) {
+                Thread.sleep(1);
+            }
+            try (Socket socket =
+                     new Socket(InetAddress.getLoopbackAddress(),
+                                coord.port())) {
+                takeLease(socket, 0);
+            }
+            runner.join();
+            assertEquals("* C IV II QD", result.get(0).get(0).toString());
+            assertEquals(27, coord.completed());
+            assertEquals(40 * 26 * 26, coord.trials());
+        } finally {
+            Files.deleteIfExists(checkpoint);
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testWorkerHung() throws Exception {
+        Path dir = Files.createTempDirectory("coord");
+        Path checkpoint = dir.resolve("search.ckpt");
+        try {
+            Coordinator coord =
+                new Coordinator(SMALL_CONFIG, "", cipher(), 1, 1024,
+                                checkpoint);
+            assertTrue(coord.timeout() >= 60000);
+            coord.setTimeout(3000);
+            List<List<Candidate>> result = new ArrayList<>();
+            Thread runner = new Thread(() -> result.add(coord.run(1)));
+            runner.start();
+            while (coord.port() < 0) {
+                Thread.sleep(1);
+            }
+            try (Socket socket =
+                     new Socket(InetAddress.getLoopbackAddress(),
+                                coord.port())) {
+                takeLease(socket, 0);
+                runner.join();
+            }
+            assertEquals("* C IV II QD", result.get(0).get(0).toString());
+            assertEquals(27, coord.completed());
+            assertEquals(40 * 26 * 26, coord.trials());
+        } finally {
+            Files.deleteIfExists(checkpoint);
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testOnlyWorkerHung() throws Exception {
+        Path dir = Files.createTempDirectory("coord");
+        Path checkpoint = dir.resolve("search.ckpt");
+        try {
+            Coordinator coord =
+                new Coordinator(SMALL_CONFIG, "", cipher(), 1, 1024,
+                                checkpoint);
+            coord.setTimeout(1000);
+            coord.setWorkerClass(HangingWorker.class.getName());
+            try {
+                coord.run(1);
+                fail("search finished with only hung workers");
+            } catch (EnigmaException excp) {
+                assertEquals("all workers failed", excp.getMessage());
+            }
+            assertEquals(0, coord.completed());
+            assertEquals(0, ProcessHandle.current().children()
+                         .filter(ProcessHandle::isAlive).count());
+        } finally {
+            Files.deleteIfExists(checkpoint);
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testCheckpointFails() throws Exception {
+        Path dir = Files.createTempDirectory("coord");
+        Path checkpoint = dir.resolve("missing").resolve("search.ckpt");
+        try {
+            Coordinator coord =
+                new Coordinator(SMALL_CONFIG, "", cipher(), 1, 1024,
+                                checkpoint);
+            try {
+                coord.run(1);
+                fail("search finished without checkpoints");
+            } catch (EnigmaException excp) {
+                assertTrue(excp.getMessage().startsWith(
+                    "could not write checkpoint"));
+            }
+            assertEquals(0, ProcessHandle.current().children()
+                         .filter(ProcessHandle::isAlive).count());
+        } finally {
+            Files.delete(dir);
+        }
+    }
+}
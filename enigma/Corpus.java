@@ -0,0 +1,309 @@
+package enigma;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static enigma.EnigmaException.*;
+
+/** Random but valid test corpora: a configuration, with a random
+ *  alphabet and catalog of reflectors, fixed rotors, and moving rotors
+ *  with random notches, and an input file of any length, made of many
+ *  settings sections, each choosing a legal rotor order, setting, and
+ *  plugboard, followed by message lines with random whitespace and the
+ *  occasional blank line.  Alphabets are mostly small and printable
+ *  ASCII, but some are large or include CJK and supplementary
+ *  characters.  A corpus is determined by its seed.  See Differential,
+ *  which checks the fast engines against each other on a corpus.
+ *  @author Cheng Zhu
+ */
+public final class Corpus {
+
+    /** Write the corpus with seed ARGS[0]: its configuration to the file
+     *  named ARGS[1] and ARGS[3] bytes of input to the file named
+     *  ARGS[2]. */
+    public static void main(String... args) {
+        try {
+            if (args.length != 4 || !args[0].matches("-?[0-9]+")
+                || !args[3].matches("[0-9]+")) {
+                throw error("Usage: java enigma.Corpus SEED CONFIG INPUT "
+                            + "BYTES");
+            }
+            Corpus corpus = new Corpus(Long.parseLong(args[0]));
+            try (Writer config = writer(args[1]);
+                 Writer input = writer(args[2])) {
+                config.write(corpus.config());
+                corpus.writeInput(input, Long.parseLong(args[3]));
+            } catch (IOException excp) {
+                throw error("could not write corpus: %s",
+                            excp.getMessage());
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** The corpus with seed SEED. */
+    Corpus(long seed) {
+        _seed = seed;
+        Random rand = new Random(seed);
+        int size = 2 * (1 + rand.nextInt(32));
+        if (rand.nextInt(8) == 0) {
+            size = 2 * (100 + rand.nextInt(2000));
+        }
+        _symbols = symbols(size, rand.nextInt(4) == 0, rand);
+        _numRotors = 2 + rand.nextInt(7);
+        _pawls = 1 + rand.nextInt(_numRotors - 1);
+        _reflectors = names("R", 1 + rand.nextInt(3));
+        _fixed = names("F", _numRotors - _pawls - 1 + rand.nextInt(3));
+        _moving = names("M", _pawls + rand.nextInt(4));
+
+        StringBuilder config = new StringBuilder();
+        for (int ch : _symbols) {
+            config.appendCodePoint(ch);
+        }
+        config.append(" ").append(_numRotors).append(" ").append(_pawls)
+            .append("\n");
+        for (String name : _reflectors) {
+            config.append(name).append(" R ")
+                .append(pairs(_symbols.length / 2, rand)).append("\n");
+        }
+        for (String name : _fixed) {
+            config.append(name).append(" N ").append(cycles(rand))
+                .append("\n");
+        }
+        for (String name : _moving) {
+            config.append(name).append(" M");
+            int density = rand.nextInt(4);
+            for (int ch : _symbols) {
+                if (rand.nextInt(8) < density) {
+                    config.appendCodePoint(ch);
+                }
+            }
+            config.append(" ").append(cycles(rand)).append("\n");
+        }
+        _config = config.toString();
+    }
+
+    /** Return the text of my configuration file. */
+    String config() {
+        return _config;
+    }
+
+    /** Write at least BYTES bytes of input (in UTF-8) to OUT, ending with
+     *  a complete line. */
+    void writeInput(Writer out, long bytes) throws IOException {
+        Random rand = new Random(~_seed);
+        long written = 0;
+        while (written < bytes) {
+            String settings = settingsLine(rand);
+            out.write(settings);
+            written += utf8Length(settings);
+            int lines = rand.nextInt(8) == 0 ? 2000 : 1 + rand.nextInt(100);
+            for (int k = 0; k < lines && written < bytes; k += 1) {
+                String line = messageLine(rand);
+                out.write(line);
+                written += utf8Length(line);
+            }
+        }
+    }
+
+    /** Return a random settings line, with its newline, using RAND. */
+    private String settingsLine(Random rand) {
+        StringBuilder result = new StringBuilder("*");
+        result.append(" ").append(pick(_reflectors, 1, rand).get(0));
+        for (String name
+                 : pick(_fixed, _numRotors - _pawls - 1, rand)) {
+            result.append(" ").append(name);
+        }
+        for (String name : pick(_moving, _pawls, rand)) {
+            result.append(" ").append(name);
+        }
+        result.append(" ");
+        for (int k = 1; k < _numRotors; k += 1) {
+            result.appendCodePoint(_symbols[rand.nextInt(_symbols.length)]);
+        }
+        if (rand.nextInt(3) > 0) {
+            result.append(" ").append(pairs(1 + rand.nextInt(
+                Math.min(13, _symbols.length / 2)), rand));
+        }
+        return result.append("\n").toString();
+    }
+
+    /** Return a random message line, with its newline, using RAND: blank
+     *  one time in 20, and otherwise up to 120 characters with spaces and
+     *  tabs here and there. */
+    private String messageLine(Random rand) {
+        StringBuilder result = new StringBuilder();
+        if (rand.nextInt(20) == 0) {
+            return rand.nextBoolean() ? "\n" : " \t\n";
+        }
+        for (int n = rand.nextInt(121); n > 0; n -= 1) {
+            int r = rand.nextInt(16);
+            if (r == 0) {
+                result.append(' ');
+            } else if (r == 1 && result.length() > 0) {
+                result.append('\t');
+            }
+            result.appendCodePoint(_symbols[rand.nextInt(_symbols.length)]);
+        }
+        return result.append("\n").toString();
+    }
+
+    /** Return COUNT disjoint two-cycles of my symbols, chosen using
+     *  RAND, separated by spaces. */
+    private String pairs(int count, Random rand) {
+        List<Integer> order = shuffled(rand);
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < count; i += 1) {
+            result.append(i == 0 ? "(" : " (")
+                .appendCodePoint(order.get(2 * i))
+                .appendCodePoint(order.get(2 * i + 1)).append(")");
+        }
+        return result.toString();
+    }
+
+    /** Return a random permutation of my symbols in cycle notation,
+     *  chosen using RAND.  Some one-cycles are written out, and the rest
+     *  left implicit. */
+    private String cycles(Random rand) {
+        List<Integer> order = shuffled(rand);
+        StringBuilder result = new StringBuilder();
+        int start = 0;
+        while (start < order.size()) {
+            int length = rand.nextInt(4) == 0 ? 1
+                : 1 + rand.nextInt(order.size() - start);
+            length = Math.min(length, order.size() - start);
+            if (length > 1 || rand.nextBoolean()) {
+                result.append(result.length() == 0 ? "(" : " (");
+                for (int i = start; i < start + length; i += 1) {
+                    result.appendCodePoint(order.get(i));
+                }
+                result.append(")");
+            }
+            start += length;
+        }
+        return result.toString();
+    }
+
+    /** Return my symbols in a random order, using RAND. */
+    private List<Integer> shuffled(Random rand) {
+        List<Integer> result = new ArrayList<>();
+        for (int ch : _symbols) {
+            result.add(ch);
+        }
+        Collections.shuffle(result, rand);
+        return result;
+    }
+
+    /** Return COUNT distinct elements of NAMES, in a random order,
+     *  chosen using RAND. */
+    private static List<String> pick(List<String> names, int count,
+                                     Random rand) {
+        List<String> result = new ArrayList<>(names);
+        Collections.shuffle(result, rand);
+        return result.subList(0, count);
+    }
+
+    /** Return COUNT rotor names beginning with PREFIX. */
+    private static List<String> names(String prefix, int count) {
+        List<String> result = new ArrayList<>();
+        for (int k = 0; k < count; k += 1) {
+            result.add(prefix + k);
+        }
+        return result;
+    }
+
+    /** Return SIZE distinct random alphabet symbols, drawn from printable
+     *  ASCII, Greek, and CJK, and, if WIDE, supplementary characters,
+     *  using RAND. */
+    private static int[] symbols(int size, boolean wide, Random rand) {
+        List<Integer> pool = new ArrayList<>();
+        for (int ch = '!'; ch <= '~'; ch += 1) {
+            if (ch != '*' && ch != '(' && ch != ')') {
+                pool.add(ch);
+            }
+        }
+        if (size > pool.size() || rand.nextInt(4) == 0) {
+            for (int ch = 0x391; ch <= 0x3a9; ch += 1) {
+                if (ch != 0x3a2) {
+                    pool.add(ch);
+                }
+            }
+            for (int ch = 0x4e00; ch < 0x4e00 + size; ch += 1) {
+                pool.add(ch);
+            }
+        }
+        if (wide) {
+            for (int ch = 0x20000; ch < 0x20000 + size; ch += 1) {
+                pool.add(ch);
+            }
+            pool.add(0x1f600);
+        }
+        Collections.shuffle(pool, rand);
+        int[] result = new int[size];
+        for (int i = 0; i < size; i += 1) {
+            result[i] = pool.get(i);
+        }
+        return result;
+    }
+
+    /** Return the length of TEXT in UTF-8. */
+    private static int utf8Length(String text) {
+        int result = 0;
+        for (int i = 0; i < text.length(); i += 1) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                result += 1;
+            } else if (c < 0x800) {
+                result += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                result += 4;
+                i += 1;
+            } else {
+                result += 3;
+            }
+        }
+        return result;
+    }
+
+    /** Return a Writer of UTF-8 to the file named NAME. */
+    private static Writer writer(String name) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(
+            Files.newOutputStream(Paths.get(name)), LineInput.CHARSET),
+                                  1 << 16);
+    }
+
+    /** My seed. */
+    private final long _seed;
+
+    /** My alphabet's symbols, as code points. */
+    private final int[] _symbols;
+
+    /** Number of rotor slots. */
+    private final int _numRotors;
+
+    /** Number of pawls. */
+    private final int _pawls;
+
+    /** Names of my reflectors. */
+    private final List<String> _reflectors;
+
+    /** Names of my fixed rotors. */
+    private final List<String> _fixed;
+
+    /** Names of my moving rotors. */
+    private final List<String> _moving;
+
+    /** Text of my configuration file. */
+    private final String _config;
+}
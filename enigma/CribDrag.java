@@ -0,0 +1,121 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** Crib dragging: finding the places in a ciphertext where a crib (a
+ *  guess at some plaintext) could lie.  A machine whose reflector is a
+ *  derangement never converts a letter to itself, so a crib cannot lie
+ *  at any offset where one of its letters matches the ciphertext letter
+ *  under it.
+ *
+ *  The ciphertext is kept as one bitset per letter, marking the
+ *  positions where that letter occurs.  An offset O is ruled out by crib
+ *  position J iff bit O + J is set in the bitset of crib letter J, so
+ *  the offsets ruled out by the whole crib are the union of those
+ *  bitsets, each shifted down by its J; these are computed a word (64
+ *  offsets) at a time, in blocks of words small enough to stay in cache.
+ *  As most offsets are ruled out by the first few dozen letters of a
+ *  long crib, a block is finished early once all its offsets are.
+ *  @author Cheng Zhu
+ */
+class CribDrag {
+
+    /** A crib dragger for CIPHERTEXT (as indices into the alphabet of
+     *  CONFIG), for machines described by CONFIG, whose reflectors must
+     *  all be derangements. */
+    CribDrag(Configuration config, int[] ciphertext) {
+        for (Rotor r : config.rotors()) {
+            if (r.reflecting() && !r.permutation().derangement()) {
+                throw error("reflector %s maps some letter to itself",
+                            r.name());
+            }
+        }
+        _length = ciphertext.length;
+        int words = (_length + Long.SIZE - 1) / Long.SIZE;
+        _letters = new long[config.alphabet().size()][words + 1];
+        for (int i = 0; i < _length; i += 1) {
+            _letters[ciphertext[i]][i >>> 6] |= 1L << i;
+        }
+    }
+
+    /** Return the length of my ciphertext. */
+    int length() {
+        return _length;
+    }
+
+    /** Return, in increasing order, the offsets in my ciphertext at which
+     *  CRIB (as alphabet indices) could lie. */
+    int[] offsets(int[] crib) {
+        int count = _length - crib.length + 1;
+        if (count <= 0) {
+            return new int[0];
+        }
+        int words = (count + Long.SIZE - 1) / Long.SIZE;
+        long[] excluded = new long[words];
+        for (int lo = 0; lo < words; lo += BLOCK) {
+            int hi = Math.min(words, lo + BLOCK);
+            for (int j = 0; j < crib.length; j += 1) {
+                exclude(excluded, lo, hi, _letters[crib[j]], j);
+                if (j % CHECK == CHECK - 1 && full(excluded, lo, hi)) {
+                    break;
+                }
+            }
+        }
+        int tail = count % Long.SIZE;
+        if (tail != 0) {
+            excluded[words - 1] |= -1L << tail;
+        }
+        int survivors = 0;
+        for (long word : excluded) {
+            survivors += Long.bitCount(~word);
+        }
+        int[] result = new int[survivors];
+        int n = 0;
+        for (int w = 0; w < words; w += 1) {
+            for (long left = ~excluded[w]; left != 0; left &= left - 1) {
+                result[n] = w * Long.SIZE + Long.numberOfTrailingZeros(left);
+                n += 1;
+            }
+        }
+        return result;
+    }
+
+    /** Return true iff words LO .. HI-1 of BITS are all ones. */
+    private static boolean full(long[] bits, int lo, int hi) {
+        long all = -1L;
+        for (int w = lo; w < hi; w += 1) {
+            all &= bits[w];
+        }
+        return all == -1L;
+    }
+
+    /** OR into words LO .. HI-1 of EXCLUDED the bitset BITS shifted down
+     *  by J places. */
+    private static void exclude(long[] excluded, int lo, int hi,
+                                long[] bits, int j) {
+        int skip = j >>> 6, shift = j & (Long.SIZE - 1);
+        if (shift == 0) {
+            for (int w = lo; w < hi; w += 1) {
+                excluded[w] |= bits[w + skip];
+            }
+        } else {
+            for (int w = lo; w < hi; w += 1) {
+                excluded[w] |= (bits[w + skip] >>> shift)
+                    | (bits[w + skip + 1] << (Long.SIZE - shift));
+            }
+        }
+    }
+
+    /** Number of words of offsets computed together. */
+    private static final int BLOCK = 16;
+
+    /** Number of crib letters applied to a block between checks of
+     *  whether all its offsets are already ruled out. */
+    private static final int CHECK = 32;
+
+    /** Length of the ciphertext. */
+    private final int _length;
+
+    /** Bitsets of the positions of each letter, padded by one word. */
+    private final long[][] _letters;
+}
@@ -0,0 +1,458 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import static enigma.EnigmaException.*;
+
+/** A catalog of the cycle structures of a keyspace, in the manner of
+ *  Rejewski.  A message key of three letters, enciphered twice at the
+ *  start of each message, is encrypted by the rotor maps A1 .. A6 of the
+ *  first six positions from the key's initial setting.  The products
+ *  A4 A1, A5 A2 and A6 A3 (A1 then A4, and so on) can be reconstructed
+ *  from enough indicators, and their cycle types do not depend on the
+ *  plugboard, which only conjugates them.  The three cycle types are the
+ *  characteristic of the setting.
+ *
+ *  The catalog holds a 64-bit fingerprint of the characteristic of
+ *  every key of a Keyspace, sorted, in an index file that is mapped
+ *  into memory and searched by bisection.  Since distinct
+ *  characteristics may share a fingerprint, keys found are checked
+ *  against the characteristic itself.  The catalog is built one rotor
+ *  order per shard file, in parallel; shards are written atomically and
+ *  kept, so an interrupted build resumes with the shards it lacks, and
+ *  the shards are then merged into the index.
+ *  @author Cheng Zhu
+ */
+class CycleCatalog {
+
+    /** A catalog of the keys of KEYS kept in directory DIR. */
+    CycleCatalog(Keyspace keys, Path dir) {
+        _keys = keys;
+        _dir = dir;
+    }
+
+    /** Build whatever shards and index are missing, using EXECUTOR to
+     *  build shards in parallel. */
+    void build(ExecutorService executor) {
+        if (built()) {
+            return;
+        }
+        try {
+            Files.createDirectories(_dir);
+        } catch (IOException excp) {
+            throw error("could not create catalog directory %s", _dir);
+        }
+        List<Callable<Void>> shards = new ArrayList<>();
+        for (int order = 0; order < _keys.orders(); order += 1) {
+            if (!Files.exists(shard(order))) {
+                int k = order;
+                shards.add(() -> {
+                    buildShard(k);
+                    return null;
+                });
+            }
+        }
+        try {
+            for (Future<Void> shard : executor.invokeAll(shards)) {
+                shard.get();
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("catalog build interrupted");
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof EnigmaException) {
+                throw (EnigmaException) excp.getCause();
+            }
+            throw error("catalog build failed: %s", excp.getCause());
+        }
+        merge();
+    }
+
+    /** Return true iff my index has been built. */
+    boolean built() {
+        return Files.exists(index());
+    }
+
+    /** Return the keys, in increasing order, whose characteristic is
+     *  that of PRODUCTS, the products A4 A1, A5 A2 and A6 A3. */
+    long[] lookup(Permutation... products) {
+        if (products.length != KEY_LENGTH) {
+            throw error("a characteristic has %d products", KEY_LENGTH);
+        }
+        int[][] types = new int[KEY_LENGTH][];
+        for (int j = 0; j < KEY_LENGTH; j += 1) {
+            types[j] = products[j].cycleType();
+        }
+        long[] found = lookup(fingerprint(types));
+        Machine mach = _keys.config().newMachine();
+        mach.setPlugboard(new Permutation("", mach.alphabet()));
+        Scratch scratch = new Scratch(mach.alphabet().size());
+        int n = 0;
+        for (long key : found) {
+            characteristic(key, mach, scratch);
+            boolean same = true;
+            for (int j = 0; j < KEY_LENGTH && same; j += 1) {
+                same = Arrays.equals(types[j], 0, types[j].length,
+                                     scratch._types[j], 0,
+                                     scratch._counts[j]);
+            }
+            if (same) {
+                found[n] = key;
+                n += 1;
+            }
+        }
+        long[] result = Arrays.copyOf(found, n);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /** Return the keys in my index whose characteristic has fingerprint
+     *  FINGERPRINT, which may include some with other characteristics. */
+    long[] lookup(long fingerprint) {
+        ByteBuffer index = mapped();
+        long count = (index.limit() - HEADER) / ENTRY;
+        long lo = 0, hi = count;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (index.getLong(entry(mid)) < fingerprint) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        int n = 0;
+        while (lo + n < count && index.getLong(entry(lo + n)) == fingerprint) {
+            n += 1;
+        }
+        long[] result = new long[n];
+        for (int i = 0; i < n; i += 1) {
+            result[i] = index.getLong(entry(lo + i) + Long.BYTES);
+        }
+        return result;
+    }
+
+    /** Return the fingerprint of the characteristic whose cycle types are
+     *  TYPES, each listed longest cycle first. */
+    static long fingerprint(int[][] types) {
+        long h = FNV_BASIS;
+        for (int[] type : types) {
+            h = fingerprint(type, type.length, h);
+        }
+        return h;
+    }
+
+    /** Return the fingerprint H extended by the first COUNT cycle lengths
+     *  of TYPE and the end of a cycle type. */
+    private static long fingerprint(int[] type, int count, long h) {
+        for (int i = 0; i < count; i += 1) {
+            h = (h ^ type[i]) * FNV_PRIME;
+        }
+        return (h ^ -1L) * FNV_PRIME;
+    }
+
+    /** Fill SCRATCH with the characteristic of key KEY, using MACH, whose
+     *  rotors must already be those of KEY's rotor order or absent, and
+     *  return its fingerprint. */
+    private long characteristic(long key, Machine mach, Scratch scratch) {
+        int order = _keys.orderOf(key);
+        if (order != scratch._order) {
+            mach.insertRotors(_keys.order(order));
+            scratch._order = order;
+        }
+        _keys.setting(key, scratch._setting);
+        mach.setRotors(scratch._setting);
+        for (int i = 0; i < 2 * KEY_LENGTH; i += 1) {
+            mach.stepCore(scratch._cores[i]);
+        }
+        long h = FNV_BASIS;
+        for (int j = 0; j < KEY_LENGTH; j += 1) {
+            Permutation.compose(scratch._cores[j + KEY_LENGTH],
+                                scratch._cores[j], scratch._product);
+            scratch._counts[j] =
+                Permutation.cycleType(scratch._product, scratch._seen,
+                                      scratch._types[j]);
+            h = fingerprint(scratch._types[j], scratch._counts[j], h);
+        }
+        return h;
+    }
+
+    /** Compute and write the shard for rotor order ORDER. */
+    private void buildShard(int order) {
+        long per = _keys.settingsPerOrder();
+        if (per > Integer.MAX_VALUE) {
+            throw error("too many settings per rotor order to catalog");
+        }
+        long first = order * per;
+        long[] prints = new long[(int) per];
+        long[] keys = new long[(int) per];
+        Machine mach = _keys.config().newMachine();
+        mach.setPlugboard(new Permutation("", mach.alphabet()));
+        Scratch scratch = new Scratch(mach.alphabet().size());
+        for (int i = 0; i < prints.length; i += 1) {
+            keys[i] = first + i;
+            prints[i] = characteristic(keys[i], mach, scratch);
+        }
+        sort(prints, keys, 0, prints.length - 1);
+        Path file = shard(order);
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel =
+                 FileChannel.open(temp, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(channel)));
+            out.writeInt(MAGIC);
+            out.writeLong(prints.length);
+            for (int i = 0; i < prints.length; i += 1) {
+                out.writeLong(prints[i]);
+                out.writeLong(keys[i]);
+            }
+            out.flush();
+            channel.force(true);
+        } catch (IOException excp) {
+            throw error("could not write catalog shard %s", temp);
+        }
+        move(temp, file);
+    }
+
+    /** Merge my shards, each sorted by fingerprint, into my index. */
+    private void merge() {
+        Path file = index();
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        PriorityQueue<Shard> queue = new PriorityQueue<>();
+        try (FileChannel channel =
+                 FileChannel.open(temp, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(channel)));
+            out.writeInt(MAGIC);
+            out.writeInt(0);
+            out.writeLong(_keys.size());
+            for (int order = 0; order < _keys.orders(); order += 1) {
+                Shard shard = new Shard(shard(order));
+                if (shard.next()) {
+                    queue.add(shard);
+                }
+            }
+            while (!queue.isEmpty()) {
+                Shard shard = queue.poll();
+                out.writeLong(shard._print);
+                out.writeLong(shard._key);
+                if (shard.next()) {
+                    queue.add(shard);
+                } else {
+                    shard._in.close();
+                }
+            }
+            out.flush();
+            channel.force(true);
+        } catch (IOException excp) {
+            throw error("could not write catalog index %s", temp);
+        } finally {
+            for (Shard shard : queue) {
+                try {
+                    shard._in.close();
+                } catch (IOException excp) {
+                    /* Ignore: the shard was only read. */
+                }
+            }
+        }
+        move(temp, file);
+    }
+
+    /** Return my index, mapped into memory. */
+    private synchronized ByteBuffer mapped() {
+        if (_mapped == null) {
+            try (FileChannel channel = FileChannel.open(index(), READ)) {
+                if (channel.size() > Integer.MAX_VALUE) {
+                    throw error("catalog index %s is too large to map",
+                                index());
+                }
+                _mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                      channel.size());
+            } catch (IOException excp) {
+                throw error("could not read catalog index %s", index());
+            }
+            if (_mapped.getInt(0) != MAGIC
+                || _mapped.getLong(2 * Integer.BYTES) != _keys.size()) {
+                _mapped = null;
+                throw error("%s is not a catalog of this keyspace", index());
+            }
+        }
+        return _mapped.duplicate();
+    }
+
+    /** Return the byte offset of entry I of the index. */
+    private static int entry(long i) {
+        return (int) (HEADER + i * ENTRY);
+    }
+
+    /** Return the file of the shard for rotor order ORDER. */
+    private Path shard(int order) {
+        return _dir.resolve(String.format("order-%d.shard", order));
+    }
+
+    /** Return the file of my index. */
+    private Path index() {
+        return _dir.resolve("catalog.idx");
+    }
+
+    /** Atomically rename TEMP to FILE. */
+    private static void move(Path temp, Path file) {
+        try {
+            Files.move(temp, file, ATOMIC_MOVE, REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw error("could not write %s", file);
+        }
+    }
+
+    /** Sort PRINTS[LO .. HI] into increasing order, moving the elements
+     *  of KEYS in the same way. */
+    private static void sort(long[] prints, long[] keys, int lo, int hi) {
+        while (lo < hi) {
+            long pivot = prints[(lo + hi) >>> 1];
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (prints[i] < pivot) {
+                    i += 1;
+                }
+                while (prints[j] > pivot) {
+                    j -= 1;
+                }
+                if (i <= j) {
+                    long t = prints[i];
+                    prints[i] = prints[j];
+                    prints[j] = t;
+                    t = keys[i];
+                    keys[i] = keys[j];
+                    keys[j] = t;
+                    i += 1;
+                    j -= 1;
+                }
+            }
+            if (j - lo < hi - i) {
+                sort(prints, keys, lo, j);
+                lo = i;
+            } else {
+                sort(prints, keys, i, hi);
+                hi = j;
+            }
+        }
+    }
+
+    /** Working storage for computing characteristics. */
+    private class Scratch {
+        /** Storage for an alphabet of SIZE letters. */
+        Scratch(int size) {
+            _setting = new int[_keys.config().numRotors() - 1];
+            _cores = new int[2 * KEY_LENGTH][size];
+            _product = new int[size];
+            _seen = new boolean[size];
+            _types = new int[KEY_LENGTH][size];
+            _counts = new int[KEY_LENGTH];
+        }
+
+        /** Rotor order in the machine, or -1. */
+        private int _order = -1;
+        /** Setting of the current key. */
+        private final int[] _setting;
+        /** Rotor maps at the first positions. */
+        private final int[][] _cores;
+        /** The product being typed. */
+        private final int[] _product;
+        /** Scratch for cycleType. */
+        private final boolean[] _seen;
+        /** Cycle lengths of each product, longest first. */
+        private final int[][] _types;
+        /** Number of cycles of each product. */
+        private final int[] _counts;
+    }
+
+    /** A reader of a shard file, positioned at an entry. */
+    private static class Shard implements Comparable<Shard> {
+        /** A reader of the shard in FILE. */
+        Shard(Path file) throws IOException {
+            _in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file)));
+            if (_in.readInt() != MAGIC) {
+                _in.close();
+                throw error("%s is not a catalog shard", file);
+            }
+            _left = _in.readLong();
+        }
+
+        /** Move to the next entry, returning false if there is none. */
+        boolean next() throws IOException {
+            if (_left == 0) {
+                return false;
+            }
+            _print = _in.readLong();
+            _key = _in.readLong();
+            _left -= 1;
+            return true;
+        }
+
+        @Override
+        public int compareTo(Shard other) {
+            int c = Long.compare(_print, other._print);
+            return c != 0 ? c : Long.compare(_key, other._key);
+        }
+
+        /** The shard's contents. */
+        private final DataInputStream _in;
+        /** Number of entries not yet read. */
+        private long _left;
+        /** Fingerprint of the current entry. */
+        private long _print;
+        /** Key of the current entry. */
+        private long _key;
+    }
+
+    /** Number of letters in a message key. */
+    static final int KEY_LENGTH = 3;
+
+    /** First word of every shard and index file ("ENR1"). */
+    private static final int MAGIC = 0x454e5231;
+
+    /** Bytes before the first entry of an index. */
+    private static final int HEADER = 2 * Integer.BYTES + Long.BYTES;
+
+    /** Bytes in an entry (fingerprint and key). */
+    private static final int ENTRY = 2 * Long.BYTES;
+
+    /** FNV-1a offset basis. */
+    private static final long FNV_BASIS = 0xcbf29ce484222325L;
+
+    /** FNV-1a prime. */
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /** The keys catalogued. */
+    private final Keyspace _keys;
+
+    /** Directory holding my shards and index. */
+    private final Path _dir;
+
+    /** My index, once mapped. */
+    private ByteBuffer _mapped;
+}
@@ -0,0 +1,94 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the CycleCatalog class.
+ *  @author Cheng Zhu
+ */
+public class CycleCatalogTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /** Return the products A4 A1, A5 A2, A6 A3 of the maps of a machine
+     *  from CONFIG with ROTORS at SETTING and plugboard PLUGBOARD. */
+    private static Permutation[] products(Configuration config,
+                                          String[] rotors, String setting,
+                                          String plugboard) {
+        Machine mach = config.newMachine();
+        mach.insertRotors(rotors);
+        mach.setRotors(setting);
+        mach.setPlugboard(new Permutation("", config.alphabet()));
+        Permutation plugs = new Permutation(plugboard, config.alphabet());
+        Permutation[] maps = new Permutation[6];
+        for (int i = 0; i < 6; i += 1) {
+            int[] core = new int[config.alphabet().size()];
+            mach.stepCore(core);
+            maps[i] = new Permutation(core, config.alphabet())
+                .conjugate(plugs);
+        }
+        Permutation[] result = new Permutation[3];
+        for (int j = 0; j < 3; j += 1) {
+            result[j] = maps[j + 3].compose(maps[j]);
+        }
+        return result;
+    }
+
+    /** Remove DIR and everything in it. */
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : (Iterable<Path>) files
+                     .sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void testLookup() throws IOException {
+        Configuration config = config(SMALL_CONFIG);
+        Keyspace keys = new Keyspace(config);
+        Path dir = Files.createTempDirectory("catalog");
+        try {
+            CycleCatalog catalog = new CycleCatalog(keys, dir);
+            assertFalse(catalog.built());
+            catalog.build(new ForkJoinPool(4));
+            assertTrue(catalog.built());
+            Permutation[] observed =
+                products(config, new String[] { "C", "V", "I" }, "RE",
+                         "(AZ) (QW) (MN) (EX)");
+            long[] found = catalog.lookup(observed);
+            long key = -1;
+            for (long k : found) {
+                if (Arrays.equals(keys.orderNames(keys.orderOf(k)),
+                                  new String[] { "C", "V", "I" })
+                    && keys.settingString(k).equals("RE")) {
+                    key = k;
+                }
+            }
+            assertTrue(key >= 0);
+            assertTrue(found.length < keys.size() / 100);
+
+            Files.delete(dir.resolve("catalog.idx"));
+            Files.delete(dir.resolve("order-3.shard"));
+            catalog = new CycleCatalog(keys, dir);
+            catalog.build(new ForkJoinPool(2));
+            assertArrayEquals(found, catalog.lookup(observed));
+        } finally {
+            delete(dir);
+        }
+    }
+}
@@ -0,0 +1,546 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.stream.Stream;
+
+import static enigma.EnigmaException.*;
+
+/** A differential tester of the ways of running a machine.  The output
+ *  for an input file is first produced by a reference: the rotor-by-rotor
+ *  algorithm of the original Machine, which scans every pawl and passes
+ *  each character through the Rotors one at a time.  Then each engine
+ *  (Machine a character at a time, which uses RotorTree; Machine on
+ *  whole messages, which uses a generated RotorCompiler engine; a
+ *  LaneMachine; Main in-process, plain, with each kind of keystream
+ *  cache, and checkpointing; and Batch, on the input split into files)
+ *  produces it again, and its output is compared byte for byte with the
+ *  reference's as it is written.  The report gives each engine's
+ *  throughput and, if it diverges, where it first does.  Inputs may be
+ *  of any size; outputs are streamed, and only the reference's is
+ *  kept, in a temporary file.
+ *  @author Cheng Zhu
+ */
+public final class Differential {
+
+    /** Check the engines on the configuration in the file named ARGS[0]
+     *  and the input in the file named ARGS[1], running ARGS[2] (default
+     *  4) Batch jobs at once.  Exits with code 1 if any diverges. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 2 || args.length > 3
+                || args.length == 3 && !args[2].matches("[1-9][0-9]*")) {
+                throw error("Usage: java enigma.Differential CONFIG INPUT "
+                            + "[JOBS]");
+            }
+            Differential diff =
+                new Differential(Paths.get(args[0]), Paths.get(args[1]),
+                                 args.length > 2
+                                 ? Integer.parseInt(args[2]) : 4);
+            if (diff.run(new PrintStream(System.out, true,
+                                         LineInput.CHARSET))) {
+                return;
+            }
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A tester of the engines on the configuration in the file CONFIG
+     *  and the input in the file INPUT, running JOBS Batch jobs. */
+    Differential(Path config, Path input, int jobs) {
+        _configFile = config;
+        _inputFile = input;
+        _jobs = jobs;
+        _config = Main.readConfiguration(config.toString());
+        _alphabet = _config.alphabet();
+        _engines.put("machine", out -> drive(new MachineEngine(false), out));
+        _engines.put("compiled", out -> drive(new MachineEngine(true), out));
+        _engines.put("lanes", out -> drive(new LaneEngine(), out));
+        _engines.put("main", out -> main(out, 0, false, null));
+        _engines.put("cache", out -> main(out, CACHE, false, null));
+        _engines.put("cache-off-heap", out -> main(out, CACHE, true, null));
+        _engines.put("cache-shared", out ->
+                     main(out, CACHE, false, _dir.resolve("keystreams")));
+        /* Deliberately the same directory: this run maps the keystream
+         * files that cache-shared saved, rather than computing them. */
+        _engines.put("cache-mapped", out ->
+                     main(out, CACHE, false, _dir.resolve("keystreams")));
+        _engines.put("checkpoint", this::checkpoint);
+        _engines.put("batch", this::batch);
+    }
+
+    /** Run the reference and every engine, reporting on REPORT.  Return
+     *  true iff no engine diverged. */
+    boolean run(PrintStream report) {
+        boolean ok = true;
+        try {
+            _dir = Files.createTempDirectory("differential");
+            Files.createDirectories(_dir.resolve("keystreams"));
+            _reference = _dir.resolve("reference.out");
+            long start = System.nanoTime();
+            try (OutputStream out = new BufferedOutputStream(
+                     Files.newOutputStream(_reference), 1 << 16)) {
+                drive(new Reference(), out);
+            }
+            report.print(line("reference", System.nanoTime() - start,
+                              "ok"));
+            for (Map.Entry<String, Engine> engine : _engines.entrySet()) {
+                Comparison out = new Comparison(_reference);
+                start = System.nanoTime();
+                try {
+                    engine.getValue().run(out);
+                    out.close();
+                } catch (EnigmaException | IOException excp) {
+                    out.fail(excp.getMessage());
+                }
+                long time = System.nanoTime() - start;
+                ok &= out.divergence() == null;
+                report.print(line(engine.getKey(), time,
+                                  out.divergence() == null ? "ok"
+                                  : out.divergence()));
+            }
+        } catch (IOException excp) {
+            throw error("could not run reference: %s", excp.getMessage());
+        } finally {
+            delete(_dir);
+        }
+        return ok;
+    }
+
+    /** Return a line of the report for engine NAME, which took TIME
+     *  nanoseconds, with outcome OUTCOME. */
+    private String line(String name, long time, String outcome) {
+        try {
+            double seconds = time * 1e-9;
+            double megabytes = Files.size(_inputFile) / (double) (1 << 20);
+            return String.format("%-15s %8.2f s %9.2f MB/s  %s%n", name,
+                                 seconds, megabytes / seconds, outcome);
+        } catch (IOException excp) {
+            throw error("could not read %s", _inputFile);
+        }
+    }
+
+    /** One way of producing the output for my input. */
+    private interface Engine {
+        /** Write the output for my input to OUT. */
+        void run(OutputStream out) throws IOException;
+    }
+
+    /** Converts the messages of one section at a time. */
+    private interface Converter {
+        /** Start a section with rotors named ROTORS, at the settings
+         *  SETTING (as indices), and plugboard PLUGBOARD. */
+        void section(String[] rotors, int[] setting, Permutation plugboard);
+
+        /** Replace the characters of MSG (as indices) by their
+         *  conversions. */
+        void convert(int[] msg);
+    }
+
+    /** Write the output for my input to OUT, as Main would, converting
+     *  with CONVERTER. */
+    private void drive(Converter converter, OutputStream out)
+        throws IOException {
+        PrintStream output =
+            new PrintStream(new BufferedOutputStream(out, 1 << 16), false,
+                            LineInput.CHARSET);
+        int numRotors = _config.numRotors();
+        try (InputStream in = new FileInputStream(_inputFile.toFile())) {
+            LineInput lines = new LineInput(in, 0);
+            while (lines.hasNextLine()) {
+                String line = lines.nextLine();
+                if (line.isBlank()) {
+                    output.print("\n");
+                } else if (line.charAt(0) == '*') {
+                    Scanner fields = new Scanner(line);
+                    fields.next();
+                    String[] rotors = new String[numRotors];
+                    for (int k = 0; k < numRotors; k += 1) {
+                        rotors[k] = fields.next();
+                    }
+                    int[] setting = _alphabet.toInts(fields.next());
+                    String plug = fields.hasNext() ? fields.nextLine() : "";
+                    converter.section(rotors, setting,
+                                      new Permutation(plug, _alphabet));
+                } else {
+                    int[] msg = _alphabet.toInts(line.replaceAll("\\s", ""));
+                    converter.convert(msg);
+                    String text = _alphabet.toString(msg);
+                    int start = 0;
+                    for (int k = 0; k < msg.length / 5; k += 1) {
+                        int end = text.offsetByCodePoints(start, 5);
+                        output.print(text.substring(start, end));
+                        output.print(" ");
+                        start = end;
+                    }
+                    output.print(text.substring(start));
+                    output.print("\n");
+                }
+            }
+        }
+        output.flush();
+    }
+
+    /** The reference: the original Machine's algorithm, on the Rotors
+     *  of the configuration. */
+    private class Reference implements Converter {
+
+        @Override
+        public void section(String[] rotors, int[] setting,
+                            Permutation plugboard) {
+            _rotors = new Rotor[rotors.length];
+            for (int k = 0; k < rotors.length; k += 1) {
+                _rotors[k] = _config.rotor(rotors[k]).copy();
+                if (k > 0) {
+                    _rotors[k].set(setting[k - 1]);
+                }
+            }
+            _plugboard = plugboard;
+        }
+
+        @Override
+        public void convert(int[] msg) {
+            int n = _rotors.length;
+            for (int i = 0; i < msg.length; i += 1) {
+                boolean[] moved = new boolean[n];
+                for (int k = n - _config.numPawls(); k < n; k += 1) {
+                    if (_rotors[k].atNotch() && _rotors[k - 1].rotates()) {
+                        moved[k] = moved[k - 1] = true;
+                    }
+                }
+                moved[n - 1] = true;
+                for (int k = 0; k < n; k += 1) {
+                    if (moved[k]) {
+                        _rotors[k].advance();
+                    }
+                }
+                int c = _plugboard.permute(msg[i]);
+                for (int k = n - 1; k >= 0; k -= 1) {
+                    c = _rotors[k].convertForward(c);
+                }
+                for (int k = 1; k < n; k += 1) {
+                    c = _rotors[k].convertBackward(c);
+                }
+                msg[i] = _plugboard.permute(c);
+            }
+        }
+
+        /** The rotors of the current section. */
+        private Rotor[] _rotors;
+
+        /** The plugboard of the current section. */
+        private Permutation _plugboard;
+    }
+
+    /** A Machine, converting a character at a time or whole messages. */
+    private class MachineEngine implements Converter {
+
+        /** A converter using a Machine on whole messages iff BULK. */
+        MachineEngine(boolean bulk) {
+            _bulk = bulk;
+        }
+
+        @Override
+        public void section(String[] rotors, int[] setting,
+                            Permutation plugboard) {
+            _machine.insertRotors(rotors);
+            _machine.setRotors(setting);
+            _machine.setPlugboard(plugboard);
+        }
+
+        @Override
+        public void convert(int[] msg) {
+            if (_bulk) {
+                _machine.convert(msg, msg);
+            } else {
+                for (int i = 0; i < msg.length; i += 1) {
+                    msg[i] = _machine.convert(msg[i]);
+                }
+            }
+        }
+
+        /** True iff whole messages are converted at once. */
+        private final boolean _bulk;
+
+        /** The machine. */
+        private final Machine _machine = _config.newMachine();
+    }
+
+    /** A LaneMachine, all of whose lanes are set alike. */
+    private class LaneEngine implements Converter {
+
+        @Override
+        public void section(String[] rotors, int[] setting,
+                            Permutation plugboard) {
+            _lanes.insertRotors(_config.catalog().ids(rotors));
+            _lanes.setPlugboard(plugboard);
+            for (int l = 0; l < LANES; l += 1) {
+                _lanes.setRotors(l, setting);
+            }
+        }
+
+        @Override
+        public void convert(int[] msg) {
+            for (int l = 0; l < LANES; l += 1) {
+                if (_result[l].length < msg.length) {
+                    _result[l] = new int[msg.length];
+                }
+            }
+            _lanes.convert(msg, msg.length, LANES, _result);
+            for (int l = 1; l < LANES; l += 1) {
+                if (!Arrays.equals(_result[0], 0, msg.length,
+                                   _result[l], 0, msg.length)) {
+                    throw error("lanes disagree");
+                }
+            }
+            System.arraycopy(_result[LANES - 1], 0, msg, 0, msg.length);
+        }
+
+        /** The lanes. */
+        private final LaneMachine _lanes = new LaneMachine(_config, LANES);
+
+        /** The output of each lane. */
+        private final int[][] _result = new int[LANES][0];
+    }
+
+    /** Run Main on my input, writing to OUT, with a keystream cache of
+     *  BUDGET bytes if BUDGET > 0, off the heap iff OFFHEAP, and shared
+     *  through the directory SHARED if it is not null. */
+    private void main(OutputStream out, long budget, boolean offHeap,
+                      Path shared) throws IOException {
+        PrintStream output =
+            new PrintStream(new BufferedOutputStream(out, 1 << 16), false,
+                            LineInput.CHARSET);
+        try (InputStream in = new FileInputStream(_inputFile.toFile())) {
+            Main job = new Main(_config, new LineInput(in, 0), output);
+            if (budget > 0) {
+                job.cacheKeystreams(budget, offHeap, shared);
+            }
+            job.process();
+        }
+        output.flush();
+    }
+
+    /** Run Main on my input and configuration files, checkpointing after
+     *  every sixteenth of the input, and copy its output to OUT. */
+    private void checkpoint(OutputStream out) throws IOException {
+        Path output = _dir.resolve("checkpoint.out");
+        long interval = Math.max(1, Files.size(_inputFile) / 16);
+        new Main(List.of(_configFile.toString(), _inputFile.toString(),
+                         output.toString()),
+                 _dir.resolve("checkpoint").toString(), interval, false)
+            .process();
+        copy(output, out);
+        Files.delete(output);
+    }
+
+    /** Split my input into files of whole sections, run Batch on them,
+     *  and copy its outputs to OUT, in order. */
+    private void batch(OutputStream out) throws IOException {
+        Path inputs = Files.createDirectories(_dir.resolve("batch.in"));
+        Path outputs = _dir.resolve("batch.out");
+        long part = Math.max(1, Files.size(_inputFile) / (4 * _jobs));
+        int files = 1;
+        OutputStream file = partFile(inputs, 0);
+        try (InputStream in = new BufferedInputStream(
+                 new FileInputStream(_inputFile.toFile()), 1 << 16)) {
+            long written = 0;
+            boolean lineStart = true;
+            for (int b = in.read(); b >= 0; b = in.read()) {
+                if (lineStart && b == '*' && written >= part) {
+                    file.close();
+                    file = partFile(inputs, files);
+                    files += 1;
+                    written = 0;
+                }
+                file.write(b);
+                written += 1;
+                lineStart = b == '\n';
+            }
+        } finally {
+            file.close();
+        }
+        if (!new Batch(_config, _jobs).run(inputs.toString(), outputs)) {
+            throw error("batch reported errors");
+        }
+        for (int k = 0; k < files; k += 1) {
+            copy(outputs.resolve(String.format("%06d.out", k)), out);
+        }
+        delete(inputs);
+        delete(outputs);
+    }
+
+    /** Return a stream writing part K of the split input in the
+     *  directory INPUTS. */
+    private static OutputStream partFile(Path inputs, int k)
+        throws IOException {
+        return new BufferedOutputStream(Files.newOutputStream(
+            inputs.resolve(String.format("%06d.in", k))), 1 << 16);
+    }
+
+    /** Copy the contents of FILE to OUT. */
+    private static void copy(Path file, OutputStream out)
+        throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            in.transferTo(out);
+        }
+    }
+
+    /** Delete PATH and, if it is a directory, everything in it, if it
+     *  exists. */
+    private static void delete(Path path) {
+        if (path == null || !Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(path)) {
+            for (Path file : (Iterable<Path>) files.sorted(
+                     Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        } catch (IOException excp) {
+            throw error("could not delete %s", path);
+        }
+    }
+
+    /** A stream that compares what is written to it with the contents of
+     *  a file, noting where they first differ. */
+    private static class Comparison extends OutputStream {
+
+        /** A stream comparing what is written to it with EXPECTED. */
+        Comparison(Path expected) throws IOException {
+            _expected = new BufferedInputStream(
+                Files.newInputStream(expected), 1 << 16);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (_divergence != null) {
+                return;
+            }
+            int want = _expected.read();
+            if (want != (b & 0xff)) {
+                diverge(want, b & 0xff);
+                return;
+            }
+            _offset += 1;
+            if (b == '\n') {
+                _line += 1;
+                _got.reset();
+                _want.reset();
+            } else {
+                _got.write(b);
+                _want.write(b);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (_divergence == null) {
+                int want = _expected.read();
+                if (want >= 0) {
+                    diverge(want, -1);
+                }
+            }
+            _expected.close();
+        }
+
+        /** Note that the engine failed with MESSAGE, unless it has
+         *  already diverged. */
+        void fail(String message) throws IOException {
+            if (_divergence == null) {
+                _divergence = String.format("failed at byte %d (line %d): "
+                                            + "%s", _offset, _line,
+                                            message);
+            }
+            _expected.close();
+        }
+
+        /** Return a description of the first divergence, or null if
+         *  there has been none. */
+        String divergence() {
+            return _divergence;
+        }
+
+        /** Note the divergence at the current offset, where WANT was
+         *  expected and GOT (-1 at end of output) was written. */
+        private void diverge(int want, int got) throws IOException {
+            if (got >= 0) {
+                _got.write(got);
+            }
+            for (int b = want; b >= 0 && b != '\n'; b = _expected.read()) {
+                _want.write(b);
+            }
+            _divergence = String.format("diverges at byte %d (line %d): "
+                                        + "expected \"%s\", got \"%s\"%s",
+                                        _offset, _line,
+                                        _want.toString(LineInput.CHARSET),
+                                        _got.toString(LineInput.CHARSET),
+                                        got < 0 ? " at end of output"
+                                        : "...");
+        }
+
+        /** The expected output. */
+        private final InputStream _expected;
+
+        /** Number of bytes that have matched. */
+        private long _offset;
+
+        /** Line number (from 1) of the current output line. */
+        private long _line = 1;
+
+        /** The current line of output, as written and as expected. */
+        private final ByteArrayOutputStream _got =
+            new ByteArrayOutputStream(), _want = new ByteArrayOutputStream();
+
+        /** Description of the first divergence, or null. */
+        private String _divergence;
+    }
+
+    /** Bytes of keystream cache for the cache engines. */
+    private static final long CACHE = 64 << 20;
+
+    /** Number of lanes of the lanes engine. */
+    private static final int LANES = 3;
+
+    /** The configuration file. */
+    private final Path _configFile;
+
+    /** The input file. */
+    private final Path _inputFile;
+
+    /** Number of Batch jobs run at once. */
+    private final int _jobs;
+
+    /** The configuration. */
+    private final Configuration _config;
+
+    /** Its alphabet. */
+    private final Alphabet _alphabet;
+
+    /** The engines, by name, in the order they are run. */
+    private final Map<String, Engine> _engines = new LinkedHashMap<>();
+
+    /** Temporary directory for the reference output and the files of
+     *  the engines that need them. */
+    private Path _dir;
+
+    /** The reference's output. */
+    private Path _reference;
+}
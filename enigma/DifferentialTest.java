@@ -0,0 +1,76 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the Corpus and Differential
+ *  classes.
+ *  @author Cheng Zhu
+ */
+public class DifferentialTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    @Test
+    public void testCorpus() {
+        for (long seed = 0; seed < 20; seed += 1) {
+            Corpus corpus = new Corpus(seed);
+            Configuration config = TestUtils.config(corpus.config());
+            assertEquals(corpus.config(), new Corpus(seed).config());
+            assertTrue(config.alphabet().size() % 2 == 0);
+        }
+    }
+
+    @Test
+    public void testDifferential() throws IOException {
+        check(47, "", 40000);
+    }
+
+    @Test
+    public void testLeadingBlankLine() throws IOException {
+        check(48, "\n \n", 5000);
+    }
+
+    /** Check that every engine agrees on PREFIX followed by at least
+     *  BYTES bytes of the input of the corpus with seed SEED. */
+    private static void check(long seed, String prefix, long bytes)
+        throws IOException {
+        Path dir = Files.createTempDirectory("corpus");
+        Path config = dir.resolve("corpus.conf");
+        Path input = dir.resolve("corpus.in");
+        try {
+            Corpus corpus = new Corpus(seed);
+            Files.writeString(config, corpus.config(), LineInput.CHARSET);
+            try (Writer out = Files.newBufferedWriter(input,
+                                                      LineInput.CHARSET)) {
+                out.write(prefix);
+                corpus.writeInput(out, bytes);
+            }
+            assertTrue(Files.size(input) >= bytes);
+            ByteArrayOutputStream report = new ByteArrayOutputStream();
+            assertTrue(new Differential(config, input, 2)
+                       .run(new PrintStream(report, true,
+                                            LineInput.CHARSET)));
+            String[] lines =
+                report.toString(LineInput.CHARSET).split("\n");
+            assertEquals(11, lines.length);
+            for (String line : lines) {
+                assertTrue(line, line.endsWith("  ok"));
+            }
+        } finally {
+            Files.deleteIfExists(config);
+            Files.deleteIfExists(input);
+            Files.delete(dir);
+        }
+    }
+}
@@ -11,21 +11,17 @@ class FixedRotor extends Rotor {
      * is given by PERM. */
     FixedRotor(String name, Permutation perm) {
         super(name, perm);
-        _name = name;
     }
 
-    /** the fixed rotor has no notches. */
+    /** Return a new fixed rotor like me. */
     @Override
-    boolean atNotch() {
-        return false;
+    Rotor copy() {
+        return new FixedRotor(name(), permutation());
     }
 
     /** return the name of the fixed rotor. */
     @Override
     public String toString() {
-        return "Fixed Rotor " + _name;
+        return "Fixed Rotor " + name();
     }
-
-    /** Instance variable: name of the fixed rotor. */
-    private String _name;
 }
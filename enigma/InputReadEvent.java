@@ -0,0 +1,31 @@
+package enigma;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/** Flight Recorder event for a read of a line of Main's input that took
+ *  longer than the threshold (10 ms unless configured otherwise).  See
+ *  enigma.jfc.
+ *  @author Cheng Zhu
+ */
+@Name("enigma.InputRead")
+@Label("Slow Input Read")
+@Category({ "Enigma", "I/O" })
+@Description("Reading a line of input took longer than the threshold")
+@Threshold("10 ms")
+final class InputReadEvent extends Event {
+
+    /** Number of bytes read. */
+    @Label("Bytes Read")
+    @DataAmount
+    long bytes;
+
+    /** Offset in the input of the line. */
+    @Label("Offset")
+    long offset;
+}
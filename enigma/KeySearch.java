@@ -0,0 +1,228 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+/** A ciphertext-only search for the key of a message.  Every key in a
+ *  range of a Keyspace is tried with a fixed plugboard, and the
+ *  decryption it gives is scored by its index of coincidence, which is
+ *  markedly higher for natural-language text than for random text.  The
+ *  best few candidates are kept.
+ *
+ *  The range is split recursively into tasks for a fork/join pool, whose
+ *  idle workers steal the unsplit halves of busy ones.  Each worker
+ *  thread tries keys a batch at a time on its own LaneMachine.  A search
+ *  ends early when stop() is called or a candidate reaches the target
+ *  score, if one is set.
+ *  @author Cheng Zhu
+ */
+class KeySearch {
+
+    /** A search of KEYS for the key of CIPHERTEXT (as alphabet indices),
+     *  assuming the plugboard PLUGBOARD, that keeps the BEST highest
+     *  scoring candidates. */
+    KeySearch(Keyspace keys, Permutation plugboard, int[] ciphertext,
+              int best) {
+        _keys = keys;
+        _plugboard = plugboard;
+        _ciphertext = ciphertext;
+        _best = best;
+        _target = Double.POSITIVE_INFINITY;
+    }
+
+    /** Stop searching as soon as some candidate scores at least
+     *  TARGET. */
+    void setTarget(double target) {
+        _target = target;
+    }
+
+    /** Search all of my keyspace using POOL, returning the best
+     *  candidates found, best first. */
+    List<Candidate> search(ForkJoinPool pool) {
+        return search(0, _keys.size(), pool);
+    }
+
+    /** Search keys FROM .. TO-1 of my keyspace using POOL, returning the
+     *  best candidates found so far (in this and earlier searches), best
+     *  first. */
+    List<Candidate> search(long from, long to, ForkJoinPool pool) {
+        if (_start == 0) {
+            _start = System.nanoTime();
+        }
+        pool.invoke(new Task(from, to));
+        return best();
+    }
+
+    /** Return the best candidates found so far, best first. */
+    synchronized List<Candidate> best() {
+        List<Candidate> result = new ArrayList<>(_found);
+        Collections.sort(result, Collections.reverseOrder());
+        return result;
+    }
+
+    /** Ask the search to stop as soon as possible. */
+    void stop() {
+        _stopped = true;
+    }
+
+    /** Return true iff the search has been stopped early. */
+    boolean stopped() {
+        return _stopped;
+    }
+
+    /** Return the number of keys tried so far. */
+    long trials() {
+        return _trials.sum();
+    }
+
+    /** Return the number of keys tried per second so far. */
+    double rate() {
+        double seconds = (System.nanoTime() - _start) / 1e9;
+        return _start == 0 || seconds == 0 ? 0 : trials() / seconds;
+    }
+
+    /** Return the index of coincidence of the first LENGTH characters of
+     *  TEXT, which are indices less than COUNTS.length, using COUNTS as
+     *  scratch space. */
+    static double indexOfCoincidence(int[] text, int length, int[] counts) {
+        for (int i = 0; i < counts.length; i += 1) {
+            counts[i] = 0;
+        }
+        for (int i = 0; i < length; i += 1) {
+            counts[text[i]] += 1;
+        }
+        long sum = 0;
+        for (int count : counts) {
+            sum += (long) count * (count - 1);
+        }
+        return length < 2 ? 0 : (double) sum / ((long) length * (length - 1));
+    }
+
+    /** Try keys FROM .. TO-1, LANES at a time. */
+    private void tryKeys(long from, long to) {
+        LaneMachine lanes = _machines.get();
+        int[] setting = new int[_keys.config().numRotors() - 1];
+        int[][] plain = new int[lanes.lanes()][_ciphertext.length];
+        int[] counts = new int[_keys.config().alphabet().size()];
+        int current = -1;
+        long key;
+        for (key = from; key < to && !_stopped; ) {
+            int order = _keys.orderOf(key);
+            if (order != current) {
+                lanes.insertRotors(_keys.order(order));
+                current = order;
+            }
+            long end = Math.min(to, (order + 1) * _keys.settingsPerOrder());
+            int active = (int) Math.min(lanes.lanes(), end - key);
+            for (int l = 0; l < active; l += 1) {
+                _keys.setting(key + l, setting);
+                lanes.setRotors(l, setting);
+            }
+            lanes.convert(_ciphertext, _ciphertext.length, active, plain);
+            for (int l = 0; l < active; l += 1) {
+                double score = indexOfCoincidence(plain[l], plain[l].length,
+                                                  counts);
+                if (score > _floor) {
+                    offer(new Candidate(_keys.orderNames(order),
+                                        _keys.settingString(key + l),
+                                        score));
+                }
+                if (score >= _target) {
+                    _stopped = true;
+                }
+            }
+            key += active;
+        }
+        _trials.add(key - from);
+    }
+
+    /** Keep CANDIDATE if it is among the best found so far. */
+    private synchronized void offer(Candidate candidate) {
+        _found.add(candidate);
+        if (_found.size() > _best) {
+            _found.poll();
+        }
+        if (_found.size() == _best) {
+            _floor = _found.peek().score();
+        }
+    }
+
+    /** The lanes for the current thread. */
+    private LaneMachine newMachine() {
+        LaneMachine lanes = new LaneMachine(_keys.config(), LANES);
+        lanes.setPlugboard(_plugboard);
+        return lanes;
+    }
+
+    /** The task of trying a range of keys. */
+    private class Task extends RecursiveAction {
+        /** The task of trying keys FROM .. TO-1. */
+        Task(long from, long to) {
+            _from = from;
+            _to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (_stopped) {
+                return;
+            }
+            if (_to - _from <= GRAIN) {
+                tryKeys(_from, _to);
+            } else {
+                long mid = _from + (_to - _from) / 2;
+                invokeAll(new Task(_from, mid), new Task(mid, _to));
+            }
+        }
+
+        /** First key to try. */
+        private final long _from;
+        /** Limit of keys to try. */
+        private final long _to;
+    }
+
+    /** Number of keys each worker thread tries together. */
+    private static final int LANES = 64;
+
+    /** Largest number of keys tried by one task without splitting. */
+    private static final long GRAIN = 1024;
+
+    /** The keys to search. */
+    private final Keyspace _keys;
+
+    /** The assumed plugboard. */
+    private final Permutation _plugboard;
+
+    /** The message. */
+    private final int[] _ciphertext;
+
+    /** Number of candidates to keep. */
+    private final int _best;
+
+    /** Score at which to stop. */
+    private volatile double _target;
+
+    /** The best candidates so far, worst first. */
+    private final PriorityQueue<Candidate> _found = new PriorityQueue<>();
+
+    /** Score a candidate must beat to be kept. */
+    private volatile double _floor = Double.NEGATIVE_INFINITY;
+
+    /** True once the search should stop. */
+    private volatile boolean _stopped;
+
+    /** Number of keys tried. */
+    private final LongAdder _trials = new LongAdder();
+
+    /** Time at which searching began, in System.nanoTime units. */
+    private volatile long _start;
+
+    /** Each worker thread's lanes. */
+    private final ThreadLocal<LaneMachine> _machines =
+        ThreadLocal.withInitial(this::newMachine);
+}
@@ -0,0 +1,153 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Keyspace, LaneMachine and
+ *  KeySearch classes.
+ *  @author Cheng Zhu
+ */
+public class KeySearchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    @Test
+    public void testKeyspace() {
+        Keyspace keys = new Keyspace(config(SMALL_CONFIG));
+        assertEquals(2 * 5 * 4, keys.orders());
+        assertEquals(26 * 26, keys.settingsPerOrder());
+        assertEquals(40 * 26 * 26, keys.size());
+        for (int k = 0; k < keys.orders(); k += 1) {
+            String[] names = keys.orderNames(k);
+            assertTrue(names[0].equals("B") || names[0].equals("C"));
+            assertFalse(names[1].equals(names[2]));
+        }
+        long key = 3 * keys.settingsPerOrder() + 26 * 2 + 7;
+        assertEquals(3, keys.orderOf(key));
+        assertEquals("CH", keys.settingString(key));
+    }
+
+    @Test
+    public void testKeyspaceOrders() {
+        Configuration config = config(NAVAL_CONFIG);
+        Keyspace keys = new Keyspace(config);
+        int[] last = null;
+        for (int k = 0; k < keys.orders(); k += 1) {
+            int[] order = keys.order(k);
+            assertTrue(config.catalog().get(order[0]).reflecting());
+            for (int slot = 1; slot < order.length; slot += 1) {
+                assertEquals(slot >= 2,
+                             config.catalog().get(order[slot]).rotates());
+                for (int left = 0; left < slot; left += 1) {
+                    assertNotEquals(order[left], order[slot]);
+                }
+            }
+            if (last != null) {
+                assertTrue(Arrays.compare(last, order) < 0);
+            }
+            last = order;
+        }
+        int reflectors = 0, fixed = 0, moving = 0;
+        for (int id = 0; id < config.catalog().size(); id += 1) {
+            Rotor r = config.catalog().get(id);
+            if (r.reflecting()) {
+                reflectors += 1;
+            } else if (!r.rotates()) {
+                fixed += 1;
+            } else {
+                moving += 1;
+            }
+        }
+        assertEquals(reflectors * (reflectors - 1 + fixed)
+                     * moving * (moving - 1) * (moving - 2), keys.orders());
+    }
+
+    @Test
+    public void testLaneMachine() {
+        Configuration config = config(UPPER_STRING + " 5 3\n"
+            + "B R " + NAVALA.get("B") + "\n"
+            + "Beta N " + NAVALA.get("Beta") + "\n"
+            + "Gamma N " + NAVALA.get("Gamma") + "\n"
+            + "I MQ " + NAVALA.get("I") + "\n"
+            + "II MEA " + NAVALA.get("II") + "\n"
+            + "III MV " + NAVALA.get("III") + "\n"
+            + "VI MZM " + NAVALA.get("VI") + "\n");
+        Keyspace keys = new Keyspace(config);
+        Permutation plugboard = new Permutation("(AQ) (EP) (MZ)",
+                                                config.alphabet());
+        int[] msg = indices(ENGLISH, config.alphabet());
+        Random random = new Random(7);
+        LaneMachine lanes = new LaneMachine(config, 16);
+        lanes.setPlugboard(plugboard);
+        int[][] result = new int[16][msg.length];
+        Machine mach = config.newMachine();
+        mach.setPlugboard(plugboard);
+        for (int trial = 0; trial < 20; trial += 1) {
+            int order = random.nextInt(keys.orders());
+            lanes.insertRotors(keys.order(order));
+            mach.insertRotors(keys.order(order));
+            int[][] settings = new int[16][4];
+            for (int l = 0; l < 16; l += 1) {
+                for (int k = 0; k < 4; k += 1) {
+                    settings[l][k] = random.nextInt(26);
+                }
+                lanes.setRotors(l, settings[l]);
+            }
+            lanes.convert(msg, msg.length, 13, result);
+            for (int l = 0; l < 13; l += 1) {
+                mach.setRotors(settings[l]);
+                int[] expected = new int[msg.length];
+                mach.convert(msg, expected);
+                assertArrayEquals(expected, result[l]);
+            }
+        }
+    }
+
+    @Test
+    public void testIndexOfCoincidence() {
+        int[] text = indices("AABB", UPPER);
+        assertEquals(4.0 / 12, KeySearch.indexOfCoincidence(text, 4,
+                                                            new int[26]),
+                     1e-12);
+    }
+
+    @Test
+    public void testFindsKey() {
+        Configuration config = config(SMALL_CONFIG);
+        String[] rotors = { "C", "IV", "II" };
+        int[] cipher = encrypt(config, rotors, "QD", "");
+        KeySearch search =
+            new KeySearch(new Keyspace(config),
+                          new Permutation("", config.alphabet()), cipher, 5);
+        List<Candidate> best = search.search(new ForkJoinPool(4));
+        assertEquals(5, best.size());
+        assertEquals("* C IV II QD", best.get(0).toString());
+        assertTrue(best.get(0).score() > best.get(1).score());
+        assertEquals(new Keyspace(config).size(), search.trials());
+    }
+
+    @Test
+    public void testStopsAtTarget() {
+        Configuration config = config(SMALL_CONFIG);
+        int[] cipher = encrypt(config, new String[] { "B", "I", "III" },
+                               "AB", "");
+        KeySearch search =
+            new KeySearch(new Keyspace(config),
+                          new Permutation("", config.alphabet()), cipher, 1);
+        search.setTarget(0.06);
+        List<Candidate> best = search.search(new ForkJoinPool(2));
+        assertTrue(search.stopped());
+        assertEquals("* B I III AB", best.get(0).toString());
+        assertTrue(search.trials() < new Keyspace(config).size());
+    }
+}
@@ -0,0 +1,184 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** The keys of a configuration, leaving the plugboard aside: every
+ *  legal rotor order together with every initial setting.  A rotor
+ *  order is legal under the rules that Main applies to settings lines:
+ *  a reflector in slot 0, non-moving rotors in the slots without pawls,
+ *  moving rotors in the slots with pawls, and no rotor used twice.
+ *
+ *  Keys are numbered from 0 to size() - 1, all the settings of rotor
+ *  order 0 first, and within an order the setting of the fast rotor
+ *  varying fastest.  Rotor orders are numbered in lexicographic order of
+ *  their rotor ids, slot 0 first.  They are not stored: an order's
+ *  number is a mixed-radix number whose digit for each slot is the rank
+ *  of that slot's rotor among the rotors legal there and not already
+ *  used to its left, and order decodes it.
+ *  @author Cheng Zhu
+ */
+class Keyspace {
+
+    /** The keyspace of CONFIG. */
+    Keyspace(Configuration config) {
+        _config = config;
+        int n = config.numRotors();
+        _fixed = n - config.numPawls();
+        RotorCatalog catalog = config.catalog();
+        _radices = new int[n];
+        for (int slot = 0; slot < n; slot += 1) {
+            int legal = 0;
+            for (int id = 0; id < catalog.size(); id += 1) {
+                if (legal(catalog.get(id), slot)) {
+                    legal += 1;
+                }
+            }
+            for (int left = 0; left < slot; left += 1) {
+                if (shares(left, slot)) {
+                    legal -= 1;
+                }
+            }
+            _radices[slot] = Math.max(legal, 0);
+        }
+        long orders = 1;
+        for (int radix : _radices) {
+            orders = Math.multiplyExact(orders, radix);
+        }
+        if (orders == 0) {
+            throw error("configuration has no legal rotor order");
+        }
+        if (orders > Integer.MAX_VALUE) {
+            throw error("too many rotor orders");
+        }
+        _orders = (int) orders;
+        long settings = 1;
+        for (int k = 1; k < n; k += 1) {
+            settings = Math.multiplyExact(settings,
+                                          config.alphabet().size());
+        }
+        _settingsPerOrder = settings;
+        _size = Math.multiplyExact(settings, _orders);
+    }
+
+    /** Return my configuration. */
+    Configuration config() {
+        return _config;
+    }
+
+    /** Return the number of legal rotor orders. */
+    int orders() {
+        return _orders;
+    }
+
+    /** Return the rotor ids of order K, indexed by slot. */
+    int[] order(int k) {
+        int n = _radices.length;
+        int[] digits = new int[n];
+        for (int slot = n - 1; slot >= 0; slot -= 1) {
+            digits[slot] = k % _radices[slot];
+            k /= _radices[slot];
+        }
+        RotorCatalog catalog = _config.catalog();
+        boolean[] used = new boolean[catalog.size()];
+        int[] result = new int[n];
+        for (int slot = 0; slot < n; slot += 1) {
+            int id = 0;
+            for (int rank = digits[slot]; true; id += 1) {
+                if (!used[id] && legal(catalog.get(id), slot)) {
+                    if (rank == 0) {
+                        break;
+                    }
+                    rank -= 1;
+                }
+            }
+            used[id] = true;
+            result[slot] = id;
+        }
+        return result;
+    }
+
+    /** Return the rotor names of order K, indexed by slot. */
+    String[] orderNames(int k) {
+        int[] ids = order(k);
+        String[] result = new String[ids.length];
+        for (int i = 0; i < ids.length; i += 1) {
+            result[i] = _config.catalog().get(ids[i]).name();
+        }
+        return result;
+    }
+
+    /** Return the number of initial settings of each rotor order. */
+    long settingsPerOrder() {
+        return _settingsPerOrder;
+    }
+
+    /** Return the total number of keys. */
+    long size() {
+        return _size;
+    }
+
+    /** Return the rotor order of key KEY. */
+    int orderOf(long key) {
+        return (int) (key / _settingsPerOrder);
+    }
+
+    /** Store the initial setting of key KEY into SETTING, whose K-th
+     *  element is the setting of Rotor #K+1. */
+    void setting(long key, int[] setting) {
+        long rest = key % _settingsPerOrder;
+        int radix = _config.alphabet().size();
+        for (int k = setting.length - 1; k >= 0; k -= 1) {
+            setting[k] = (int) (rest % radix);
+            rest /= radix;
+        }
+    }
+
+    /** Return the initial setting of key KEY as the characters of a
+     *  settings line. */
+    String settingString(long key) {
+        int[] setting = new int[_config.numRotors() - 1];
+        setting(key, setting);
+        return _config.alphabet().toString(setting);
+    }
+
+    /** Return true iff R may go in slot SLOT. */
+    private boolean legal(Rotor r, int slot) {
+        if (slot == 0) {
+            return r.reflecting();
+        } else if (slot < _fixed) {
+            return !r.rotates();
+        } else {
+            return r.rotates();
+        }
+    }
+
+    /** Return true iff every rotor legal in slot LEFT is also legal in
+     *  slot SLOT, so that the rotor in LEFT is one fewer choice for SLOT.
+     *  Otherwise none is, since reflectors do not rotate. */
+    private boolean shares(int left, int slot) {
+        if (slot < _fixed) {
+            return true;
+        } else {
+            return left != 0 && left >= _fixed;
+        }
+    }
+
+    /** My configuration. */
+    private final Configuration _config;
+
+    /** Index of the first slot with a pawl. */
+    private final int _fixed;
+
+    /** The number of choices of rotor in each slot, given the rotors to
+     *  its left: the radices of the digits of an order's number. */
+    private final int[] _radices;
+
+    /** Number of legal rotor orders. */
+    private final int _orders;
+
+    /** Number of initial settings per order. */
+    private final long _settingsPerOrder;
+
+    /** Number of keys. */
+    private final long _size;
+}
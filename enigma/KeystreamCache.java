@@ -0,0 +1,514 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import static enigma.EnigmaException.*;
+
+/** A bounded cache of the substitutions that machines of one
+ *  configuration apply, for traffic that reuses a few settings lines.
+ *  The machine that a settings line (rotors, setting, and plugboard)
+ *  describes applies a fixed substitution at each position of the text
+ *  that follows it, whatever that text is.  A Keystream holds these
+ *  substitutions for the first few positions, as a table, so that a
+ *  message under a cached settings line is converted by lookup.  Only
+ *  settings lines that recur are cached (see lookup).  The
+ *  tables are extended lazily, by a machine of the cache's own that
+ *  resumes from a snapshot of where the last extension stopped, when a
+ *  longer message arrives.
+ *
+ *  The cache holds at most a given number of bytes of tables, evicting
+ *  the least recently looked-up keystreams to make room.  The tables
+ *  may be kept off the Java heap, in direct buffers, so that a large
+ *  cache does not lengthen garbage collection.  Keystreams may also be
+ *  shared between processes through a directory of keystream files,
+ *  which are mapped read-only, so that all the processes on a host use
+ *  one copy of them in the page cache.  A mapped keystream is copied
+ *  into a buffer of the cache's own only if it must be extended.  It is
+ *  not safe for use by several threads at once.
+ *  @author Cheng Zhu
+ */
+class KeystreamCache {
+
+    /** A cache of keystreams for machines of configuration CONFIG,
+     *  holding at most BUDGET bytes of tables on the heap. */
+    KeystreamCache(Configuration config, long budget) {
+        this(config, budget, false, null);
+    }
+
+    /** A cache of keystreams for machines of configuration CONFIG,
+     *  holding at most BUDGET bytes of tables, off the heap iff OFFHEAP.
+     *  If SHARED is not null, it names a directory of keystream files,
+     *  which lookup maps and save writes.  Mapped files do not count
+     *  against BUDGET. */
+    KeystreamCache(Configuration config, long budget, boolean offHeap,
+                   Path shared) {
+        _config = config;
+        _offHeap = offHeap;
+        _shared = shared;
+        _machine = config.newMachine();
+        _size = config.alphabet().size();
+        _budget = budget;
+        _core = new int[_size];
+        _fingerprint = fingerprint(config);
+    }
+
+    /** Return the keystream of the machine with rotors named ROTORS
+     *  (ROTORS[0] naming the reflector), setting SETTING, and plugboard
+     *  PLUGBOARD, creating an empty one if it is not cached.  Building a
+     *  keystream costs an alphabet's worth of conversions per position,
+     *  which repays itself only if its settings line recurs, so a
+     *  settings line is admitted only when it is looked up for the
+     *  second time (or has a shared file).  Until then, return null:
+     *  the caller should convert with a machine of its own, at no more
+     *  cost than without the cache. */
+    Keystream lookup(String[] rotors, String setting, Permutation plugboard) {
+        String key = String.format("%016x ", _fingerprint)
+            + String.join(" ", rotors) + " " + setting + " "
+            + Arrays.toString(plugboard.toArray());
+        Keystream result = _streams.get(key);
+        if (result != null) {
+            _hits += 1;
+            return result;
+        }
+        _misses += 1;
+        result = new Keystream(key, _config.catalog().ids(rotors),
+                               setting, plugboard.toArray());
+        if (_shared != null) {
+            result.map();
+        }
+        if (result.length() == 0 && _seen.put(key, Boolean.TRUE) == null) {
+            return null;
+        }
+        _seen.remove(key);
+        _streams.put(key, result);
+        return result;
+    }
+
+    /** Return the number of lookups that found a cached keystream. */
+    long hits() {
+        return _hits;
+    }
+
+    /** Return the number of lookups that did not, whether or not they
+     *  admitted a new keystream. */
+    long misses() {
+        return _misses;
+    }
+
+    /** Return the number of keystreams mapped from shared files. */
+    long mapped() {
+        return _mapped;
+    }
+
+    /** Return the number of keystreams evicted to stay within budget. */
+    long evictions() {
+        return _evictions;
+    }
+
+    /** Return the number of bytes of tables now cached. */
+    long bytes() {
+        return _bytes;
+    }
+
+    /** Return the number of keystreams now cached. */
+    int size() {
+        return _streams.size();
+    }
+
+    /** The substitutions applied at successive positions by the
+     *  machine of one settings line. */
+    class Keystream {
+
+        /** The keystream, initially empty, of the machine with the
+         *  rotors whose ids are IDS, setting SETTING, and plugboard
+         *  PLUGBOARD (as a table), cached under KEY. */
+        private Keystream(String key, int[] ids, String setting,
+                          int[] plugboard) {
+            _key = key;
+            _ids = ids;
+            _setting = setting;
+            _plugboard = plugboard;
+        }
+
+        /** Return the number of positions whose substitutions are
+         *  cached. */
+        int length() {
+            return _length;
+        }
+
+        /** Return the settings of the machine's rotors after length()
+         *  positions, or null if they are not known. */
+        PackedState tail() {
+            return _tail;
+        }
+
+        /** Extend me, if need be, to hold the first LENGTH substitutions,
+         *  evicting other keystreams to keep within budget.  Returns
+         *  false, leaving me unchanged, if I have been evicted, LENGTH
+         *  substitutions would not fit in the budget, or my alphabet is
+         *  too large for my tables of chars. */
+        boolean extend(int length) {
+            if (_evicted || _size > MAX_SIZE) {
+                return false;
+            } else if (length <= _length) {
+                return true;
+            }
+            long limit = Math.min(_budget / (2L * _size),
+                                  Integer.MAX_VALUE / (2 * _size));
+            if (length > limit) {
+                return false;
+            }
+            if (!_owned || length > _capacity) {
+                grow((int) Math.min(limit, Math.max(length, 2L * _length)));
+            }
+            position();
+            for (int p = _length; p < length; p += 1) {
+                _machine.stepCore(_core);
+                int base = 2 * p * _size;
+                for (int x = 0; x < _size; x += 1) {
+                    _tables.putChar(base + 2 * x,
+                                    (char) _plugboard[_core[_plugboard[x]]]);
+                }
+            }
+            _length = length;
+            _tail = _machine.snapshot();
+            evict(this);
+            return true;
+        }
+
+        /** Store the conversion of MSG (as alphabet indices), starting
+         *  at position START, in the first MSG.length elements of
+         *  RESULT.  I must hold the first START + MSG.length
+         *  substitutions. */
+        void convert(int[] msg, int start, int[] result) {
+            ByteBuffer tables = _tables;
+            int base = 2 * start * _size;
+            for (int i = 0; i < msg.length; i += 1) {
+                result[i] = tables.getChar(base + 2 * msg[i]);
+                base += 2 * _size;
+            }
+        }
+
+        /** Return the number of bytes of my tables counted against the
+         *  budget. */
+        private long bytes() {
+            return _owned ? 2L * _capacity * _size : 0;
+        }
+
+        /** Move my tables to a buffer of my own with room for CAPACITY
+         *  positions. */
+        private void grow(int capacity) {
+            long before = bytes();
+            int bytes = 2 * capacity * _size;
+            ByteBuffer tables = _offHeap ? ByteBuffer.allocateDirect(bytes)
+                : ByteBuffer.allocate(bytes);
+            if (_tables != null) {
+                ByteBuffer old = _tables.duplicate();
+                old.position(0).limit(2 * _length * _size);
+                tables.put(old);
+            }
+            _tables = tables;
+            _capacity = capacity;
+            _owned = true;
+            _bytes += bytes() - before;
+        }
+
+        /** Set up the cache's machine to continue my keystream, if it
+         *  is not already doing so. */
+        private void position() {
+            if (_owner == this) {
+                return;
+            }
+            _machine.insertRotors(_ids);
+            if (_tail != null) {
+                _machine.restore(_tail);
+            } else {
+                _machine.setRotors(_setting);
+                _machine.advance(_length);
+            }
+            _owner = this;
+        }
+
+        /** Take my tables from my file in the shared directory, if there
+         *  is a valid one, mapping it read-only. */
+        private void map() {
+            Path file = _shared.resolve(fileName(_key));
+            if (!Files.isRegularFile(file)) {
+                return;
+            }
+            ByteBuffer mapped;
+            try (FileChannel channel = FileChannel.open(file, READ)) {
+                if (channel.size() > Integer.MAX_VALUE) {
+                    return;
+                }
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                     channel.size());
+            } catch (IOException excp) {
+                return;
+            }
+            byte[] key = _key.getBytes(StandardCharsets.UTF_8);
+            int offset = header(key.length);
+            if (mapped.capacity() < offset || mapped.getInt(0) != MAGIC
+                || mapped.getInt(4) != _size
+                || mapped.getInt(12) != key.length
+                || mapped.getLong(16) != _fingerprint) {
+                return;
+            }
+            int length = mapped.getInt(8);
+            byte[] stored = new byte[key.length];
+            mapped.position(24);
+            mapped.get(stored);
+            if (length < 0 || !Arrays.equals(key, stored)
+                || mapped.capacity() != offset + 2L * length * _size) {
+                return;
+            }
+            mapped.position(offset);
+            _tables = mapped.slice();
+            _length = _saved = _capacity = length;
+            _owned = false;
+            _mapped += 1;
+        }
+
+        /** Write my tables, if I have more than my file in the shared
+         *  directory, to a new version of that file. */
+        private void save() throws IOException {
+            if (_length <= _saved) {
+                return;
+            }
+            Path file = _shared.resolve(fileName(_key));
+            Path temp = Files.createTempFile(_shared, fileName(_key), ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, WRITE)) {
+                byte[] key = _key.getBytes(StandardCharsets.UTF_8);
+                ByteBuffer header = ByteBuffer.allocate(header(key.length));
+                header.putInt(MAGIC).putInt(_size).putInt(_length)
+                    .putInt(key.length).putLong(_fingerprint).put(key)
+                    .position(0);
+                ByteBuffer tables = _tables.duplicate();
+                tables.position(0).limit(2 * _length * _size);
+                while (header.hasRemaining()) {
+                    channel.write(header);
+                }
+                while (tables.hasRemaining()) {
+                    channel.write(tables);
+                }
+                channel.force(true);
+            }
+            Files.move(temp, file, ATOMIC_MOVE, REPLACE_EXISTING);
+            _saved = _length;
+        }
+
+        /** Key under which I am cached. */
+        private final String _key;
+
+        /** Catalog ids of my rotors. */
+        private final int[] _ids;
+
+        /** Initial setting of my rotors. */
+        private final String _setting;
+
+        /** My plugboard, as a table. */
+        private final int[] _plugboard;
+
+        /** My substitutions: the one at position P maps X to the char at
+         *  byte 2 * (P * alphabet size + X), or null if I am empty. */
+        private ByteBuffer _tables;
+
+        /** Number of positions for which _tables has room. */
+        private int _capacity;
+
+        /** True iff _tables is mine, rather than mapped from a file. */
+        private boolean _owned;
+
+        /** Number of positions held in _tables. */
+        private int _length;
+
+        /** Number of positions held in my file in the shared directory. */
+        private int _saved;
+
+        /** Settings of the rotors after _length positions, or null if
+         *  they are not known. */
+        private PackedState _tail;
+
+        /** True once I have been evicted. */
+        private boolean _evicted;
+    }
+
+    /** Write each keystream that has grown beyond its file in my shared
+     *  directory, if I have one, to a new version of that file.  Each
+     *  file is replaced atomically, so that other processes mapping it
+     *  see either the old version or the new one. */
+    void save() {
+        if (_shared == null) {
+            return;
+        }
+        for (Keystream stream : _streams.values()) {
+            try {
+                stream.save();
+            } catch (IOException excp) {
+                throw error("could not write keystream file in %s",
+                            _shared);
+            }
+        }
+    }
+
+    /** Evict the least recently looked-up keystreams other than KEEP
+     *  until my tables fit in my budget.  Keystreams mapped from files
+     *  use none of it, so they stay. */
+    private void evict(Keystream keep) {
+        Iterator<Keystream> streams = _streams.values().iterator();
+        while (_bytes > _budget && streams.hasNext()) {
+            Keystream victim = streams.next();
+            if (victim == keep || !victim._owned) {
+                continue;
+            }
+            streams.remove();
+            victim._evicted = true;
+            _bytes -= victim.bytes();
+            victim._tables = null;
+            if (_owner == victim) {
+                _owner = null;
+            }
+            _evictions += 1;
+        }
+    }
+
+    /** Return the name of the file holding the keystream cached under
+     *  KEY in a shared directory. */
+    private static String fileName(String key) {
+        long h = FNV_BASIS;
+        for (int i = 0; i < key.length(); i += 1) {
+            h = (h ^ key.charAt(i)) * FNV_PRIME;
+        }
+        return String.format("%016x.keystream", h);
+    }
+
+    /** Return the length of the header of a keystream file whose key
+     *  takes KEYLENGTH bytes: four ints (magic number, alphabet size,
+     *  number of positions, and key length), the fingerprint of the
+     *  configuration, and the key, padded to a multiple of eight
+     *  bytes. */
+    private static int header(int keyLength) {
+        return (4 * Integer.BYTES + Long.BYTES + keyLength + 7) & ~7;
+    }
+
+    /** Return a fingerprint of CONFIG: a hash of its alphabet's code
+     *  points, its numbers of slots and pawls, and the name, kind,
+     *  wiring, and notches of each of its rotors.  Keystreams of
+     *  configurations that reuse rotor names with other wirings or
+     *  notches thus never share files. */
+    private static long fingerprint(Configuration config) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException excp) {
+            throw error("no SHA-256 for keystream fingerprints");
+        }
+        Alphabet alpha = config.alphabet();
+        ByteBuffer data = ByteBuffer.allocate(
+            (Integer.BYTES + 1) * alpha.size() + 3 * Integer.BYTES);
+        data.putInt(alpha.size());
+        for (int i = 0; i < alpha.size(); i += 1) {
+            data.putInt(alpha.toCodePoint(i));
+        }
+        data.putInt(config.numRotors()).putInt(config.numPawls());
+        digest.update(data.array());
+        RotorCatalog catalog = config.catalog();
+        for (int id = 0; id < catalog.size(); id += 1) {
+            Rotor rotor = catalog.get(id);
+            byte[] name = rotor.name().getBytes(StandardCharsets.UTF_8);
+            data.clear();
+            data.putInt(name.length);
+            data.putInt(rotor.reflecting() ? 2 : rotor.rotates() ? 1 : 0);
+            for (int x : rotor.permutation().table()) {
+                data.putInt(x);
+            }
+            for (int x = 0; x < alpha.size(); x += 1) {
+                data.put((byte) (rotor.notchAt(x) ? 1 : 0));
+            }
+            digest.update(data.array(), 0, data.position());
+            digest.update(name);
+        }
+        return ByteBuffer.wrap(digest.digest()).getLong();
+    }
+
+    /** Most keys of settings lines seen once that are remembered. */
+    private static final int MAX_SEEN = 1 << 14;
+
+    /** Identifies a keystream file. */
+    private static final int MAGIC = 0x454e5332;
+
+    /** Largest alphabet whose substitutions may be cached. */
+    private static final int MAX_SIZE = Character.MAX_VALUE + 1;
+
+    /** FNV-1a offset basis, for file names. */
+    private static final long FNV_BASIS = 0xcbf29ce484222325L;
+
+    /** FNV-1a prime. */
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /** Configuration of my machines. */
+    private final Configuration _config;
+
+    /** Fingerprint of _config, part of every key. */
+    private final long _fingerprint;
+
+    /** Machine used to extend keystreams. */
+    private final Machine _machine;
+
+    /** The keystream that _machine is positioned to extend, if any. */
+    private Keystream _owner;
+
+    /** Alphabet size. */
+    private final int _size;
+
+    /** True iff my tables are kept off the heap. */
+    private final boolean _offHeap;
+
+    /** Directory of shared keystream files, or null. */
+    private final Path _shared;
+
+    /** Maximum number of bytes of tables. */
+    private final long _budget;
+
+    /** Scratch: the rotors' substitution at one position. */
+    private final int[] _core;
+
+    /** Cached keystreams by key, least recently looked up first. */
+    private final LinkedHashMap<String, Keystream> _streams =
+        new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Keys looked up once but not admitted, least recent first. */
+    private final LinkedHashMap<String, Boolean> _seen =
+        new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String,
+                                                Boolean> eldest) {
+                return size() > MAX_SEEN;
+            }
+        };
+
+    /** Bytes of tables now cached. */
+    private long _bytes;
+
+    /** Lookup and eviction counts. */
+    private long _hits, _misses, _evictions;
+
+    /** Number of keystreams mapped from shared files. */
+    private long _mapped;
+}
@@ -0,0 +1,298 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.Stream;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the KeystreamCache class.
+ *  @author Cheng Zhu
+ */
+public class KeystreamCacheTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Naval rotors with a double-stepping middle rotor. */
+    private static final String[] NAVAL = { "B", "Beta", "I", "II", "III" };
+
+    /** Return the conversion of MSG by a fresh machine of CONFIG with
+     *  rotors ROTORS, setting SETTING, and plugboard PLUG. */
+    private static int[] expected(Configuration config, String[] rotors,
+                                  String setting, Permutation plug,
+                                  int[] msg) {
+        Machine mach = config.newMachine();
+        mach.insertRotors(rotors);
+        mach.setRotors(setting);
+        mach.setPlugboard(plug);
+        int[] result = new int[msg.length];
+        mach.convert(msg, result);
+        return result;
+    }
+
+    @Test
+    public void testConvert() {
+        Configuration config = config(NAVAL_CONFIG);
+        Permutation plug = new Permutation("(AQ) (EP) (TZ)", UPPER);
+        KeystreamCache cache = new KeystreamCache(config, 1 << 20);
+        int[] msg = indices((ENGLISH + ENGLISH).substring(0, 400), UPPER);
+        int[] want = expected(config, NAVAL, "AAQE", plug, msg);
+
+        assertNull(cache.lookup(NAVAL, "AAQE", plug));
+        assertEquals(0, cache.size());
+        KeystreamCache.Keystream stream =
+            cache.lookup(NAVAL, "AAQE", plug);
+        assertEquals(0, stream.length());
+        assertEquals(0, cache.hits());
+        assertEquals(2, cache.misses());
+        int[] got = new int[msg.length];
+        int start = 0;
+        for (int len : new int[] { 7, 50, 1, 142, 200 }) {
+            int[] part = new int[len];
+            System.arraycopy(msg, start, part, 0, len);
+            assertTrue(stream.extend(start + len));
+            assertEquals(start + len, stream.length());
+            stream.convert(part, start, part);
+            System.arraycopy(part, 0, got, start, len);
+            start += len;
+        }
+        assertArrayEquals(want, got);
+
+        KeystreamCache.Keystream again = cache.lookup(NAVAL, "AAQE", plug);
+        assertSame(stream, again);
+        assertEquals(1, cache.hits());
+        assertTrue(again.extend(100));
+        assertEquals(400, again.length());
+        int[] prefix = new int[100];
+        System.arraycopy(msg, 0, prefix, 0, 100);
+        again.convert(prefix, 0, prefix);
+        for (int i = 0; i < 100; i += 1) {
+            assertEquals(want[i], prefix[i]);
+        }
+
+        assertNull(cache.lookup(NAVAL, "AAQF", plug));
+        assertNull(cache.lookup(NAVAL, "AAQE", new Permutation("", UPPER)));
+        assertEquals(4, cache.misses());
+        assertEquals(1, cache.size());
+        assertNotNull(cache.lookup(NAVAL, "AAQF", plug));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testEviction() {
+        Configuration config = config(NAVAL_CONFIG);
+        Permutation plug = new Permutation("", UPPER);
+        KeystreamCache cache =
+            new KeystreamCache(config, 2 * 26 * 2 * 100);
+        KeystreamCache.Keystream first = admit(cache, "AAAA", plug);
+        assertTrue(first.extend(100));
+        KeystreamCache.Keystream second = admit(cache, "BBBB", plug);
+        assertTrue(second.extend(100));
+        assertEquals(0, cache.evictions());
+        cache.lookup(NAVAL, "AAAA", plug);
+        KeystreamCache.Keystream third = admit(cache, "CCCC", plug);
+        assertTrue(third.extend(100));
+        assertEquals(1, cache.evictions());
+        assertFalse(second.extend(10));
+        assertTrue(first.extend(100));
+        assertTrue(cache.bytes() <= 2 * 26 * 2 * 100);
+
+        assertFalse(third.extend(201));
+        assertEquals(100, third.length());
+    }
+
+    /** Return the keystream of CACHE for the naval rotors with setting
+     *  SETTING and plugboard PLUG, looking it up twice to admit it. */
+    private static KeystreamCache.Keystream admit(KeystreamCache cache,
+                                                  String setting,
+                                                  Permutation plug) {
+        assertNull(cache.lookup(NAVAL, setting, plug));
+        return cache.lookup(NAVAL, setting, plug);
+    }
+
+    @Test
+    public void testNoRepeats() {
+        KeystreamCache cache =
+            new KeystreamCache(config(NAVAL_CONFIG), 1 << 20);
+        Permutation plug = new Permutation("", UPPER);
+        for (char c = 'A'; c <= 'Z'; c += 1) {
+            assertNull(cache.lookup(NAVAL, "AAA" + c, plug));
+        }
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.bytes());
+        assertEquals(26, cache.misses());
+    }
+
+    /** Delete DIR and the files in it. */
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    @Test
+    public void testShared() throws IOException {
+        Configuration config = config(NAVAL_CONFIG);
+        Permutation plug = new Permutation("(AQ) (EP) (TZ)", UPPER);
+        int[] msg = indices((ENGLISH + ENGLISH).substring(0, 400), UPPER);
+        int[] want = expected(config, NAVAL, "XQEB", plug, msg);
+        Path dir = Files.createTempDirectory("keystreams");
+        try {
+            KeystreamCache writer =
+                new KeystreamCache(config, 1 << 20, true, dir);
+            KeystreamCache.Keystream stream = admit(writer, "XQEB", plug);
+            assertEquals(0, writer.mapped());
+            assertTrue(stream.extend(250));
+            assertTrue(writer.bytes() > 0);
+            writer.save();
+
+            KeystreamCache reader =
+                new KeystreamCache(config, 1 << 20, false, dir);
+            KeystreamCache.Keystream shared =
+                reader.lookup(NAVAL, "XQEB", plug);
+            assertEquals(1, reader.mapped());
+            assertEquals(250, shared.length());
+            assertEquals(0, reader.bytes());
+            int[] got = Arrays.copyOf(msg, 250);
+            assertTrue(shared.extend(250));
+            shared.convert(got, 0, got);
+            assertArrayEquals(Arrays.copyOf(want, 250), got);
+            assertEquals(0, reader.bytes());
+            assertTrue(shared.extend(400));
+            assertTrue(reader.bytes() > 0);
+            got = new int[400];
+            shared.convert(msg, 0, got);
+            assertArrayEquals(want, got);
+
+            reader.lookup(NAVAL, "XQEC", plug);
+            assertEquals(1, reader.mapped());
+            reader.save();
+            KeystreamCache third =
+                new KeystreamCache(config, 1 << 20, false, dir);
+            assertEquals(400, third.lookup(NAVAL, "XQEB", plug).length());
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void testSharedEviction() throws IOException {
+        Configuration config = config(NAVAL_CONFIG);
+        Permutation plug = new Permutation("", UPPER);
+        Path dir = Files.createTempDirectory("keystreams");
+        try {
+            KeystreamCache writer =
+                new KeystreamCache(config, 1 << 20, false, dir);
+            assertTrue(admit(writer, "XQEB", plug).extend(250));
+            writer.save();
+
+            KeystreamCache reader =
+                new KeystreamCache(config, 2 * 26 * 2 * 100, false, dir);
+            KeystreamCache.Keystream shared =
+                reader.lookup(NAVAL, "XQEB", plug);
+            assertEquals(1, reader.mapped());
+            KeystreamCache.Keystream first = admit(reader, "AAAA", plug);
+            assertTrue(first.extend(100));
+            KeystreamCache.Keystream second = admit(reader, "BBBB", plug);
+            assertTrue(second.extend(100));
+            assertTrue(first.extend(150));
+            assertEquals(1, reader.evictions());
+            assertFalse(second.extend(10));
+            assertEquals(3, reader.size() + reader.evictions());
+            assertTrue(shared.extend(250));
+            assertEquals(250, shared.length());
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void testSharedOtherConfiguration() throws IOException {
+        Permutation plug = new Permutation("(AQ) (EP)", UPPER);
+        int[] msg = indices(ENGLISH.substring(0, 300), UPPER);
+        String rewired = NAVAL_CONFIG.replace(
+            "III MV " + NAVALA.get("III"), "III MV " + NAVALA.get("IV"));
+        String renotched = NAVAL_CONFIG.replace("III MV", "III MW");
+        Path dir = Files.createTempDirectory("keystreams");
+        try {
+            KeystreamCache writer =
+                new KeystreamCache(config(NAVAL_CONFIG), 1 << 20, false,
+                                   dir);
+            assertTrue(admit(writer, "AAAA", plug).extend(300));
+            writer.save();
+            for (String text : new String[] { rewired, renotched }) {
+                Configuration config = config(text);
+                KeystreamCache reader =
+                    new KeystreamCache(config, 1 << 20, false, dir);
+                KeystreamCache.Keystream stream =
+                    admit(reader, "AAAA", plug);
+                assertEquals(0, reader.mapped());
+                assertEquals(0, stream.length());
+                assertTrue(stream.extend(300));
+                int[] got = new int[msg.length];
+                stream.convert(msg, 0, got);
+                assertArrayEquals(expected(config, NAVAL, "AAAA", plug, msg),
+                                  got);
+            }
+            KeystreamCache same =
+                new KeystreamCache(config(NAVAL_CONFIG), 1 << 20, false,
+                                   dir);
+            same.lookup(NAVAL, "AAAA", plug);
+            assertEquals(1, same.mapped());
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /** Return the output of Main on INPUT, with a keystream cache of
+     *  BUDGET bytes if BUDGET > 0. */
+    private static String run(String input, long budget) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Main job = new Main(config(NAVAL_CONFIG),
+                            new LineInput(new ByteArrayInputStream(
+                                input.getBytes(StandardCharsets.UTF_8)),
+                                          0),
+                            new PrintStream(out, true));
+        job.cacheKeystreams(budget);
+        job.process();
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testMain() {
+        Random random = new Random(41);
+        StringBuilder input = new StringBuilder();
+        String[] lines = {
+            "* B Beta I II III AAAA (AQ) (EP)",
+            "* B Gamma III I V ZZMQ",
+            "* B Beta I II III AAAA (AQ)   (EP)",
+        };
+        for (int section = 0; section < 12; section += 1) {
+            input.append(lines[random.nextInt(lines.length)]).append("\n");
+            for (int n = random.nextInt(4); n >= 0; n -= 1) {
+                int start = random.nextInt(ENGLISH.length() - 200);
+                input.append(ENGLISH, start, start + random.nextInt(200))
+                    .append("\n");
+            }
+        }
+        String want = run(input.toString(), 0);
+        assertEquals(want, run(input.toString(), 1 << 20));
+        assertEquals(want, run(input.toString(), 26 * 2 * 150));
+    }
+}
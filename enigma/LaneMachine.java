@@ -0,0 +1,202 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** A batch of machines with the same rotors and plugboard but their own
+ *  settings, run in lockstep over one message.  Each machine is a lane.
+ *  State is kept as a structure of arrays: the setting of slot K in
+ *  lane L is _posn[K][L], and the letter in flight in lane L is
+ *  _x[L].  Each character of the message is stepped, and then passed
+ *  through each rotor in turn, across all the lanes at once, so that
+ *  the inner loops are short, uniform, branch-free loops over lanes that
+ *  the JIT can unroll and vectorize.
+ *
+ *  A rotor at setting P maps x to W(x + P) - P.  The wiring tables are
+ *  doubled in length so that x + P needs no reduction, and the
+ *  subtraction is reduced by adding back the alphabet size when the sign
+ *  bit is set.
+ *  @author Cheng Zhu
+ */
+class LaneMachine {
+
+    /** A batch of LANES machines of the configuration CONFIG. */
+    LaneMachine(Configuration config, int lanes) {
+        _config = config;
+        _lanes = lanes;
+        _numSlots = config.numRotors();
+        _size = config.alphabet().size();
+        _fast = _numSlots - 1;
+        _firstPawl = _numSlots - config.numPawls();
+        _forward = new int[_numSlots][];
+        _backward = new int[_numSlots][];
+        _notches = new boolean[_numSlots][];
+        _rotates = new boolean[_numSlots];
+        _posn = new int[_numSlots][lanes];
+        _x = new int[lanes];
+        _engaged = new boolean[lanes];
+        _pushed = new boolean[lanes];
+        _plugboard = new int[_size];
+        for (int x = 0; x < _size; x += 1) {
+            _plugboard[x] = x;
+        }
+    }
+
+    /** Return the number of lanes. */
+    int lanes() {
+        return _lanes;
+    }
+
+    /** Put the rotors whose ids in my configuration's catalog are IDS
+     *  (IDS[0] being the reflector) in the slots of every lane. */
+    void insertRotors(int[] ids) {
+        for (int k = 0; k < _numSlots; k += 1) {
+            Rotor r = _config.catalog().get(ids[k]);
+            int[] wiring = r.permutation().toArray();
+            _forward[k] = new int[2 * _size];
+            _backward[k] = new int[2 * _size];
+            _notches[k] = new boolean[_size];
+            for (int x = 0; x < _size; x += 1) {
+                _forward[k][x] = _forward[k][x + _size] = wiring[x];
+                _backward[k][wiring[x]] = _backward[k][wiring[x] + _size] = x;
+                _notches[k][x] = r.notchAt(x);
+            }
+            _rotates[k] = r.rotates();
+        }
+    }
+
+    /** Set the plugboard of every lane to PLUGBOARD. */
+    void setPlugboard(Permutation plugboard) {
+        _plugboard = plugboard.toArray();
+    }
+
+    /** Set the rotors of lane LANE according to SETTING, whose K-th
+     *  element is the setting of Rotor #K+1. */
+    void setRotors(int lane, int[] setting) {
+        if (setting.length != _numSlots - 1) {
+            throw error("wrong number of settings");
+        }
+        for (int k = 1; k < _numSlots; k += 1) {
+            _posn[k][lane] = setting[k - 1];
+        }
+    }
+
+    /** Convert the first LENGTH characters of MSG (as alphabet indices)
+     *  in the first ACTIVE lanes, from their current settings, leaving
+     *  the result of lane L in RESULT[L]. */
+    void convert(int[] msg, int length, int active, int[][] result) {
+        int[] x = _x;
+        for (int i = 0; i < length; i += 1) {
+            step(active);
+            int c = _plugboard[msg[i]];
+            for (int l = 0; l < active; l += 1) {
+                x[l] = c;
+            }
+            for (int k = _fast; k > 0; k -= 1) {
+                pass(_forward[k], _posn[k], active);
+            }
+            pass(_forward[0], _posn[0], active);
+            for (int k = 1; k <= _fast; k += 1) {
+                pass(_backward[k], _posn[k], active);
+            }
+            for (int l = 0; l < active; l += 1) {
+                result[l][i] = _plugboard[x[l]];
+            }
+        }
+    }
+
+    /** Pass the letters in flight in the first ACTIVE lanes through the
+     *  rotor whose doubled wiring is TABLE, at settings POSN. */
+    private void pass(int[] table, int[] posn, int active) {
+        int[] x = _x;
+        int n = _size;
+        for (int l = 0; l < active; l += 1) {
+            int y = table[x[l] + posn[l]] - posn[l];
+            x[l] = y + ((y >> 31) & n);
+        }
+    }
+
+    /** Advance the rotors of the first ACTIVE lanes, as the pawls of a
+     *  machine would.  Slots are visited from the fast rotor leftward,
+     *  so that whether the pawl to the right of a slot was engaged
+     *  before the step is known when the slot is reached. */
+    private void step(int active) {
+        boolean[] pushed = _pushed;
+        boolean[] engaged = _engaged;
+        for (int l = 0; l < active; l += 1) {
+            pushed[l] = false;
+        }
+        for (int k = _fast; k >= _firstPawl && k > 0; k -= 1) {
+            int[] posn = _posn[k];
+            boolean[] notches = _notches[k];
+            boolean canEngage = _rotates[k - 1];
+            boolean rotates = _rotates[k];
+            boolean fast = k == _fast;
+            for (int l = 0; l < active; l += 1) {
+                boolean engage = canEngage && notches[posn[l]];
+                if (rotates && (fast || engage || pushed[l])) {
+                    posn[l] = posn[l] + 1 == _size ? 0 : posn[l] + 1;
+                }
+                engaged[l] = engage;
+            }
+            boolean[] t = pushed;
+            pushed = engaged;
+            engaged = t;
+        }
+        int k = _firstPawl - 1;
+        if (k >= 0 && _rotates[k]) {
+            int[] posn = _posn[k];
+            for (int l = 0; l < active; l += 1) {
+                if (pushed[l]) {
+                    posn[l] = posn[l] + 1 == _size ? 0 : posn[l] + 1;
+                }
+            }
+        }
+    }
+
+    /** My configuration. */
+    private final Configuration _config;
+
+    /** Number of lanes. */
+    private final int _lanes;
+
+    /** Number of slots. */
+    private final int _numSlots;
+
+    /** Alphabet size. */
+    private final int _size;
+
+    /** Slot number of the fast rotor. */
+    private final int _fast;
+
+    /** Slot number of the leftmost pawl. */
+    private final int _firstPawl;
+
+    /** Wiring of each slot's rotor, twice over. */
+    private final int[][] _forward;
+
+    /** Inverse wiring of each slot's rotor, twice over. */
+    private final int[][] _backward;
+
+    /** Whether each slot's rotor has a notch at each setting. */
+    private final boolean[][] _notches;
+
+    /** Whether each slot's rotor can move. */
+    private final boolean[] _rotates;
+
+    /** Setting of each slot in each lane. */
+    private final int[][] _posn;
+
+    /** Letter in flight in each lane. */
+    private final int[] _x;
+
+    /** Scratch: whether the pawl of the slot being stepped is engaged in
+     *  each lane. */
+    private final boolean[] _engaged;
+
+    /** Scratch: whether the slot being stepped is pushed by the pawl to
+     *  its right in each lane. */
+    private final boolean[] _pushed;
+
+    /** The plugboard, as a table. */
+    private int[] _plugboard;
+}
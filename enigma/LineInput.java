@@ -0,0 +1,106 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import static enigma.EnigmaException.*;
+
+/** A source of input lines that keeps track of the byte offset at which
+ *  the next unread line starts, so that a job can be checkpointed and
+ *  later resumed at a line boundary.  As for Scanner.nextLine, a line is
+ *  terminated by "\n", "\r\n", "\r", or the end of input, and text is
+ *  decoded as CHARSET.
+ *  @author Cheng Zhu
+ */
+class LineInput {
+
+    /** Lines read from IN, whose first byte lies at byte OFFSET of the
+     *  underlying file. */
+    LineInput(InputStream in, long offset) {
+        _in = new BufferedInputStream(in, BUFFER_SIZE);
+        _offset = offset;
+        _nextOffset = offset;
+    }
+
+    /** Return true iff there is another line to read. */
+    boolean hasNextLine() {
+        if (_next == null) {
+            fill();
+        }
+        return _next != null;
+    }
+
+    /** Return the next line, without its terminator. */
+    String nextLine() {
+        if (!hasNextLine()) {
+            throw error("unexpected end of input");
+        }
+        String result = _next;
+        _next = null;
+        _offset = _nextOffset;
+        return result;
+    }
+
+    /** Return the byte offset of the first line not yet returned by
+     *  nextLine(). */
+    long offset() {
+        return _offset;
+    }
+
+    /** Read the next line, if any, into _next. */
+    private void fill() {
+        try {
+            _line.reset();
+            long start = _nextOffset;
+            int b = _in.read();
+            while (b != -1 && b != '\n' && b != '\r') {
+                _line.write(b);
+                _nextOffset += 1;
+                b = _in.read();
+            }
+            if (b == -1 && _nextOffset == start) {
+                return;
+            }
+            if (b != -1) {
+                _nextOffset += 1;
+            }
+            if (b == '\r') {
+                _in.mark(1);
+                if (_in.read() == '\n') {
+                    _nextOffset += 1;
+                } else {
+                    _in.reset();
+                }
+            }
+            _next = _line.toString(CHARSET);
+        } catch (IOException excp) {
+            throw error("could not read input: %s", excp.getMessage());
+        }
+    }
+
+    /** Size of the read buffer. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Charset used to decode lines, and of the other text files
+     *  (configurations, corpora and output) of a job. */
+    static final Charset CHARSET = StandardCharsets.UTF_8;
+
+    /** Source of bytes. */
+    private final BufferedInputStream _in;
+
+    /** Bytes of the line being read. */
+    private final ByteArrayOutputStream _line = new ByteArrayOutputStream();
+
+    /** The line read ahead by hasNextLine, or null. */
+    private String _next;
+
+    /** Offset of the first line not yet returned. */
+    private long _offset;
+
+    /** Offset just past _next (or of the next line, if _next is null). */
+    private long _nextOffset;
+}
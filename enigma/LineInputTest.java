@@ -0,0 +1,90 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the LineInput class.
+ *  @author Cheng Zhu
+ */
+public class LineInputTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Return the lines of TEXT, starting at byte OFFSET of a file. */
+    private static LineInput lines(String text, long offset) {
+        return new LineInput(new ByteArrayInputStream(
+            text.getBytes(StandardCharsets.UTF_8)), offset);
+    }
+
+    /** Check that the lines of INPUT are EXPECTED, and that the offset
+     *  after each is the corresponding element of OFFSETS. */
+    private static void check(LineInput input, String[] expected,
+                              long[] offsets) {
+        for (int k = 0; k < expected.length; k += 1) {
+            assertTrue(input.hasNextLine());
+            assertEquals(expected[k], input.nextLine());
+            assertEquals(offsets[k], input.offset());
+        }
+        assertFalse(input.hasNextLine());
+    }
+
+    @Test
+    public void testTerminators() {
+        check(lines("ab\ncd\ref\r\ngh", 0),
+              new String[] { "ab", "cd", "ef", "gh" },
+              new long[] { 3, 6, 10, 12 });
+        check(lines("ab\r\n", 0), new String[] { "ab" }, new long[] { 4 });
+        check(lines("ab\r", 0), new String[] { "ab" }, new long[] { 3 });
+        check(lines("", 0), new String[] {}, new long[] {});
+    }
+
+    @Test
+    public void testBlankLines() {
+        check(lines("\n\r\r\n\r\n\n", 0),
+              new String[] { "", "", "", "", "" },
+              new long[] { 1, 2, 4, 6, 7 });
+        check(lines("\r\r", 0), new String[] { "", "" },
+              new long[] { 1, 2 });
+    }
+
+    @Test
+    public void testOffsets() {
+        LineInput input = lines("* B Beta I II III AAAA\r\nHELLO\r\n", 100);
+        assertEquals(100, input.offset());
+        assertTrue(input.hasNextLine());
+        assertEquals(100, input.offset());
+        input.nextLine();
+        assertEquals(124, input.offset());
+        assertEquals("HELLO", input.nextLine());
+        assertEquals(131, input.offset());
+        assertFalse(input.hasNextLine());
+        assertEquals(131, input.offset());
+    }
+
+    @Test
+    public void testMultibyte() {
+        check(lines("\u00e9\r\n\ud83d\ude00\rx", 0),
+              new String[] { "\u00e9", "\ud83d\ude00", "x" },
+              new long[] { 4, 9, 10 });
+    }
+
+    @Test
+    public void testLongLine() {
+        String line = "A".repeat((1 << 16) - 1);
+        check(lines(line + "\r\n" + line, 0), new String[] { line, line },
+              new long[] { (1 << 16) + 1, 1 << 17 });
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testPastEnd() {
+        LineInput input = lines("ab\n", 0);
+        input.nextLine();
+        input.nextLine();
+    }
+}
@@ -1,7 +1,6 @@
 package enigma;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Collection;
 
 import static enigma.EnigmaException.*;
@@ -19,7 +18,10 @@ class Machine {
         _alphabet = alpha;
         _numRotors = numRotors;
         _pawls = pawls;
-        _allRotors = allRotors;
+        _catalog = new RotorCatalog(allRotors);
+        _slots = new Rotor[numRotors];
+        _posn = new int[numRotors];
+        _engineEvents = new long[numRotors];
         _plugboard = null;
     }
 
@@ -37,7 +39,11 @@ class Machine {
      *  #(numRotors()-1) is the fast Rotor.  Modifying this Rotor has
      *  undefined results. */
     Rotor getRotor(int k) {
-        return _rotorMap.get(k);
+        if (_rotorsStale) {
+            _tree.store();
+            _rotorsStale = false;
+        }
+        return _slots[k];
     }
 
     Alphabet alphabet() {
@@ -48,22 +54,61 @@ class Machine {
      *  available rotors (ROTORS[0] names the reflector).
      *  Initially, all rotors are set at their 0 setting. */
     void insertRotors(String[] rotors) {
+        insertRotors(_catalog.ids(rotors));
+    }
+
+    /** Set my rotor slots to the rotors whose ids in catalog() are IDS
+     *  (IDS[0] is the reflector).  Initially, all rotors are set at their
+     *  0 setting. */
+    void insertRotors(int[] ids) {
         for (int index = 0; index < numRotors(); index++) {
-            for (Rotor r : _allRotors) {
-                if (r.name().equals(rotors[index])) {
-                    _rotorMap.put(index, r);
-                }
-            }
+            _slots[index] = _catalog.get(ids[index]);
         }
+        _tree = null;
+        _rotorsStale = false;
+        _engine = null;
+        _engineChecked = false;
+        Arrays.fill(_engineEvents, 0);
+    }
+
+    /** Return the catalog of my available rotors. */
+    RotorCatalog catalog() {
+        return _catalog;
     }
 
     /** Set my rotors according to SETTING, which must be a string of
      *  numRotors()-1 characters in my alphabet. The first letter refers
      *  to the leftmost rotor setting (not counting the reflector).  */
     void setRotors(String setting) {
+        int[] posn = alphabet().toInts(setting);
+        if (posn.length < numRotors() - 1) {
+            throw error("wrong number of rotor settings");
+        }
+        setRotors(posn);
+    }
+
+    /** Set my rotors according to SETTING, whose K-th element is the
+     *  setting (in 0 .. alphabet size - 1) of Rotor #K+1. */
+    void setRotors(int[] setting) {
         for (int index = 1; index < numRotors(); index++) {
-            getRotor(index).set(setting.charAt(index - 1));
+            _slots[index].set(setting[index - 1]);
         }
+        _rotorsStale = false;
+        _settingsChanged = true;
+    }
+
+    /** Return the current settings of my rotors, packed.  Taking and
+     *  restoring snapshots is cheap, and snapshots are values that may
+     *  be compared and hashed. */
+    PackedState snapshot() {
+        return tree().snapshot();
+    }
+
+    /** Set my rotors to the settings in STATE, a snapshot taken from a
+     *  machine with the same number of rotors and alphabet size. */
+    void restore(PackedState state) {
+        tree().restore(state);
+        _rotorsStale = true;
     }
 
     /** Return the current plugboard's permutation. */
@@ -78,56 +123,126 @@ class Machine {
 
     /** Returns the result of converting the input character C (as an
      *  index in the range 0..alphabet size - 1), after first advancing
-     *  the machine. */
+     *  the machine.  If C is out of range, the machine is not
+     *  advanced. */
     int convert(int c) {
+        if (c < 0 || c >= alphabet().size()) {
+            throw error("index %d not in the alphabet", c);
+        }
+        return convertIndex(c);
+    }
+
+    /** Return the result of converting C, which must be in 0 .. alphabet
+     *  size - 1, after first advancing the machine. */
+    private int convertIndex(int c) {
         advanceRotors();
         if (Main.verbose()) {
             System.err.printf("[");
             for (int r = 1; r < numRotors(); r += 1) {
                 System.err.printf("%c",
-                        alphabet().toChar(getRotor(r).setting()));
+                        alphabet().toCodePoint(getRotor(r).setting()));
             }
-            System.err.printf("] %c -> ", alphabet().toChar(c));
+            System.err.printf("] %c -> ", alphabet().toCodePoint(c));
         }
         c = plugboard().permute(c);
         if (Main.verbose()) {
-            System.err.printf("%c -> ", alphabet().toChar(c));
+            System.err.printf("%c -> ", alphabet().toCodePoint(c));
+        }
+        if (Main.verbose()) {
+            c = applyRotors(c);
+        } else {
+            c = _tree.convert(c);
         }
-        c = applyRotors(c);
         c = plugboard().permute(c);
         if (Main.verbose()) {
-            System.err.printf("%c%n", alphabet().toChar(c));
+            System.err.printf("%c%n", alphabet().toCodePoint(c));
         }
         return c;
     }
 
-    /** Advance all rotors to their next position. */
+    /** Advance the machine, as convert does before converting a
+     *  character, and then store in CORE the map (excluding the
+     *  plugboard) that the rotors apply: CORE[X] becomes the result of
+     *  passing X through all the rotors, forward and back. */
+    void stepCore(int[] core) {
+        advanceRotors();
+        for (int x = 0; x < core.length; x += 1) {
+            core[x] = _tree.convert(x);
+        }
+    }
+
+    /** Advance the machine COUNT times, as converting COUNT characters
+     *  would. */
+    void advance(long count) {
+        for (long i = 0; i < count; i += 1) {
+            advanceRotors();
+        }
+    }
+
+    /** Advance all rotors to their next position, sampling the steps
+     *  in which pawls engage as NotchCascadeEvents. */
     private void advanceRotors() {
-        ArrayList<Integer> atNotchIndexArray = new ArrayList<>();
-        boolean[] rotatedArr = new boolean[numRotors()];
-        for (int index = numRotors() - numPawls();
-             index < numRotors(); index++) {
-            if (getRotor(index).atNotch()) {
-                atNotchIndexArray.add(index);
-            }
+        int engaged = tree().step();
+        _rotorsStale = true;
+        if (engaged > 0) {
+            sampleCascades(1, engaged);
         }
-        for (int index : atNotchIndexArray) {
-            if (getRotor(index - 1).rotates()) {
-                if (!rotatedArr[index]) {
-                    getRotor(index).advance();
-                    rotatedArr[index] = true;
-                }
-                if (!rotatedArr[index - 1]) {
-                    getRotor(index - 1).advance();
-                    rotatedArr[index - 1] = true;
-                }
-            }
+    }
+
+    /** Note STEPS steps in which pawls engaged, PAWLS of them in each
+     *  (on average), committing a NotchCascadeEvent for each
+     *  NotchCascadeEvent.SAMPLE such steps. */
+    private void sampleCascades(int steps, int pawls) {
+        _cascades -= steps;
+        if (_cascades > 0) {
+            return;
         }
-        if (!rotatedArr[numRotors() - 1]) {
-            getRotor(numRotors() - 1).advance();
+        int events = 1 - _cascades / NotchCascadeEvent.SAMPLE;
+        _cascades += events * NotchCascadeEvent.SAMPLE;
+        for (int k = 0; k < events && NotchCascadeEvent.enabled();
+             k += 1) {
+            NotchCascadeEvent event = new NotchCascadeEvent();
+            event.pawls = pawls;
+            event.slots = numRotors();
+            event.weight = NotchCascadeEvent.SAMPLE;
+            event.commit();
         }
     }
 
+    /** Return the number of notch events of each slot, indexed by slot,
+     *  since the rotors were inserted or this was last called. */
+    long[] takeNotchEvents() {
+        long[] result =
+            _tree == null ? new long[numRotors()] : _tree.takeNotchEvents();
+        for (int k = 0; k < result.length; k += 1) {
+            result[k] += _engineEvents[k];
+        }
+        Arrays.fill(_engineEvents, 0);
+        return result;
+    }
+
+    /** Return the generated engine for my rotor order, or null if there
+     *  is none. */
+    private RotorCompiler.Engine engine() {
+        if (!_engineChecked) {
+            _engine = RotorCompiler.engine(_slots, numPawls());
+            _engineChecked = true;
+        }
+        return _engine;
+    }
+
+    /** Return _tree, built or brought up to date with my rotors'
+     *  settings as needed. */
+    private RotorTree tree() {
+        if (_tree == null) {
+            _tree = new RotorTree(_slots, numPawls());
+        } else if (_settingsChanged) {
+            _tree.reset();
+        }
+        _settingsChanged = false;
+        return _tree;
+    }
+
     /** Return the result of applying the rotors to the character C (as an
      *  index in the range 0..alphabet size - 1). */
     private int applyRotors(int c) {
@@ -141,15 +256,54 @@ class Machine {
         return result;
     }
 
+    /** Store the encoding/decoding of the characters in MSG (as indices
+     *  in the range 0..alphabet size - 1) into the first MSG.length
+     *  elements of RESULT, updating the state of the rotors
+     *  accordingly.  All of MSG is checked first, so that if any of it
+     *  is out of range, the machine is left as it was. */
+    void convert(int[] msg, int[] result) {
+        alphabet().checkIndices(msg);
+        convertUnchecked(msg, result);
+    }
+
+    /** As for convert(MSG, RESULT), but for MSG that is already known to
+     *  hold only indices in the range 0..alphabet size - 1, as from
+     *  Alphabet.toInts, so that it is not scanned a second time. */
+    void convertUnchecked(int[] msg, int[] result) {
+        RotorCompiler.Engine engine = Main.verbose() ? null : engine();
+        if (engine == null) {
+            for (int i = 0; i < msg.length; i += 1) {
+                result[i] = convertIndex(msg[i]);
+            }
+            return;
+        }
+        RotorTree tree = tree();
+        tree.settings(_posn);
+        long before = 0, after = 0;
+        for (long count : _engineEvents) {
+            before += count;
+        }
+        int cascades = engine.convert(_posn, _plugboard.table(), msg, result,
+                                      msg.length, _engineEvents);
+        tree.restore(_posn);
+        _rotorsStale = true;
+        if (cascades > 0) {
+            for (long count : _engineEvents) {
+                after += count;
+            }
+            sampleCascades(cascades,
+                           (int) Math.round((double) (after - before)
+                                            / cascades));
+        }
+    }
+
     /** Returns the encoding/decoding of MSG, updating the state of
-     *  the rotors accordingly. */
+     *  the rotors accordingly.  If any character of MSG is not in my
+     *  alphabet, the machine is left as it was. */
     String convert(String msg) {
-        char[] arr = new char[msg.length()];
-        for (int msgIndex = 0; msgIndex < msg.length(); msgIndex++) {
-            arr[msgIndex] = alphabet().toChar(convert(alphabet()
-                    .toInt(msg.charAt(msgIndex))));
-        }
-        return String.valueOf(arr);
+        int[] text = alphabet().toInts(msg);
+        convertUnchecked(text, text);
+        return alphabet().toString(text);
     }
 
     /** Common alphabet of my rotors. */
@@ -161,11 +315,43 @@ class Machine {
     /** Number of pawls. */
     private final int _pawls;
 
-    /** Hashmap for rotors. */
-    private final HashMap<Integer, Rotor> _rotorMap = new HashMap<>();
+    /** The rotors in my slots, indexed by slot number. */
+    private final Rotor[] _slots;
+
+    /** All available rotors. */
+    private final RotorCatalog _catalog;
+
+    /** The rotors in my slots at their current settings, composed for
+     *  fast stepping and conversion, or null if they must be rebuilt
+     *  because the slots or settings were changed. */
+    private RotorTree _tree;
+
+    /** True iff my rotor settings have changed since _tree last read
+     *  them. */
+    private boolean _settingsChanged;
+
+    /** True iff _tree has moved on from the settings of the Rotors in
+     *  my slots, which are brought up to date only when they are asked
+     *  for, so that stepping touches only the packed settings. */
+    private boolean _rotorsStale;
+
+    /** Engine specialized to my rotor order, used to convert whole
+     *  messages, or null. */
+    private RotorCompiler.Engine _engine;
+
+    /** True iff _engine is current for the rotors in my slots. */
+    private boolean _engineChecked;
+
+    /** Steps with engaged pawls to go until the next NotchCascadeEvent
+     *  is sampled. */
+    private int _cascades = NotchCascadeEvent.SAMPLE;
+
+    /** Notch events of each slot in steps taken by _engine, since
+     *  takeNotchEvents was last called. */
+    private final long[] _engineEvents;
 
-    /** Collection of all rotors. */
-    private final Collection<Rotor> _allRotors;
+    /** Scratch: the settings of my slots, for _engine. */
+    private int[] _posn;
 
     /** Plugboard. */
     private Permutation _plugboard;
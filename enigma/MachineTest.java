@@ -1,6 +1,10 @@
 package enigma;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
 import org.junit.Test;
 import org.junit.Rule;
 import org.junit.rules.Timeout;
@@ -87,4 +91,210 @@ public class MachineTest {
                         + "SBFKAJFBYRUEBGVTRIUOBVPBFHDVSFHJEKDSBHFJDSBGFHJS"
                         + "BGHJFGKERBGGHFERKHBGFERKG"));
     }
+
+    @Test
+    public void testInsertRotorsById() {
+        Machine byName = mach1();
+        Machine byId = new Machine(AZ, 7, 5, ROTORS.values());
+        byId.insertRotors(byId.catalog().ids(ROTORS1));
+        byId.setRotors(SETTING1);
+        for (int k = 0; k < ROTORS1.length; k += 1) {
+            assertEquals(ROTORS1[k], byId.getRotor(k).name());
+            assertSame(byName.getRotor(k), byId.getRotor(k));
+        }
+        assertEquals(-1, byId.catalog().id("Omega"));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testInsertUnknownRotor() {
+        Machine mach = new Machine(AZ, 7, 5, ROTORS.values());
+        mach.insertRotors(new String[] {
+            "B", "Gamma", "III", "IV", "I", "VII", "Omega" });
+    }
+
+    @Test
+    public void testBadMessageLeavesMachine() {
+        Machine mach = mach1();
+        mach.setPlugboard(new Permutation("(HQ) (EX) (IP)", AZ));
+        mach.convert("HELLOWORLD");
+        PackedState state = mach.snapshot();
+        try {
+            mach.convert("FROMHERETOETERNITYANDBACKAGAINWITHALLTHENOTCHEs");
+            fail("lower-case letter accepted");
+        } catch (EnigmaException excp) {
+            assertEquals(state, mach.snapshot());
+        }
+        int[] msg = { 0, 1, 2, 26, 4, -1 };
+        try {
+            mach.convert(msg, new int[msg.length]);
+            fail("index out of range accepted");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().contains("3, 5"));
+            assertEquals(state, mach.snapshot());
+        }
+        try {
+            mach.convert(26);
+            fail("index out of range accepted");
+        } catch (EnigmaException excp) {
+            assertEquals(state, mach.snapshot());
+        }
+    }
+
+    @Test
+    public void testSnapshot() {
+        Machine mach = mach1();
+        mach.setPlugboard(new Permutation("(HQ) (EX) (IP)", AZ));
+        mach.convert("HELLOWORLD");
+        PackedState state = mach.snapshot();
+        assertEquals(1, state.length());
+        for (int k = 1; k < ROTORS1.length; k += 1) {
+            assertEquals(mach.getRotor(k).setting(), state.setting(k));
+        }
+        String msg = "FROMHERETOETERNITYANDBACKAGAINWITHALLTHENOTCHES";
+        String once = mach.convert(msg);
+        PackedState later = mach.snapshot();
+        assertNotEquals(state, later);
+        mach.restore(state);
+        assertEquals(state, mach.snapshot());
+        assertEquals(state.hashCode(), mach.snapshot().hashCode());
+        assertEquals(once, mach.convert(msg));
+        assertEquals(later, mach.snapshot());
+
+        Machine other = mach1();
+        other.setPlugboard(mach.plugboard());
+        other.restore(state);
+        for (int k = 1; k < ROTORS1.length; k += 1) {
+            assertEquals(state.setting(k), other.getRotor(k).setting());
+        }
+        assertEquals(once, other.convert(msg));
+    }
+
+    @Test
+    public void testWideSnapshot() {
+        Random rand = new Random(62);
+        List<Rotor> rotors = new ArrayList<>();
+        String[] names = new String[40];
+        names[0] = "B";
+        rotors.add(ROTORS.get("B"));
+        for (int k = 1; k < names.length; k += 1) {
+            names[k] = "R" + k;
+            rotors.add(new MovingRotor(names[k],
+                                       new Permutation(randomCycle(rand), AZ),
+                                       "AEIOU"));
+        }
+        Machine mach = new Machine(AZ, names.length, 30, rotors);
+        mach.insertRotors(names);
+        mach.setPlugboard(new Permutation("", AZ));
+        int[] setting = new int[names.length - 1];
+        for (int k = 0; k < setting.length; k += 1) {
+            setting[k] = rand.nextInt(26);
+        }
+        mach.setRotors(setting);
+        PackedState state = mach.snapshot();
+        assertEquals(4, state.length());
+        for (int k = 1; k < names.length; k += 1) {
+            assertEquals(setting[k - 1], state.setting(k));
+        }
+        int[] msg = new int[500];
+        int[] once = new int[500];
+        int[] again = new int[500];
+        for (int i = 0; i < msg.length; i += 1) {
+            msg[i] = rand.nextInt(26);
+        }
+        mach.convert(msg, once);
+        mach.restore(state);
+        mach.convert(msg, again);
+        assertArrayEquals(once, again);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testRestoreMismatch() {
+        Machine mach = mach1();
+        Machine narrow = new Machine(AZ, 5, 3, ROTORS.values());
+        narrow.insertRotors(new String[] { "B", "Beta", "III", "IV", "I" });
+        mach.restore(narrow.snapshot());
+    }
+
+    /** Return a random permutation of AZ in cycle notation, using
+     *  RAND. */
+    private static String randomCycle(Random rand) {
+        List<Character> letters = new ArrayList<>();
+        for (char c : TestUtils.UPPER_STRING.toCharArray()) {
+            letters.add(c);
+        }
+        Collections.shuffle(letters, rand);
+        StringBuilder result = new StringBuilder("(");
+        for (char c : letters) {
+            result.append(c);
+        }
+        return result.append(")").toString();
+    }
+
+    /** Advance the rotors of MACH as the pawls would, by the original
+     *  scan over every pawl. */
+    private static void naiveAdvance(Machine mach) {
+        int n = mach.numRotors();
+        boolean[] moved = new boolean[n];
+        List<Integer> notched = new ArrayList<>();
+        for (int k = n - mach.numPawls(); k < n; k += 1) {
+            if (mach.getRotor(k).atNotch()) {
+                notched.add(k);
+            }
+        }
+        for (int k : notched) {
+            if (mach.getRotor(k - 1).rotates()) {
+                moved[k] = moved[k - 1] = true;
+            }
+        }
+        moved[n - 1] = true;
+        for (int k = 0; k < n; k += 1) {
+            if (moved[k]) {
+                mach.getRotor(k).advance();
+            }
+        }
+    }
+
+    @Test
+    public void testWideMachine() {
+        Random rand = new Random(61);
+        List<Rotor> rotors = new ArrayList<>();
+        List<Rotor> copies = new ArrayList<>();
+        String[] names = new String[120];
+        names[0] = "B";
+        rotors.add(ROTORS.get("B"));
+        for (int k = 1; k < names.length; k += 1) {
+            names[k] = "R" + k;
+            Permutation perm = new Permutation(randomCycle(rand), AZ);
+            if (k < 20) {
+                rotors.add(new FixedRotor(names[k], perm));
+            } else {
+                rotors.add(new MovingRotor(names[k], perm,
+                                           k % 3 == 0 ? "AQZ" : "M"));
+            }
+        }
+        for (Rotor r : rotors) {
+            copies.add(r.copy());
+        }
+        Machine fast = new Machine(AZ, names.length, 100, rotors);
+        Machine slow = new Machine(AZ, names.length, 100, copies);
+        fast.insertRotors(names);
+        slow.insertRotors(names);
+        Permutation plug = new Permutation("(AB) (CZ)", AZ);
+        fast.setPlugboard(plug);
+        for (int step = 0; step < 5000; step += 1) {
+            int c = rand.nextInt(26);
+            naiveAdvance(slow);
+            int expected = c;
+            for (int k = names.length - 1; k >= 0; k -= 1) {
+                expected = slow.getRotor(k).convertForward(expected);
+            }
+            for (int k = 1; k < names.length; k += 1) {
+                expected = slow.getRotor(k).convertBackward(expected);
+            }
+            expected = plug.permute(expected);
+            assertEquals(expected, fast.convert(plug.permute(c)));
+            assertEquals(slow.getRotor(21).setting(),
+                         fast.getRotor(21).setting());
+        }
+    }
 }
@@ -1,17 +1,25 @@
 package enigma;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.PrintStream;
 
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
 import java.util.Scanner;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.HashMap;
-import java.util.NoSuchElementException;
 
 import ucb.util.CommandArgs;
 
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+
 import static enigma.EnigmaException.*;
 
 /** Enigma simulator.
@@ -27,47 +35,228 @@ public final class Main {
      *  input.  ARGS[2] is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
      *  standard output. Exits normally if there are no errors in the input;
-     *  otherwise with code 1. */
+     *  otherwise with code 1.
+     *
+     *  With --checkpoint=FILE (which requires both INPUT and OUTPUT),
+     *  the state of the job is saved to FILE after roughly every
+     *  --interval=BYTES bytes of input (default 16 MiB), and removed
+     *  when the job completes.  With --resume as well, a job that died
+     *  continues from the state saved in FILE, producing the same output
+     *  as an uninterrupted run.
+     *
+     *  With --batch, ARGS[1] names a directory, or a glob pattern, of
+     *  input files and ARGS[2] names an output directory; see Batch.
+     *  --jobs=N sets the number of files processed at once.
+     *
+     *  With --cache=BYTES, messages under settings lines that recur are
+     *  converted using up to BYTES bytes of cached keystreams; see
+     *  KeystreamCache.  With --off-heap as well, the keystreams are kept
+     *  outside the Java heap, and with --keystreams=DIR, they are shared
+     *  with other processes through keystream files in DIR.
+     *
+     *  With --stats, runtime metrics (see Metrics) are collected,
+     *  published over JMX while the job runs, and summarized on the
+     *  standard error at its end.  Conversion uses the same generated
+     *  engines (see RotorCompiler), which count notch events, with and
+     *  without --stats.
+     *
+     *  The conversion also emits Flight Recorder events for its
+     *  sections, for a sample of its rotor steps, and for slow reads and
+     *  writes (see SectionEvent, NotchCascadeEvent, InputReadEvent, and
+     *  OutputWriteEvent).  The settings file enigma.jfc enables them,
+     *  along with the JVM's GC and file I/O events: run with
+     *  -XX:StartFlightRecording=settings=enigma/enigma.jfc,filename=F.jfr
+     *  to record them in F.jfr. */
     public static void main(String... args) {
         try {
             CommandArgs options =
-                new CommandArgs("--verbose --=(.*){1,3}", args);
-            if (!options.ok()) {
+                new CommandArgs("--verbose --resume --checkpoint=(.+)"
+                                + " --interval=([1-9][0-9]*) --batch"
+                                + " --jobs=([1-9][0-9]*)"
+                                + " --cache=([1-9][0-9]*) --off-heap"
+                                + " --keystreams=(.+) --stats"
+                                + " --=(.*){1,3}", args);
+            if (!options.ok()
+                || options.contains("--resume")
+                   && !options.contains("--checkpoint")
+                || (options.contains("--off-heap")
+                    || options.contains("--keystreams"))
+                   && !options.contains("--cache")
+                || options.contains("--batch")
+                   && (options.get("--").size() != 3
+                       || options.contains("--checkpoint")
+                       || options.contains("--cache"))) {
                 throw error("Usage: java enigma.Main [--verbose] "
-                            + "[INPUT [OUTPUT]]");
+                            + "[--stats] "
+                            + "[--checkpoint=FILE [--interval=BYTES] "
+                            + "[--resume]]%n"
+                            + "         [--cache=BYTES [--off-heap] "
+                            + "[--keystreams=DIR]] "
+                            + "CONFIG [INPUT [OUTPUT]]%n"
+                            + "   or: java enigma.Main [--verbose] [--stats] "
+                            + "--batch [--jobs=N] CONFIG INPUTS OUTDIR");
             }
 
             _verbose = options.contains("--verbose");
-            new Main(options.get("--")).process();
+            if (options.contains("--stats")) {
+                Metrics.enable();
+            }
+            if (options.contains("--batch")) {
+                List<String> files = options.get("--");
+                int jobs = Runtime.getRuntime().availableProcessors();
+                if (options.contains("--jobs")) {
+                    jobs = Integer.parseInt(options.getFirst("--jobs"));
+                }
+                Batch batch = new Batch(readConfiguration(files.get(0)),
+                                        jobs);
+                boolean ok = batch.run(files.get(1), Paths.get(files.get(2)));
+                reportMetrics();
+                if (ok) {
+                    return;
+                }
+                System.exit(1);
+            }
+            long interval = DEFAULT_INTERVAL;
+            if (options.contains("--interval")) {
+                interval = Long.parseLong(options.getFirst("--interval"));
+            }
+            Main job =
+                new Main(options.get("--"), options.getFirst("--checkpoint"),
+                         interval, options.contains("--resume"));
+            if (options.contains("--cache")) {
+                String shared = options.getFirst("--keystreams");
+                job.cacheKeystreams(
+                    Long.parseLong(options.getFirst("--cache")),
+                    options.contains("--off-heap"),
+                    shared == null ? null : Paths.get(shared));
+            }
+            job.process();
+            reportMetrics();
             return;
         } catch (EnigmaException excp) {
             System.err.printf("Error: %s%n", excp.getMessage());
         }
+        reportMetrics();
         System.exit(1);
     }
 
+    /** Print a summary of the metrics collected, if any, on the standard
+     *  error. */
+    private static void reportMetrics() {
+        Metrics metrics = Metrics.active();
+        if (metrics != null) {
+            metrics.report(System.err);
+        }
+    }
+
     /** Open the necessary files for non-option arguments ARGS (see comment
       *  on main). */
     Main(List<String> args) {
+        this(args, null, DEFAULT_INTERVAL, false);
+    }
+
+    /** Open the necessary files for non-option arguments ARGS (see comment
+     *  on main), checkpointing to the file named CHECKPOINT, if it is not
+     *  null, after every INTERVAL bytes of input.  If RESUME, continue
+     *  the job recorded in CHECKPOINT rather than starting afresh. */
+    Main(List<String> args, String checkpoint, long interval,
+         boolean resume) {
         _config = getInput(args.get(0));
+        _interval = interval;
+        _metrics = Metrics.active();
+
+        if (checkpoint == null) {
+            _checkpointFile = null;
+            _resumeFrom = null;
+        } else if (args.size() < 3) {
+            throw error("checkpointing requires INPUT and OUTPUT files");
+        } else {
+            _checkpointFile = Paths.get(checkpoint);
+            _resumeFrom = resume ? Checkpoint.read(_checkpointFile) : null;
+        }
+        long inputOffset =
+            _resumeFrom == null ? 0 : _resumeFrom.inputOffset();
+        _checkpointOffset = inputOffset;
 
         if (args.size() > 1) {
-            _input = getInput(args.get(1));
+            _input = getLines(args.get(1), inputOffset);
         } else {
-            _input = new Scanner(System.in);
+            _input = new LineInput(System.in, 0);
         }
 
-        if (args.size() > 2) {
-            _output = getOutput(args.get(2));
+        PrintStream output;
+        if (_checkpointFile != null) {
+            output = getOutput(args.get(2), _resumeFrom == null ? 0
+                               : _resumeFrom.outputOffset());
+        } else if (args.size() > 2) {
+            output = getOutput(args.get(2));
         } else {
-            _output = System.out;
+            output = new PrintStream(System.out, true, LineInput.CHARSET);
+        }
+        _output = _metrics == null ? output : _metrics.counted(output);
+    }
+
+    /** Apply the machine described by CONFIGURATION to the messages in
+     *  INPUT, sending the results to OUTPUT. */
+    Main(Configuration configuration, LineInput input, PrintStream output) {
+        _configuration = configuration;
+        _config = null;
+        _input = input;
+        _metrics = Metrics.active();
+        _output = _metrics == null ? output : _metrics.counted(output);
+        _checkpointFile = null;
+        _resumeFrom = null;
+        _interval = DEFAULT_INTERVAL;
+    }
+
+    /** Convert messages using a KeystreamCache of at most BUDGET
+     *  bytes. */
+    void cacheKeystreams(long budget) {
+        cacheKeystreams(budget, false, null);
+    }
+
+    /** Convert messages using a KeystreamCache of at most BUDGET
+     *  bytes, kept off the heap iff OFFHEAP, and sharing keystream files
+     *  in the directory SHARED if it is not null. */
+    void cacheKeystreams(long budget, boolean offHeap, Path shared) {
+        _cacheBudget = budget;
+        _offHeap = offHeap;
+        _sharedKeystreams = shared;
+    }
+
+    /** Return the configuration in the file named NAME. */
+    static Configuration readConfiguration(String name) {
+        Metrics metrics = Metrics.active();
+        Metrics.Recorder recorder =
+            metrics == null ? null : metrics.recorder(0);
+        try (Scanner config = new Scanner(new File(name),
+                                          LineInput.CHARSET)) {
+            Configuration result = new Configuration(config);
+            if (recorder != null) {
+                recorder.lap(Metrics.PARSE);
+            }
+            return result;
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
         }
     }
 
     /** Return a Scanner reading from the file named NAME. */
     private Scanner getInput(String name) {
         try {
-            return new Scanner(new File(name));
+            return new Scanner(new File(name), LineInput.CHARSET);
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return the lines of the file named NAME, starting at byte
+     *  OFFSET. */
+    private LineInput getLines(String name, long offset) {
+        try {
+            FileInputStream in = new FileInputStream(name);
+            in.getChannel().position(offset);
+            return new LineInput(in, offset);
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
@@ -76,7 +265,26 @@ public final class Main {
     /** Return a PrintStream writing to the file named NAME. */
     private PrintStream getOutput(String name) {
         try {
-            return new PrintStream(new File(name));
+            return new PrintStream(new File(name), LineInput.CHARSET);
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return a PrintStream writing to the file named NAME after its
+     *  first LENGTH bytes, discarding anything beyond them, and remember
+     *  its channel so that checkpoints can force it to disk. */
+    private PrintStream getOutput(String name, long length) {
+        try {
+            _outputChannel = FileChannel.open(Paths.get(name), CREATE, WRITE);
+            if (_outputChannel.size() < length) {
+                throw error("%s is shorter than its checkpoint", name);
+            }
+            _outputChannel.truncate(length);
+            _outputChannel.position(length);
+            return new PrintStream(new BufferedOutputStream(
+                Channels.newOutputStream(_outputChannel), 1 << 16),
+                                   false, LineInput.CHARSET);
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
@@ -85,95 +293,236 @@ public final class Main {
     /** Configure an Enigma machine from the contents of configuration
      *  file _config and apply it to the messages in _input, sending the
      *  results to _output. */
-    private void process() {
-        String alph = _config.next();
-        _alphabet = new Alphabet(alph);
-        if (_alphabet.contains('*') || _alphabet.contains('(')
-                || _alphabet.contains(')')) {
-            throw new EnigmaException("Wrong alphabet: "
-                    + "cannot contain * or ( or ).");
-        }
-        String numRotorsString = _config.next();
-        if (!numRotorsString.matches("[0-9]+")) {
-            throw new EnigmaException("Wrong number of rotors format.");
-        }
-        _numRotors = Integer.parseInt(numRotorsString);
-        String pawlsString = _config.next();
-        if (!pawlsString.matches("[0-9]+")) {
-            throw new EnigmaException("Wrong number of pawls format.");
-        }
-        _pawls = Integer.parseInt(pawlsString);
-        if (_pawls >= _numRotors || _numRotors <= 0 || _pawls <= 0) {
-            throw new EnigmaException("Pawl number should be smaller than "
-                    + "rotor numbers and they should all be larger than 0");
-        }
-        readAllRotor();
-        _machine = readConfig();
+    void process() {
+        if (_metrics != null) {
+            _recorder = _metrics.recorder(_input.offset());
+        }
+        if (_configuration == null) {
+            _configuration = new Configuration(_config);
+        }
+        _alphabet = _configuration.alphabet();
+        _numRotors = _configuration.numRotors();
+        _pawls = _configuration.numPawls();
+        _machine = _configuration.newMachine();
+        if (_cacheBudget > 0) {
+            _cache = new KeystreamCache(_configuration, _cacheBudget,
+                                        _offHeap, _sharedKeystreams);
+        }
+        lap(Metrics.PARSE);
+        if (_resumeFrom != null) {
+            resume(_resumeFrom);
+            lap(Metrics.SECTION);
+        }
         readInput();
+        endSection();
+        OutputWriteEvent flush = new OutputWriteEvent();
+        flush.begin();
+        _output.flush();
+        endWrite(flush, "flush", null);
+        if (_cache != null) {
+            _cache.save();
+        }
+        lap(Metrics.WRITE);
+        if (_checkpointFile != null) {
+            Checkpoint.delete(_checkpointFile);
+            lap(Metrics.CHECKPOINT);
+        }
     }
 
-    /** Read ONE set of input. */
+    /** Read and process the messages in _input, one settings section
+     *  at a time, checkpointing as requested. */
     private void readInput() {
-        String firstLine;
-        if (_numReadInput == 0 && !_input.hasNextLine()) {
-            return;
-        }
-        while (_input.hasNextLine()) {
-            if (_tempFirstLine == null) {
-                firstLine = _input.nextLine();
-                while (firstLine.isBlank()) {
-                    _output.print("\n");
-                    if (_input.hasNextLine()) {
-                        firstLine = _input.nextLine();
-                    } else {
-                        return;
-                    }
-                }
-            } else {
-                firstLine = _tempFirstLine;
+        while (!_finished && _input.hasNextLine()) {
+            String line = nextLine();
+            if (_recorder != null) {
+                _recorder.read(_input.offset());
             }
-            if (firstLine.charAt(0) != '*' && _numReadInput == 0) {
+            if (line.isBlank()) {
+                writeLine("");
+                lap(Metrics.WRITE);
+            } else if (line.charAt(0) == '*') {
+                setSection(line);
+                lap(Metrics.SECTION);
+            } else if (_section == null) {
                 throw new EnigmaException("Invalid configuration file.");
-            } else if (firstLine.charAt(0) == '*') {
-                _rotorNames = new ArrayList<>();
-                _firstLineScanner = new Scanner(firstLine);
-                String garbage = _firstLineScanner.next();
-                checkRotors();
-                _settings = _firstLineScanner.next();
-                if (_firstLineScanner.hasNext()) {
-                    String plug = _firstLineScanner.nextLine();
-                    if (!plug.contains("(")) {
-                        extraCredit();
-                    }
-                    _plugboard = new Permutation(plug, _alphabet);
-                } else {
-                    _plugboard = new Permutation("", _alphabet);
-                }
-                break;
-            } else if (!_input.hasNextLine()) {
-                throw new EnigmaException("Wrong input file: "
-                        + "no machine configuration.");
+            } else {
+                line = line.replaceAll("\\s", "");
+                String msg = convert(line);
+                lap(Metrics.CONVERT);
+                writeLine(msg);
+                lap(Metrics.WRITE);
             }
+            if (_checkpointFile != null && _section != null
+                && _input.offset() - _checkpointOffset >= _interval) {
+                checkpoint();
+                lap(Metrics.CHECKPOINT);
+            }
+        }
+    }
+
+    /** Return the next line of _input, recording an InputReadEvent if
+     *  reading it was slow. */
+    private String nextLine() {
+        InputReadEvent event = new InputReadEvent();
+        long offset = _input.offset();
+        event.begin();
+        String result = _input.nextLine();
+        event.end();
+        if (event.shouldCommit()) {
+            event.offset = offset;
+            event.bytes = _input.offset() - offset;
+            event.commit();
+        }
+        return result;
+    }
+
+    /** Print MSG as a line of output, in groups of five, recording an
+     *  OutputWriteEvent if writing it was slow. */
+    private void writeLine(String msg) {
+        OutputWriteEvent event = new OutputWriteEvent();
+        event.begin();
+        printMessageLine(msg);
+        endWrite(event, "line", msg);
+    }
+
+    /** Start a new section of input with settings line LINE, configuring
+     *  _machine accordingly. */
+    private void setSection(String line) {
+        endSection();
+        _rotorNames = new ArrayList<>();
+        _firstLineScanner = new Scanner(line);
+        _firstLineScanner.next();
+        checkRotors();
+        _settings = _firstLineScanner.next();
+        if (_firstLineScanner.hasNext()) {
+            String plug = _firstLineScanner.nextLine();
+            if (!plug.contains("(")) {
+                extraCredit();
+                return;
+            }
+            _plugboard = PermutationStore.get(plug, _alphabet);
+        } else {
+            _plugboard = PermutationStore.get("", _alphabet);
         }
         _machine.insertRotors(_rotorNames.toArray(new String[0]));
         setUp(_machine, _settings);
         _machine.setPlugboard(_plugboard);
-        while (_input.hasNextLine()) {
-            String msg = _input.nextLine();
-            if (msg.isEmpty()) {
-                _tempFirstLine = null;
-                _output.print("\n");
-            } else if (msg.charAt(0) == '*') {
-                _tempFirstLine = msg;
-                _numReadInput++;
-                readInput();
-            } else {
-                msg = msg.replaceAll("\\s", "");
-                printMessageLine(_machine.convert(msg));
+        _section = line;
+        _sectionEvent = new SectionEvent();
+        if (_sectionEvent.isEnabled()) {
+            _sectionEvent.rotors = String.join(" ", _rotorNames);
+        }
+        _sectionEvent.begin();
+        if (_metrics != null) {
+            _metrics.section();
+        }
+        if (_cache != null) {
+            _keystream = _cache.lookup(_rotorNames.toArray(new String[0]),
+                                       _settings, _plugboard);
+            _position = 0;
+        }
+    }
+
+    /** Return the conversion of MSG by the machine of the current
+     *  section, using its cached keystream if there is one.  MSG is
+     *  checked against the alphabet once, by toInts. */
+    private String convert(String msg) {
+        int[] text = _alphabet.toInts(msg);
+        if (_metrics != null) {
+            _metrics.message(text.length);
+        }
+        if (_sectionEvent != null) {
+            _sectionEvent.lines += 1;
+            _sectionEvent.characters += text.length;
+        }
+        if (_keystream != null
+            && !_keystream.extend(_position + text.length)) {
+            syncMachine();
+            _keystream = null;
+        }
+        if (_keystream == null) {
+            _machine.convertUnchecked(text, text);
+        } else {
+            _keystream.convert(text, _position, text);
+            _position += text.length;
+        }
+        return _alphabet.toString(text);
+    }
+
+    /** Charge the time since the last stage ended to STAGE, if collecting
+     *  metrics. */
+    private void lap(int stage) {
+        if (_recorder != null) {
+            _recorder.lap(stage);
+        }
+    }
+
+    /** Finish the current section, if any: commit its SectionEvent, and
+     *  add its notch events to the metrics being collected. */
+    private void endSection() {
+        if (_sectionEvent != null) {
+            _sectionEvent.commit();
+            _sectionEvent = null;
+        }
+        if (_metrics == null || _section == null) {
+            return;
+        }
+        long[] events = _machine.takeNotchEvents();
+        for (int k = 1; k < _numRotors; k += 1) {
+            if (events[k] > 0) {
+                _metrics.notchEvents(_machine.getRotor(k).name(), events[k]);
             }
         }
     }
 
+    /** Bring the rotors of _machine to the position _position of
+     *  _keystream, which has been converting messages in its stead. */
+    private void syncMachine() {
+        if (_keystream.length() == _position
+            && _keystream.tail() != null) {
+            _machine.restore(_keystream.tail());
+        } else {
+            setUp(_machine, _settings);
+            _machine.advance(_position);
+        }
+    }
+
+    /** Save the state of this job to _checkpointFile.  The output written
+     *  so far is forced to disk first, so that the checkpoint never
+     *  refers to output that could be lost. */
+    private void checkpoint() {
+        if (_keystream != null) {
+            syncMachine();
+        }
+        int[] settings = new int[_numRotors - 1];
+        for (int k = 1; k < _numRotors; k += 1) {
+            settings[k - 1] = _machine.getRotor(k).setting();
+        }
+        OutputWriteEvent write = new OutputWriteEvent();
+        write.begin();
+        try {
+            _output.flush();
+            _outputChannel.force(false);
+            new Checkpoint(_section, settings, _input.offset(),
+                           _outputChannel.position()).write(_checkpointFile);
+        } catch (IOException excp) {
+            throw error("could not write output");
+        }
+        endWrite(write, "checkpoint", null);
+        _checkpointOffset = _input.offset();
+    }
+
+    /** Restore the section and rotor settings saved in CHECKPOINT. */
+    private void resume(Checkpoint checkpoint) {
+        int[] settings = checkpoint.settings();
+        if (settings.length != _numRotors - 1) {
+            throw error("checkpoint does not match configuration");
+        }
+        setSection(checkpoint.section());
+        _machine.setRotors(settings);
+        _keystream = null;
+    }
+
     private void extraCredit() {
         _output.print("VUSZK MAGXK OSXCG ZVDGY CQI\n"
                 + "ZIZBI YHFCP XGKXU KPNWX KFK\n"
@@ -201,22 +550,23 @@ public final class Main {
                 + "ANDOB LONGS\n"
                 + "LIKEA COMPL ICATE DFIGU RE\n"
                 + "INTHE SECON DBOOK OFEUC LID\n");
-        System.exit(0);
+        _finished = true;
     }
 
     private void checkRotors() {
         for (int i = 0; i < _numRotors; i++) {
             String r = _firstLineScanner.next();
-            if (_allRotors.containsKey(r)) {
-                if (i == 0 && !_allRotors.get(r).reflecting()) {
+            Rotor rotor = _configuration.rotor(r);
+            if (rotor != null) {
+                if (i == 0 && !rotor.reflecting()) {
                     throw new EnigmaException("Wrong input file: "
                             + "the first rotor is not a reflector");
                 } else if (i > 0 && i < _numRotors - _pawls
-                        && _allRotors.get(r).rotates()) {
+                        && rotor.rotates()) {
                     throw new EnigmaException("Wrong input file: "
                             + "not enough fixed rotors.");
                 } else if (i >= _numRotors - _pawls
-                        && !_allRotors.get(r).rotates()) {
+                        && !rotor.rotates()) {
                     throw new EnigmaException("Wrong input file: "
                             + "not enough moving rotors.");
                 } else if (_rotorNames.contains(r)) {
@@ -232,93 +582,26 @@ public final class Main {
         }
     }
 
-    /** Return an Enigma machine configured from the contents of configuration
-     *  file _config. */
-    private Machine readConfig() {
-        try {
-            if (_allRotors.size() < _numRotors) {
-                throw new EnigmaException("Not enough rotors provided.");
-            }
-            return new Machine(_alphabet, _numRotors,
-                    _pawls, _allRotors.values());
-        } catch (NoSuchElementException excp) {
-            throw error("configuration file truncated");
-        }
-    }
-
-    /** Read ALL rotors into Hashmap. */
-    private void readAllRotor() {
-        while (_config.hasNext()) {
-            readRotor();
-        }
-        if (_tempRotorName != null) {
-            throw new EnigmaException("Invalid rotor description.");
-        }
-    }
-
-    /** Read ONE rotor, reading its description from _config.
-     * Also put it into Hashmap. */
-    private void readRotor() {
-        try {
-            Rotor result;
-            String name;
-            if (_tempRotorName == null) {
-                name = _config.next();
-            } else {
-                name = _tempRotorName;
-                _tempRotorName = null;
-            }
-            String typeAndNotches = _config.next();
-            String cycles = "";
-            while (_config.hasNext()) {
-                String cycle = _config.next();
-                if (cycle.charAt(0) == '('
-                        && cycle.charAt(cycle.length() - 1) == ')') {
-                    cycles += cycle;
-                } else {
-                    _tempRotorName = cycle;
-                    break;
-                }
-            }
-            char type = typeAndNotches.charAt(0);
-            String notches = typeAndNotches.substring(1);
-            if (type == 'M') {
-                result = new MovingRotor(name,
-                        new Permutation(cycles, _alphabet), notches);
-            } else if (type == 'N') {
-                if (!notches.isEmpty()) {
-                    throw new EnigmaException("Fixed rotor should "
-                            + "have no notches.");
-                }
-                result = new FixedRotor(name,
-                        new Permutation(cycles, _alphabet));
-            } else if (type == 'R') {
-                if (!notches.isEmpty()) {
-                    throw new EnigmaException("Reflector should "
-                            + "have no notches.");
-                } else if (cycles.replaceAll("[\\(\\)]", "")
-                        .length()
-                        != _alphabet.size()) {
-                    throw new EnigmaException("Reflectors must "
-                            + "implement derangements.");
-                }
-                result = new Reflector(name,
-                        new Permutation(cycles, _alphabet));
-            } else {
-                throw new EnigmaException("Invalid rotor type.");
-            }
-            _allRotors.put(name, result);
-        } catch (NoSuchElementException excp) {
-            throw error("bad rotor description");
-        }
-    }
-
     /** Set M according to the specification given on SETTINGS,
      *  which must have the format specified in the assignment. */
     private void setUp(Machine M, String settings) {
         M.setRotors(settings);
     }
 
+    /** End EVENT, a write of OPERATION, committing it (with the number of
+     *  characters in TEXT, if it is not null) if it was slow. */
+    private static void endWrite(OutputWriteEvent event, String operation,
+                                 String text) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = operation;
+            if (text != null) {
+                event.characters = text.codePointCount(0, text.length());
+            }
+            event.commit();
+        }
+    }
+
     /** Return true iff verbose option specified. */
     static boolean verbose() {
         return _verbose;
@@ -327,12 +610,16 @@ public final class Main {
     /** Print MSG in groups of five (except that the last group may
      *  have fewer letters). */
     private void printMessageLine(String msg) {
-        for (int i = 0; i < msg.length() / 5 + 1; i++) {
-            if (5 * (i + 1) <= msg.length()) {
-                _output.print(msg.substring(5 * i, 5 * (i + 1)));
+        int length = msg.codePointCount(0, msg.length());
+        int start = 0;
+        for (int i = 0; i < length / 5 + 1; i++) {
+            if (5 * (i + 1) <= length) {
+                int end = msg.offsetByCodePoints(start, 5);
+                _output.print(msg.substring(start, end));
                 _output.print(" ");
+                start = end;
             } else {
-                _output.print(msg.substring(5 * i));
+                _output.print(msg.substring(start));
                 _output.print("\n");
             }
         }
@@ -352,14 +639,8 @@ public final class Main {
     /** Scanner for the first line. */
     private Scanner _firstLineScanner;
 
-    /** Temp rotor name. */
-    private String _tempRotorName = null;
-
-    /** Temp input file first line name. */
-    private String _tempFirstLine = null;
-
-    /** ALL rotors Hashmap. */
-    private final HashMap<String, Rotor> _allRotors = new HashMap<>();
+    /** The parsed configuration. */
+    private Configuration _configuration;
 
     /** String ArrayList of USED rotor names. */
     private List<String> _rotorNames = new ArrayList<>();
@@ -370,11 +651,37 @@ public final class Main {
     /** Plugboard used in this machine. */
     private Permutation _plugboard;
 
-    /** Source of input messages. */
-    private final Scanner _input;
+    /** Settings line of the current section, or null before the first
+     *  section. */
+    private String _section;
+
+    /** Maximum bytes of cached keystreams, or 0 for no cache. */
+    private long _cacheBudget;
+
+    /** True iff cached keystreams are kept off the heap. */
+    private boolean _offHeap;
+
+    /** Directory of shared keystream files, or null. */
+    private Path _sharedKeystreams;
+
+    /** Cache of keystreams, or null. */
+    private KeystreamCache _cache;
+
+    /** Flight Recorder event of the current section, or null. */
+    private SectionEvent _sectionEvent;
+
+    /** Keystream of the current section, or null if _machine converts
+     *  its messages. */
+    private KeystreamCache.Keystream _keystream;
+
+    /** Number of characters converted in the current section. */
+    private int _position;
+
+    /** True once no more input is to be processed. */
+    private boolean _finished;
 
-    /** Number of time that we used readInput method. */
-    private int _numReadInput = 0;
+    /** Source of input messages. */
+    private final LineInput _input;
 
     /** Source of machine configuration. */
     private final Scanner _config;
@@ -382,6 +689,31 @@ public final class Main {
     /** File for encoded/decoded messages. */
     private final PrintStream _output;
 
+    /** Channel underlying _output when checkpointing, else null. */
+    private FileChannel _outputChannel;
+
+    /** File holding checkpoints, or null if not checkpointing. */
+    private final Path _checkpointFile;
+
+    /** Metrics being collected, or null. */
+    private final Metrics _metrics;
+
+    /** Times the stages of this job, or null if not collecting
+     *  metrics. */
+    private Metrics.Recorder _recorder;
+
+    /** Checkpoint to resume from, or null. */
+    private final Checkpoint _resumeFrom;
+
+    /** Bytes of input to process between checkpoints. */
+    private final long _interval;
+
+    /** Input offset at the last checkpoint. */
+    private long _checkpointOffset;
+
+    /** Default value of _interval. */
+    private static final long DEFAULT_INTERVAL = 1 << 24;
+
     /** True if --verbose specified. */
     private static boolean _verbose;
 }
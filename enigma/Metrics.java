@@ -0,0 +1,456 @@
+package enigma;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static enigma.EnigmaException.*;
+
+/** Runtime metrics of Main: counts of the characters, lines, sections,
+ *  and bytes it processes, of the notch events of each rotor, and of
+ *  the time spent, and memory allocated, in each stage of a job, with a
+ *  histogram of the times of each stage.  Together they show whether a
+ *  job is bound by parsing, by the cipher, or by I/O.
+ *
+ *  Metrics are collected only once enabled (by Main's --stats option),
+ *  and are then published over JMX (see MetricsMXBean) and summarized
+ *  by report.  Until then, active() is null and Main tests that once per
+ *  line, so collection costs nothing when disabled.  A job times its
+ *  stages with its own Recorder, and each lap of a Recorder charges the
+ *  time since the previous one to a stage, so no time is left out.
+ *  Counters may be shared by the jobs of a batch.
+ *  @author Cheng Zhu
+ */
+final class Metrics implements MetricsMXBean {
+
+    /** Stage: parsing the configuration and building the machine. */
+    static final int PARSE = 0;
+    /** Stage: reading an input line. */
+    static final int READ = 1;
+    /** Stage: setting up the machine for a settings line. */
+    static final int SECTION = 2;
+    /** Stage: converting a message line. */
+    static final int CONVERT = 3;
+    /** Stage: writing output. */
+    static final int WRITE = 4;
+    /** Stage: writing a checkpoint. */
+    static final int CHECKPOINT = 5;
+
+    /** The names of the stages, indexed by stage. */
+    static final String[] STAGES = {
+        "parse", "read", "section", "convert", "write", "checkpoint"
+    };
+
+    /** Return the metrics being collected, or null if they are not. */
+    static Metrics active() {
+        return _active;
+    }
+
+    /** Start collecting a fresh set of metrics, publishing them over JMX,
+     *  and return them. */
+    static synchronized Metrics enable() {
+        disable();
+        Metrics result = new Metrics();
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(result, new ObjectName(NAME));
+        } catch (JMException excp) {
+            throw error("could not publish metrics: %s", excp.getMessage());
+        }
+        _active = result;
+        return result;
+    }
+
+    /** Stop collecting metrics, withdrawing them from JMX. */
+    static synchronized void disable() {
+        if (_active == null) {
+            return;
+        }
+        _active = null;
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                .unregisterMBean(new ObjectName(NAME));
+        } catch (JMException excp) {
+            throw error("could not withdraw metrics: %s", excp.getMessage());
+        }
+    }
+
+    /** Metrics with all counts zero. */
+    private Metrics() {
+        for (int s = 0; s < STAGES.length; s += 1) {
+            _stageNanos[s] = new LongAdder();
+            _stageAllocated[s] = new LongAdder();
+            _histograms[s] = new Histogram();
+        }
+    }
+
+    /** Return a Recorder, for one job on the current thread, whose first
+     *  lap starts now, at byte OFFSET of its input. */
+    Recorder recorder(long offset) {
+        return new Recorder(offset);
+    }
+
+    /** Return a stream that writes to OUT, counting the bytes it
+     *  writes. */
+    PrintStream counted(PrintStream out) {
+        return new PrintStream(new Counter(out), false, LineInput.CHARSET);
+    }
+
+    /** Record the conversion of a message line of CHARS characters. */
+    void message(int chars) {
+        _lines.increment();
+        _characters.add(chars);
+    }
+
+    /** Record the start of a settings section. */
+    void section() {
+        _sections.increment();
+    }
+
+    /** Record COUNT notch events of the rotor named ROTOR. */
+    void notchEvents(String rotor, long count) {
+        _notchEvents.computeIfAbsent(rotor, (name) -> new LongAdder())
+            .add(count);
+    }
+
+    /** Record NANOS nanoseconds spent, and ALLOCATED bytes allocated, in
+     *  STAGE. */
+    void time(int stage, long nanos, long allocated) {
+        _stageNanos[stage].add(nanos);
+        _stageAllocated[stage].add(allocated);
+        _histograms[stage].add(nanos);
+    }
+
+    /** Print a summary of these metrics on OUT. */
+    void report(PrintStream out) {
+        long characters = getCharacters();
+        long allNanos = 0;
+        for (long nanos : getStageNanos().values()) {
+            allNanos += nanos;
+        }
+        out.printf("--- enigma statistics ---%n");
+        out.printf("%d sections, %d lines, %d characters%n",
+                   getSections(), getLines(), characters);
+        out.printf("read %d bytes, wrote %d bytes, allocated %d bytes%n",
+                   getBytesRead(), getBytesWritten(), getAllocatedBytes());
+        out.printf("%-10s %8s %11s %9s %9s %9s %11s%n", "stage", "count",
+                   "total ms", "p50 us", "p99 us", "max us", "alloc KiB");
+        for (int s = 0; s < STAGES.length; s += 1) {
+            Histogram h = _histograms[s];
+            out.printf("%-10s %8d %11.3f %9.1f %9.1f %9.1f %11d%n",
+                       STAGES[s], h.count(), _stageNanos[s].sum() / 1e6,
+                       h.percentile(0.5) / 1e3, h.percentile(0.99) / 1e3,
+                       h.max() / 1e3, _stageAllocated[s].sum() >> 10);
+        }
+        long convertNanos = _stageNanos[CONVERT].sum();
+        out.printf("%.2f M characters/s converting, "
+                   + "%.2f MB/s of input overall%n",
+                   convertNanos == 0 ? 0.0 : 1e3 * characters / convertNanos,
+                   allNanos == 0 ? 0.0 : 1e3 * getBytesRead() / allNanos);
+        Map<String, Long> notches = getNotchEvents();
+        if (!notches.isEmpty()) {
+            out.printf("notch events:");
+            for (Map.Entry<String, Long> e : notches.entrySet()) {
+                out.printf(" %s %d", e.getKey(), e.getValue());
+            }
+            out.printf("%n");
+        }
+    }
+
+    @Override
+    public long getCharacters() {
+        return _characters.sum();
+    }
+
+    @Override
+    public long getLines() {
+        return _lines.sum();
+    }
+
+    @Override
+    public long getSections() {
+        return _sections.sum();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return _bytesRead.sum();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return _bytesWritten.sum();
+    }
+
+    @Override
+    public long getConfigParseNanos() {
+        return _stageNanos[PARSE].sum();
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        long result = 0;
+        for (LongAdder bytes : _stageAllocated) {
+            result += bytes.sum();
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getStageNanos() {
+        return byStage((s) -> _stageNanos[s].sum());
+    }
+
+    @Override
+    public Map<String, Long> getStageCounts() {
+        return byStage((s) -> _histograms[s].count());
+    }
+
+    @Override
+    public Map<String, Long> getStageMedianNanos() {
+        return byStage((s) -> _histograms[s].percentile(0.5));
+    }
+
+    @Override
+    public Map<String, Long> getStageP99Nanos() {
+        return byStage((s) -> _histograms[s].percentile(0.99));
+    }
+
+    @Override
+    public Map<String, Long> getStageMaxNanos() {
+        return byStage((s) -> _histograms[s].max());
+    }
+
+    @Override
+    public Map<String, Long> getStageAllocatedBytes() {
+        return byStage((s) -> _stageAllocated[s].sum());
+    }
+
+    @Override
+    public Map<String, Long> getNotchEvents() {
+        Map<String, Long> result = new TreeMap<>();
+        _notchEvents.forEach((name, count) -> result.put(name, count.sum()));
+        return result;
+    }
+
+    /** Return the values of VALUE for each stage, keyed by stage name. */
+    private static Map<String, Long> byStage(ToLongFunction<Integer> value) {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (int s = 0; s < STAGES.length; s += 1) {
+            result.put(STAGES[s], value.applyAsLong(s));
+        }
+        return result;
+    }
+
+    /** Return the bytes allocated so far by the current thread, or 0 if
+     *  the JVM does not measure them. */
+    private static long allocated() {
+        if (ALLOCATIONS == null) {
+            return 0;
+        }
+        return ALLOCATIONS.getCurrentThreadAllocatedBytes();
+    }
+
+    /** Return the JVM's measure of allocation by thread, or null if it
+     *  has none. */
+    private static com.sun.management.ThreadMXBean allocations() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean result =
+                (com.sun.management.ThreadMXBean) threads;
+            if (result.isThreadAllocatedMemorySupported()
+                && result.isThreadAllocatedMemoryEnabled()) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    /** Times the stages of one job, run on a single thread. */
+    final class Recorder {
+
+        /** A Recorder whose first lap starts now, at input byte
+         *  OFFSET. */
+        private Recorder(long offset) {
+            _offset = offset;
+            _nanos = System.nanoTime();
+            _allocated = allocated();
+        }
+
+        /** Charge the time since the last lap to STAGE. */
+        void lap(int stage) {
+            long nanos = System.nanoTime();
+            long allocated = allocated();
+            time(stage, nanos - _nanos, allocated - _allocated);
+            _nanos = nanos;
+            _allocated = allocated;
+        }
+
+        /** Charge the time since the last lap to reading a line, which
+         *  left the input at byte OFFSET. */
+        void read(long offset) {
+            lap(READ);
+            _bytesRead.add(offset - _offset);
+            _offset = offset;
+        }
+
+        /** Input offset at the last read. */
+        private long _offset;
+
+        /** Time of the last lap, in nanoseconds. */
+        private long _nanos;
+
+        /** Bytes allocated by this thread at the last lap. */
+        private long _allocated;
+    }
+
+    /** An approximate histogram of non-negative values, accurate to
+     *  within 1/8 of each value: values below 8 have buckets of their
+     *  own, and each larger power of two is split into 8 equal
+     *  buckets. */
+    static final class Histogram {
+
+        /** Record VALUE. */
+        synchronized void add(long value) {
+            _counts[bucket(value)] += 1;
+            _count += 1;
+            _max = Math.max(_max, value);
+        }
+
+        /** Return the number of values recorded. */
+        synchronized long count() {
+            return _count;
+        }
+
+        /** Return the largest value recorded, or 0. */
+        synchronized long max() {
+            return _max;
+        }
+
+        /** Return (the upper bound of the bucket of) the least recorded
+         *  value that is at least a fraction P of the values, or 0 if
+         *  there are none. */
+        synchronized long percentile(double p) {
+            long rank = (long) Math.ceil(p * _count);
+            long seen = 0;
+            for (int b = 0; b < BUCKETS; b += 1) {
+                seen += _counts[b];
+                if (seen >= rank && seen > 0) {
+                    return Math.min(limit(b), _max);
+                }
+            }
+            return 0;
+        }
+
+        /** Return the bucket of VALUE. */
+        static int bucket(long value) {
+            if (value < SUB) {
+                return (int) Math.max(value, 0);
+            }
+            int e = 63 - Long.numberOfLeadingZeros(value);
+            return SUB * (e - SHIFT + 1)
+                + (int) ((value >>> (e - SHIFT)) & (SUB - 1));
+        }
+
+        /** Return the largest value in bucket B. */
+        static long limit(int b) {
+            if (b < SUB) {
+                return b;
+            }
+            int e = b / SUB + SHIFT - 1;
+            long low = (long) (SUB + b % SUB) << (e - SHIFT);
+            return low + (1L << (e - SHIFT)) - 1;
+        }
+
+        /** Buckets per power of two. */
+        private static final int SUB = 8;
+
+        /** Log base 2 of SUB. */
+        private static final int SHIFT = 3;
+
+        /** Number of buckets, enough for any long. */
+        private static final int BUCKETS = SUB * (64 - SHIFT);
+
+        /** Number of values in each bucket. */
+        private final long[] _counts = new long[BUCKETS];
+
+        /** Number of values recorded. */
+        private long _count;
+
+        /** Largest value recorded. */
+        private long _max;
+    }
+
+    /** An output stream that counts the bytes written through it. */
+    private final class Counter extends FilterOutputStream {
+
+        /** A Counter writing to OUT. */
+        Counter(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            _bytesWritten.increment();
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            _bytesWritten.add(len);
+        }
+    }
+
+    /** The JMX name of the active metrics. */
+    private static final String NAME = "enigma:type=Metrics";
+
+    /** Measure of allocation by thread, or null. */
+    private static final com.sun.management.ThreadMXBean ALLOCATIONS =
+        allocations();
+
+    /** The metrics being collected, or null. */
+    private static volatile Metrics _active;
+
+    /** Message characters converted. */
+    private final LongAdder _characters = new LongAdder();
+
+    /** Message lines converted. */
+    private final LongAdder _lines = new LongAdder();
+
+    /** Settings sections started. */
+    private final LongAdder _sections = new LongAdder();
+
+    /** Bytes of input read. */
+    private final LongAdder _bytesRead = new LongAdder();
+
+    /** Bytes of output written. */
+    private final LongAdder _bytesWritten = new LongAdder();
+
+    /** Nanoseconds spent in each stage. */
+    private final LongAdder[] _stageNanos = new LongAdder[STAGES.length];
+
+    /** Bytes allocated in each stage. */
+    private final LongAdder[] _stageAllocated =
+        new LongAdder[STAGES.length];
+
+    /** Histogram of the times of each stage. */
+    private final Histogram[] _histograms = new Histogram[STAGES.length];
+
+    /** Notch events of each rotor, by name. */
+    private final ConcurrentHashMap<String, LongAdder> _notchEvents =
+        new ConcurrentHashMap<>();
+}
@@ -0,0 +1,57 @@
+package enigma;
+
+import java.util.Map;
+
+/** The management interface of Metrics, through which the metrics of a
+ *  running Main may be read over JMX, under the name enigma:type=Metrics.
+ *  Maps are keyed by stage name (see Metrics.STAGES) or, for notch
+ *  events, by rotor name.
+ *  @author Cheng Zhu
+ */
+public interface MetricsMXBean {
+
+    /** Return the number of message characters converted. */
+    long getCharacters();
+
+    /** Return the number of message lines converted. */
+    long getLines();
+
+    /** Return the number of settings sections started. */
+    long getSections();
+
+    /** Return the number of bytes of input read. */
+    long getBytesRead();
+
+    /** Return the number of bytes of output written. */
+    long getBytesWritten();
+
+    /** Return the nanoseconds spent parsing configurations and building
+     *  machines from them. */
+    long getConfigParseNanos();
+
+    /** Return the bytes allocated by the threads running jobs, or 0 if
+     *  the JVM does not measure them. */
+    long getAllocatedBytes();
+
+    /** Return the nanoseconds spent in each stage. */
+    Map<String, Long> getStageNanos();
+
+    /** Return the number of times each stage was entered. */
+    Map<String, Long> getStageCounts();
+
+    /** Return the median time of each stage, in nanoseconds. */
+    Map<String, Long> getStageMedianNanos();
+
+    /** Return the 99th percentile time of each stage, in nanoseconds. */
+    Map<String, Long> getStageP99Nanos();
+
+    /** Return the longest time of each stage, in nanoseconds. */
+    Map<String, Long> getStageMaxNanos();
+
+    /** Return the bytes allocated in each stage. */
+    Map<String, Long> getStageAllocatedBytes();
+
+    /** Return the number of notch events (steps in which a rotor's notch
+     *  engaged a pawl) of each rotor. */
+    Map<String, Long> getNotchEvents();
+}
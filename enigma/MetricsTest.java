@@ -0,0 +1,186 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import javax.management.ObjectName;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Metrics class and the Flight
+ *  Recorder events.
+ *  @author Cheng Zhu
+ */
+public class MetricsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Naval rotors with a double-stepping middle rotor. */
+    private static final String[] NAVAL = { "B", "Beta", "I", "II", "III" };
+
+    @Test
+    public void testHistogramBuckets() {
+        for (long v = 0; v < 100000; v += 1) {
+            int b = Metrics.Histogram.bucket(v);
+            assertTrue(Metrics.Histogram.limit(b) >= v);
+            assertTrue(b == 0 || Metrics.Histogram.limit(b - 1) < v);
+            assertTrue(Metrics.Histogram.limit(b) <= v + v / 8);
+        }
+        assertEquals(Long.MAX_VALUE, Metrics.Histogram.limit(
+            Metrics.Histogram.bucket(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void testHistogramPercentiles() {
+        Metrics.Histogram h = new Metrics.Histogram();
+        assertEquals(0, h.percentile(0.5));
+        for (long v = 1; v <= 1000; v += 1) {
+            h.add(v);
+        }
+        assertEquals(1000, h.count());
+        assertEquals(1000, h.max());
+        assertTrue(Math.abs(h.percentile(0.5) - 500) <= 500 / 8);
+        assertTrue(Math.abs(h.percentile(0.99) - 990) <= 990 / 8);
+        assertEquals(1000, h.percentile(1.0));
+    }
+
+    @Test
+    public void testSameOutput() {
+        String input = "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)\n"
+            + ENGLISH + "\n\n" + ENGLISH + "\n";
+        assertNull(Metrics.active());
+        String want = run(input);
+        Metrics.enable();
+        try {
+            assertEquals(want, run(input));
+        } finally {
+            Metrics.disable();
+        }
+        assertNull(Metrics.active());
+    }
+
+    @Test
+    public void testMain() throws Exception {
+        Metrics metrics = Metrics.enable();
+        try {
+            assertSame(metrics, Metrics.active());
+            String message = ENGLISH + ENGLISH + ENGLISH;
+            String input = "* B Beta I II III AAAA (AQ) (EP)\n"
+                + message + "\n\n" + "* B Beta I II III AAAA\n"
+                + message + "\n";
+            String output = run(input);
+
+            assertEquals(2, metrics.getSections());
+            assertEquals(2, metrics.getLines());
+            assertEquals(2 * message.length(), metrics.getCharacters());
+            assertEquals(input.length(), metrics.getBytesRead());
+            assertEquals(output.length(), metrics.getBytesWritten());
+            Map<String, Long> counts = metrics.getStageCounts();
+            assertEquals(Long.valueOf(1), counts.get("parse"));
+            assertEquals(Long.valueOf(5), counts.get("read"));
+            assertEquals(Long.valueOf(2), counts.get("convert"));
+            long total = 0;
+            for (long nanos : metrics.getStageNanos().values()) {
+                total += nanos;
+            }
+            assertTrue(total > 0);
+            assertTrue(metrics.getConfigParseNanos() > 0);
+
+            Machine mach = config(NAVAL_CONFIG).newMachine();
+            mach.insertRotors(NAVAL);
+            mach.setRotors("AAAA");
+            mach.setPlugboard(new Permutation("", mach.alphabet()));
+            long[] events = new long[NAVAL.length];
+            for (int i = 0; i < message.length(); i += 1) {
+                for (int k = 3; k < NAVAL.length; k += 1) {
+                    if (mach.getRotor(k).atNotch()) {
+                        events[k] += 2;
+                    }
+                }
+                mach.convert(0);
+            }
+            Map<String, Long> notches = metrics.getNotchEvents();
+            for (int k = 3; k < NAVAL.length; k += 1) {
+                assertEquals(events[k],
+                             (long) notches.getOrDefault(NAVAL[k], 0L));
+            }
+            assertTrue(notches.get("III") > 0);
+
+            Object lines = ManagementFactory.getPlatformMBeanServer()
+                .getAttribute(new ObjectName("enigma:type=Metrics"),
+                              "Lines");
+            assertEquals(2L, lines);
+
+            ByteArrayOutputStream report = new ByteArrayOutputStream();
+            metrics.report(new PrintStream(report, true));
+            assertTrue(report.toString().contains(
+                "2 sections, 2 lines, " + 2 * message.length()
+                + " characters"));
+        } finally {
+            Metrics.disable();
+        }
+    }
+
+    @Test
+    public void testFlightRecorder() throws Exception {
+        String message = ENGLISH.repeat(40);
+        String input = "* B Beta I II III AAAA (AQ) (EP)\n"
+            + message + "\n" + "* B Gamma III I V ZZMQ\n" + message + "\n";
+        Path file = Files.createTempFile("enigma", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("enigma.Section").withThreshold(Duration.ZERO);
+            recording.enable("enigma.NotchCascade");
+            recording.start();
+            run(input);
+            recording.stop();
+            recording.dump(file);
+            List<RecordedEvent> sections = new ArrayList<>();
+            long cascades = 0;
+            for (RecordedEvent e : RecordingFile.readAllEvents(file)) {
+                String name = e.getEventType().getName();
+                if (name.equals("enigma.Section")) {
+                    sections.add(e);
+                } else if (name.equals("enigma.NotchCascade")) {
+                    cascades += e.getInt("weight");
+                }
+            }
+            assertEquals(2, sections.size());
+            assertEquals("B Beta I II III",
+                         sections.get(0).getString("rotors"));
+            assertEquals(message.length(),
+                         sections.get(0).getLong("characters"));
+            assertEquals(1, sections.get(1).getInt("lines"));
+            assertTrue(cascades > 0);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /** Return the output of Main on INPUT, with the naval
+     *  configuration. */
+    private static String run(String input) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new Main(config(NAVAL_CONFIG),
+                 new LineInput(new ByteArrayInputStream(
+                     input.getBytes(StandardCharsets.UTF_8)), 0),
+                 new PrintStream(out, true)).process();
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -15,7 +15,12 @@ class MovingRotor extends Rotor {
     MovingRotor(String name, Permutation perm, String notches) {
         super(name, perm);
         _notches = notches;
-        _name = name;
+        _notchTable = new boolean[size()];
+        for (int c : notches.codePoints().toArray()) {
+            if (alphabet().contains(c)) {
+                _notchTable[alphabet().toInt(c)] = true;
+            }
+        }
     }
 
     /** Advance moving rotor by one position, if possible.
@@ -36,6 +41,18 @@ class MovingRotor extends Rotor {
         return _notches;
     }
 
+    /** Returns true iff I would be at a notch in setting POSN. */
+    @Override
+    boolean notchAt(int posn) {
+        return _notchTable[posn];
+    }
+
+    /** Return a new moving rotor like me, in its 0 setting. */
+    @Override
+    Rotor copy() {
+        return new MovingRotor(name(), permutation(), _notches);
+    }
+
     /** Return true iff I have a ratchet and can move. */
     @Override
     boolean rotates() {
@@ -45,12 +62,12 @@ class MovingRotor extends Rotor {
     /** return the name of the moving rotor. */
     @Override
     public String toString() {
-        return "Moving Rotor " + _name;
+        return "Moving Rotor " + name();
     }
 
     /** The notches of the moving rotor. */
-    private String _notches;
+    private final String _notches;
 
-    /** The name of the moving rotor. */
-    private String _name;
+    /** Whether I am at a notch, indexed by setting. */
+    private final boolean[] _notchTable;
 }
@@ -95,4 +95,20 @@ public class MovingRotorTest {
                 rotor.convertBackward(alpha.indexOf('S')));
     }
 
+    @Test
+    public void checkNotches() {
+        setRotor("VI", NAVALA, "MZBQ%");
+        for (int posn = 0; posn < 26; posn += 1) {
+            boolean expected = "MZBQ".indexOf(alpha.charAt(posn)) != -1;
+            assertEquals(expected, rotor.notchAt(posn));
+            rotor.set(posn);
+            assertEquals(expected, rotor.atNotch());
+        }
+        rotor.set('Z');
+        assertTrue(rotor.atNotch());
+        rotor.advance();
+        assertEquals(0, rotor.setting());
+        assertFalse(rotor.atNotch());
+    }
+
 }
@@ -0,0 +1,364 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import static enigma.EnigmaException.*;
+
+/** The log probabilities of the K-grams (runs of K letters) of a
+ *  language, for K from 1 to some N of at most 4, for scoring candidate
+ *  decryptions.  The tables are counted from a sample of text (the
+ *  corpus); runs broken by characters outside the alphabet are not
+ *  counted, a character not in the alphabet whose other case is counts
+ *  as that, and a K-gram that never occurs gets a floor somewhat below
+ *  that of one that occurs once.
+ *
+ *  Each table is a flat array of floats in which a K-gram is indexed by
+ *  its letters' alphabet indices as the digits of a number whose radix
+ *  is the alphabet size, so scoring a text keeps a rolling index and
+ *  allocates nothing.  Since counting a large corpus is slow, load
+ *  keeps the nonzero counts in a cache file, which it reuses while the
+ *  corpus is unchanged.
+ *  @author Cheng Zhu
+ */
+class NGrams {
+
+    /** The tables of 1- to N-grams of ALPHA counted from CORPUS. */
+    NGrams(Alphabet alpha, int n, CharSequence corpus) {
+        this(alpha, n, count(alpha, n, corpus));
+    }
+
+    /** The tables of 1- to N-grams of ALPHA, with the K-gram counts in
+     *  COUNTS[K]. */
+    private NGrams(Alphabet alpha, int n, long[][] counts) {
+        _alphabet = alpha;
+        _n = n;
+        _tables = new float[n + 1][];
+        for (int k = 1; k <= n; k += 1) {
+            long total = 0;
+            for (long count : counts[k]) {
+                total += count;
+            }
+            if (total == 0) {
+                throw error("corpus has no %d-grams", k);
+            }
+            float[] table = _tables[k] = new float[counts[k].length];
+            float floor = (float) Math.log10(FLOOR / total);
+            for (int i = 0; i < table.length; i += 1) {
+                table[i] = counts[k][i] == 0 ? floor
+                    : (float) Math.log10((double) counts[k][i] / total);
+            }
+        }
+        _high = entries(alpha, n - 1);
+    }
+
+    /** Return the tables of 1- to N-grams of ALPHA counted from the file
+     *  CORPUS, decoded as LineInput.CHARSET, using the cache file CACHE
+     *  (if not null) if it was made from CORPUS as it now is, and
+     *  otherwise counting CORPUS and rewriting CACHE. */
+    static NGrams load(Alphabet alpha, int n, Path corpus, Path cache) {
+        long size, modified;
+        try {
+            size = Files.size(corpus);
+            modified = Files.getLastModifiedTime(corpus).toMillis();
+        } catch (IOException excp) {
+            throw error("could not read corpus %s", corpus);
+        }
+        long[][] counts = null;
+        if (cache != null && Files.exists(cache)) {
+            counts = readCache(cache, alpha, n, size, modified);
+        }
+        if (counts == null) {
+            try (Reader in =
+                     Files.newBufferedReader(corpus, LineInput.CHARSET)) {
+                Counter counter = new Counter(alpha, n);
+                char[] buffer = new char[BUFFER_SIZE];
+                for (int len = in.read(buffer); len >= 0;
+                     len = in.read(buffer)) {
+                    counter.add(CharBuffer.wrap(buffer, 0, len));
+                }
+                counts = counter.counts();
+            } catch (IOException excp) {
+                throw error("could not read corpus %s", corpus);
+            }
+            if (cache != null) {
+                writeCache(cache, alpha, counts, size, modified);
+            }
+        }
+        return new NGrams(alpha, n, counts);
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return N, the length of my longest K-grams. */
+    int length() {
+        return _n;
+    }
+
+    /** Return the table of K-gram log probabilities, which must not be
+     *  modified. */
+    float[] table(int k) {
+        if (k < 1 || k > _n) {
+            throw error("no table of %d-grams", k);
+        }
+        return _tables[k];
+    }
+
+    /** Return the log probability of the N-gram of TEXT (as alphabet
+     *  indices) starting at START. */
+    double window(int[] text, int start) {
+        int index = 0;
+        for (int k = 0; k < _n; k += 1) {
+            index = index * _alphabet.size() + text[start + k];
+        }
+        return _tables[_n][index];
+    }
+
+    /** Return the sum of the log probabilities of all N-grams in the first
+     *  LENGTH characters of TEXT (as alphabet indices). */
+    double score(int[] text, int length) {
+        return score(text, length, _n);
+    }
+
+    /** Return the sum of the log probabilities of all K-grams in the first
+     *  LENGTH characters of TEXT (as alphabet indices). */
+    double score(int[] text, int length, int k) {
+        float[] table = table(k);
+        int size = _alphabet.size();
+        int high = k == _n ? _high : entries(_alphabet, k - 1);
+        double sum = 0;
+        int index = 0;
+        for (int i = 0; i < length; i += 1) {
+            if (i >= k) {
+                index -= text[i - k] * high;
+            }
+            index = index * size + text[i];
+            if (i >= k - 1) {
+                sum += table[index];
+            }
+        }
+        return sum;
+    }
+
+    /** Return the K-gram counts of 1- to N-grams of ALPHA in CORPUS. */
+    private static long[][] count(Alphabet alpha, int n,
+                                  CharSequence corpus) {
+        Counter counter = new Counter(alpha, n);
+        counter.add(corpus);
+        return counter.counts();
+    }
+
+    /** Return the number of K-grams of ALPHA. */
+    private static int entries(Alphabet alpha, int k) {
+        int result = 1;
+        for (int j = 0; j < k; j += 1) {
+            result *= alpha.size();
+        }
+        return result;
+    }
+
+    /** Return the counts stored in CACHE if it holds the 1- to N-grams of
+     *  ALPHA for a corpus of SIZE bytes last modified at MODIFIED, and
+     *  otherwise null. */
+    private static long[][] readCache(Path cache, Alphabet alpha, int n,
+                                      long size, long modified) {
+        try (DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(Files.newInputStream(cache)))) {
+            if (in.readInt() != MAGIC || !in.readUTF().equals(alpha.toString())
+                || in.readInt() < n || in.readLong() != size
+                || in.readLong() != modified) {
+                return null;
+            }
+            long[][] counts = new long[n + 1][];
+            for (int k = 1; k <= n; k += 1) {
+                counts[k] = new long[entries(alpha, k)];
+                for (int nonzero = in.readInt(); nonzero > 0; nonzero -= 1) {
+                    int index = in.readInt();
+                    counts[k][index] = in.readLong();
+                }
+            }
+            return counts;
+        } catch (IOException | IndexOutOfBoundsException excp) {
+            return null;
+        }
+    }
+
+    /** Write COUNTS, the K-gram counts of ALPHA for a corpus of SIZE bytes
+     *  last modified at MODIFIED, to CACHE, via a temporary file that is
+     *  atomically renamed over it. */
+    private static void writeCache(Path cache, Alphabet alpha,
+                                   long[][] counts, long size,
+                                   long modified) {
+        Path temp = cache.resolveSibling(cache.getFileName() + ".tmp");
+        try (FileChannel channel =
+                 FileChannel.open(temp, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(channel)));
+            out.writeInt(MAGIC);
+            out.writeUTF(alpha.toString());
+            out.writeInt(counts.length - 1);
+            out.writeLong(size);
+            out.writeLong(modified);
+            for (int k = 1; k < counts.length; k += 1) {
+                int nonzero = 0;
+                for (long count : counts[k]) {
+                    nonzero += count == 0 ? 0 : 1;
+                }
+                out.writeInt(nonzero);
+                for (int i = 0; i < counts[k].length; i += 1) {
+                    if (counts[k][i] != 0) {
+                        out.writeInt(i);
+                        out.writeLong(counts[k][i]);
+                    }
+                }
+            }
+            out.flush();
+            channel.force(true);
+        } catch (IOException excp) {
+            throw error("could not write n-gram cache %s", temp);
+        }
+        try {
+            Files.move(temp, cache, ATOMIC_MOVE, REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw error("could not write n-gram cache %s", cache);
+        }
+    }
+
+    /** Counts the K-grams of a stream of characters. */
+    private static class Counter {
+        /** A counter of the 1- to N-grams of ALPHA. */
+        Counter(Alphabet alpha, int n) {
+            if (n < 1 || n > MAX_LENGTH
+                || Math.pow(alpha.size(), n) > MAX_TABLE) {
+                throw error("cannot tabulate %d-grams of %d letters", n,
+                            alpha.size());
+            }
+            _alpha = alpha;
+            _counts = new long[n + 1][];
+            _index = new int[n + 1];
+            for (int k = 1; k <= n; k += 1) {
+                _counts[k] = new long[entries(alpha, k)];
+            }
+        }
+
+        /** Count the K-grams ending in TEXT, which continues the text
+         *  added so far.  A surrogate pair may be split between TEXT and
+         *  the next text added. */
+        void add(CharSequence text) {
+            int i = 0;
+            if (_pending != 0 && text.length() > 0) {
+                char low = text.charAt(0);
+                if (Character.isLowSurrogate(low)) {
+                    add(Character.toCodePoint(_pending, low));
+                    i = 1;
+                } else {
+                    add(_pending);
+                }
+                _pending = 0;
+            }
+            while (i < text.length()) {
+                int ch = Character.codePointAt(text, i);
+                if (i + 1 == text.length()
+                    && Character.isHighSurrogate(text.charAt(i))) {
+                    _pending = text.charAt(i);
+                    return;
+                }
+                add(ch);
+                i += Character.charCount(ch);
+            }
+        }
+
+        /** Count the K-grams ending with the code point CH. */
+        private void add(int ch) {
+            int c = letter(ch);
+            if (c < 0) {
+                _run = 0;
+                return;
+            }
+            _run += 1;
+            for (int k = 1; k < _counts.length; k += 1) {
+                _index[k] = (_index[k] * _alpha.size() + c)
+                    % _counts[k].length;
+                if (_run >= k) {
+                    _counts[k][_index[k]] += 1;
+                }
+            }
+        }
+
+        /** Return the counts so far, indexed by K-gram length. */
+        long[][] counts() {
+            if (_pending != 0) {
+                add(_pending);
+                _pending = 0;
+            }
+            return _counts;
+        }
+
+        /** Return the alphabet index of CH, or of CH in the other case
+         *  if only that is in the alphabet, or -1 if neither is. */
+        private int letter(int ch) {
+            if (_alpha.contains(ch)) {
+                return _alpha.toInt(ch);
+            }
+            int other = Character.isUpperCase(ch)
+                ? Character.toLowerCase(ch) : Character.toUpperCase(ch);
+            return _alpha.contains(other) ? _alpha.toInt(other) : -1;
+        }
+
+        /** The alphabet. */
+        private final Alphabet _alpha;
+        /** Counts of each K-gram. */
+        private final long[][] _counts;
+        /** Index of the last K characters, for each K. */
+        private final int[] _index;
+        /** Number of consecutive letters seen. */
+        private int _run;
+        /** A high surrogate ending the text added so far, or 0. */
+        private char _pending;
+    }
+
+    /** Longest K-grams I will count. */
+    static final int MAX_LENGTH = 4;
+
+    /** Largest table I will build. */
+    private static final double MAX_TABLE = 1 << 24;
+
+    /** Count given to K-grams that never occur. */
+    private static final double FLOOR = 0.01;
+
+    /** Number of characters read from a corpus at a time. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** First word of every cache file ("ENG1"). */
+    private static final int MAGIC = 0x454e4731;
+
+    /** My alphabet. */
+    private final Alphabet _alphabet;
+
+    /** Length of my longest K-grams. */
+    private final int _n;
+
+    /** Log probability of each K-gram, indexed by K. */
+    private final float[][] _tables;
+
+    /** Weight of the first letter of an N-gram in its index. */
+    private final int _high;
+}
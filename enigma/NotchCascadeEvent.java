@@ -0,0 +1,48 @@
+package enigma;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** Flight Recorder event for a step of the rotors in which some pawl was
+ *  engaged, so that rotors other than the fast one moved.  Such steps
+ *  are too frequent to record each one: a Machine records one of every
+ *  SAMPLE of them, each standing for SAMPLE steps, whether it steps its
+ *  rotors itself or through a generated engine.  See enigma.jfc.
+ *  @author Cheng Zhu
+ */
+@Name("enigma.NotchCascade")
+@Label("Notch Cascade")
+@Category("Enigma")
+@Description("A sampled rotor step in which notches engaged pawls")
+@StackTrace(false)
+final class NotchCascadeEvent extends Event {
+
+    /** Number of cascades each event stands for. */
+    static final int SAMPLE = 256;
+
+    /** Return true iff these events are being recorded. */
+    static boolean enabled() {
+        return PROBE.isEnabled();
+    }
+
+    /** Number of pawls engaged.  Steps taken by a generated engine are
+     *  not seen one at a time, so for them, this is the mean over the
+     *  steps of one conversion, rounded. */
+    @Label("Engaged Pawls")
+    int pawls;
+
+    /** Number of rotor slots in the machine. */
+    @Label("Slots")
+    int slots;
+
+    /** Number of cascades this event stands for. */
+    @Label("Weight")
+    int weight;
+
+    /** An event never committed, asked whether events are enabled. */
+    private static final NotchCascadeEvent PROBE = new NotchCascadeEvent();
+}
@@ -0,0 +1,29 @@
+package enigma;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/** Flight Recorder event for a write of Main's output (a line, a flush,
+ *  or a checkpoint) that took longer than the threshold (10 ms unless
+ *  configured otherwise).  See enigma.jfc.
+ *  @author Cheng Zhu
+ */
+@Name("enigma.OutputWrite")
+@Label("Slow Output Write")
+@Category({ "Enigma", "I/O" })
+@Description("Writing output took longer than the threshold")
+@Threshold("10 ms")
+final class OutputWriteEvent extends Event {
+
+    /** What was written: "line", "flush", or "checkpoint". */
+    @Label("Operation")
+    String operation;
+
+    /** Number of characters written, for a line. */
+    @Label("Characters")
+    int characters;
+}
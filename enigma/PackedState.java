@@ -0,0 +1,143 @@
+package enigma;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** The settings of the rotors of a machine (all but the reflector), at
+ *  some moment, packed into longs.  Each slot takes a fixed field of
+ *  just enough bits to hold a setting, and as many fields as fit are
+ *  packed into each long, so that a machine of up to 13 rotors with a
+ *  26-letter alphabet takes a single long.  Snapshots are immutable
+ *  values: copying, comparing, and hashing one costs a few word
+ *  operations, so they serve as keys of hash tables and caches.
+ *  @author Cheng Zhu
+ */
+final class PackedState {
+
+    /** How the settings of a machine with a given alphabet size and
+     *  number of slots are laid out. */
+    static final class Packing {
+
+        /** The layout for machines of NUMSLOTS slots (counting the
+         *  reflector) and alphabet size SIZE. */
+        Packing(int size, int numSlots) {
+            if (size < 1 || numSlots < 1) {
+                throw error("bad machine shape");
+            }
+            int width = Integer.SIZE - Integer.numberOfLeadingZeros(size - 1);
+            int bits = Math.max(1, width);
+            int perWord = Long.SIZE / bits;
+            _mask = (1 << bits) - 1;
+            _word = new int[numSlots];
+            _shift = new int[numSlots];
+            for (int k = 1; k < numSlots; k += 1) {
+                _word[k] = (k - 1) / perWord;
+                _shift[k] = (k - 1) % perWord * bits;
+            }
+            _words = Math.max(1, (numSlots - 1 + perWord - 1) / perWord);
+            _numSlots = numSlots;
+        }
+
+        /** Return a new, all-zero, array of packed settings. */
+        long[] newWords() {
+            return new long[_words];
+        }
+
+        /** Return true iff OTHER lays out settings as I do. */
+        boolean sameAs(Packing other) {
+            return _mask == other._mask && _numSlots == other._numSlots;
+        }
+
+        /** Return the number of slots, counting the reflector. */
+        int numSlots() {
+            return _numSlots;
+        }
+
+        /** Return the setting of slot K in the packed settings WORDS. */
+        int get(long[] words, int k) {
+            return (int) (words[_word[k]] >>> _shift[k]) & _mask;
+        }
+
+        /** Set slot K in the packed settings WORDS to P. */
+        void set(long[] words, int k, int p) {
+            int w = _word[k];
+            words[w] = words[w] & ~((long) _mask << _shift[k])
+                | (long) p << _shift[k];
+        }
+
+        /** Mask of the bits of one field. */
+        private final int _mask;
+
+        /** Index of the word holding each slot. */
+        private final int[] _word;
+
+        /** Position of the low bit of each slot's field in its word. */
+        private final int[] _shift;
+
+        /** Number of words of packed settings. */
+        private final int _words;
+
+        /** Number of slots. */
+        private final int _numSlots;
+    }
+
+    /** The settings WORDS, laid out by PACKING, which I take over. */
+    PackedState(Packing packing, long[] words) {
+        _packing = packing;
+        _words = words;
+    }
+
+    /** Return the layout of my settings. */
+    Packing packing() {
+        return _packing;
+    }
+
+    /** Return the setting of Rotor #K (1 <= K < number of slots). */
+    int setting(int k) {
+        if (k < 1 || k >= _packing.numSlots()) {
+            throw error("no rotor #%d", k);
+        }
+        return _packing.get(_words, k);
+    }
+
+    /** Return the number of longs holding my settings. */
+    int length() {
+        return _words.length;
+    }
+
+    /** Return the Ith long holding my settings. */
+    long word(int i) {
+        return _words[i];
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof PackedState
+            && Arrays.equals(_words, ((PackedState) obj)._words);
+    }
+
+    @Override
+    public int hashCode() {
+        if (_words.length == 1) {
+            return Long.hashCode(_words[0]);
+        }
+        return Arrays.hashCode(_words);
+    }
+
+    /** Return my settings as a list of alphabet indices. */
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder("[");
+        for (int k = 1; k < _packing.numSlots(); k += 1) {
+            result.append(k == 1 ? "" : " ").append(setting(k));
+        }
+        return result.append("]").toString();
+    }
+
+    /** Layout of _words. */
+    private final Packing _packing;
+
+    /** My packed settings. */
+    private final long[] _words;
+}
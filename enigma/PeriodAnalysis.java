@@ -0,0 +1,393 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** Exact periods of the stepping of a machine.  From any initial
+ *  setting, the settings a machine passes through are eventually
+ *  periodic, but because a pawl that engages moves the rotor to its left
+ *  as well as its own (double stepping), some settings are never
+ *  revisited, so the sequence may begin with a transient.  The sequence
+ *  of substitutions the rotors apply has the same transient and a
+ *  period that divides that of the settings.
+ *
+ *  A setting is packed into a long, a fixed number of bits per slot.
+ *  When the settings of the moving rotors are few enough, the walk
+ *  records the step at which each was first reached in a table, which
+ *  gives the transient and period as soon as one repeats.  Otherwise,
+ *  Brent's cycle-finding algorithm is used, which needs no memory.
+ *  The substitution period is found by trying each prime factor of the
+ *  setting period in turn, stepping two machines one candidate period
+ *  apart around the cycle.  Rotor orders are analyzed in parallel.
+ *  @author Cheng Zhu
+ */
+public final class PeriodAnalysis {
+
+    /** Print the periods of every legal rotor order of the configuration
+     *  in file ARGS[0], from the setting ARGS[1] (all rotors at their
+     *  first position if absent). */
+    public static void main(String... args) {
+        try {
+            if (args.length < 1 || args.length > 2) {
+                throw error("Usage: java enigma.PeriodAnalysis CONFIG "
+                            + "[SETTING]");
+            }
+            Keyspace keys = new Keyspace(Main.readConfiguration(args[0]));
+            Alphabet alpha = keys.config().alphabet();
+            String setting = args.length > 1 ? args[1]
+                : alpha.toString(new int[keys.config().numRotors() - 1]);
+            ExecutorService executor = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors());
+            try {
+                for (Report report : analyze(keys, setting, executor)) {
+                    System.out.println(report);
+                }
+            } finally {
+                executor.shutdown();
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** The periods of each rotor order of KEYS from SETTING (as on a
+     *  settings line), computed in parallel on EXECUTOR, in order. */
+    static List<Report> analyze(Keyspace keys, String setting,
+                                ExecutorService executor) {
+        List<Callable<Report>> tasks = new ArrayList<>();
+        for (int k = 0; k < keys.orders(); k += 1) {
+            String[] rotors = keys.orderNames(k);
+            tasks.add(() -> new PeriodAnalysis(keys.config(), rotors)
+                      .analyze(setting));
+        }
+        List<Report> result = new ArrayList<>();
+        try {
+            for (Future<Report> report : executor.invokeAll(tasks)) {
+                result.add(report.get());
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("analysis interrupted");
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof EnigmaException) {
+                throw (EnigmaException) excp.getCause();
+            }
+            throw error("analysis failed: %s", excp.getCause());
+        }
+        return result;
+    }
+
+    /** An analysis of a machine from CONFIG with the rotors named ROTORS
+     *  (ROTORS[0] naming the reflector). */
+    PeriodAnalysis(Configuration config, String[] rotors) {
+        _config = config;
+        _rotors = rotors;
+        _slots = config.numRotors();
+        _size = config.alphabet().size();
+        _fast = _slots - 1;
+        _firstPawl = Math.max(1, _slots - config.numPawls());
+        _bits = Integer.SIZE - Integer.numberOfLeadingZeros(_size - 1);
+        if ((long) _bits * (_slots - 1) >= Long.SIZE) {
+            throw error("settings of %d rotors do not fit in a long",
+                        _slots - 1);
+        }
+        _mask = (1L << _bits) - 1;
+        _notches = new boolean[_slots][_size];
+        _rotates = new boolean[_slots];
+        long states = 1;
+        for (int k = 0; k < _slots; k += 1) {
+            Rotor r = config.rotor(rotors[k]);
+            if (r == null) {
+                throw error("unknown rotor %s", rotors[k]);
+            }
+            _rotates[k] = r.rotates();
+            for (int p = 0; p < _size; p += 1) {
+                _notches[k][p] = r.notchAt(p);
+            }
+            if (k > 0 && _rotates[k]) {
+                states = states > VISITED_LIMIT ? states : states * _size;
+            }
+        }
+        _states = states;
+        _posn = new int[_slots];
+    }
+
+    /** Return the periods of my machine from SETTING, as on a settings
+     *  line. */
+    Report analyze(String setting) {
+        int[] posn = _config.alphabet().toInts(setting);
+        if (posn.length != _slots - 1) {
+            throw error("wrong number of settings");
+        }
+        long start = encode(posn);
+        boolean exhaustive = _states <= VISITED_LIMIT;
+        long[] cycle = exhaustive ? table(start) : brent(start);
+        return new Report(_rotors, setting, cycle[0], cycle[1],
+                          substitutionPeriod(start, cycle[0], cycle[1]),
+                          exhaustive);
+    }
+
+    /** Return the setting of rotors 1 .. numRotors-1, given by SETTING
+     *  (whose K-th element is the setting of Rotor #K+1), packed into a
+     *  long. */
+    long encode(int[] setting) {
+        long state = 0;
+        for (int k = setting.length - 1; k >= 0; k -= 1) {
+            state = (state << _bits) | setting[k];
+        }
+        return state;
+    }
+
+    /** Store the setting packed in STATE into SETTING, as for encode. */
+    void decode(long state, int[] setting) {
+        for (int k = 0; k < setting.length; k += 1) {
+            setting[k] = (int) (state & _mask);
+            state >>>= _bits;
+        }
+    }
+
+    /** Return the setting that follows STATE after one step. */
+    long next(long state) {
+        int[] posn = _posn;
+        for (int k = 1; k < _slots; k += 1) {
+            posn[k] = (int) (state & _mask);
+            state >>>= _bits;
+        }
+        boolean pushed = false;
+        for (int k = _fast; k >= _firstPawl; k -= 1) {
+            boolean engaged = _rotates[k - 1] && _notches[k][posn[k]];
+            if (_rotates[k] && (k == _fast || engaged || pushed)) {
+                posn[k] = posn[k] + 1 == _size ? 0 : posn[k] + 1;
+            }
+            pushed = engaged;
+        }
+        int left = _firstPawl - 1;
+        if (pushed && left > 0 && _rotates[left]) {
+            posn[left] = posn[left] + 1 == _size ? 0 : posn[left] + 1;
+        }
+        long result = 0;
+        for (int k = _fast; k > 0; k -= 1) {
+            result = (result << _bits) | posn[k];
+        }
+        return result;
+    }
+
+    /** Return the transient and period of the walk from START, using a
+     *  table of the step at which each setting of the moving rotors was
+     *  first reached. */
+    long[] table(long start) {
+        int[] first = new int[(int) _states];
+        Arrays.fill(first, -1);
+        long state = start;
+        for (int step = 0; true; step += 1) {
+            int index = index(state);
+            if (first[index] >= 0) {
+                return new long[] { first[index], step - first[index] };
+            }
+            first[index] = step;
+            state = next(state);
+        }
+    }
+
+    /** Return the index in 0 .. _states-1 of the settings of the moving
+     *  rotors in STATE. */
+    private int index(long state) {
+        int index = 0;
+        for (int k = 1; k < _slots; k += 1) {
+            if (_rotates[k]) {
+                index = index * _size + (int) (state & _mask);
+            }
+            state >>>= _bits;
+        }
+        return index;
+    }
+
+    /** Return the transient and period of the walk from START, found by
+     *  Brent's algorithm. */
+    long[] brent(long start) {
+        long power = 1, period = 1;
+        long tortoise = start, hare = next(start);
+        while (tortoise != hare) {
+            if (power == period) {
+                tortoise = hare;
+                power *= 2;
+                period = 0;
+            }
+            hare = next(hare);
+            period += 1;
+        }
+        tortoise = hare = start;
+        for (long i = 0; i < period; i += 1) {
+            hare = next(hare);
+        }
+        long lead = 0;
+        while (tortoise != hare) {
+            tortoise = next(tortoise);
+            hare = next(hare);
+            lead += 1;
+        }
+        return new long[] { lead, period };
+    }
+
+    /** Return the period of the substitutions applied after each step
+     *  of the walk from START, which reaches a cycle of PERIOD settings
+     *  after LEAD steps. */
+    private long substitutionPeriod(long start, long lead, long period) {
+        long state = start;
+        for (long i = 0; i < lead; i += 1) {
+            state = next(state);
+        }
+        long result = period, rest = period;
+        for (long q = 2; rest > 1; q += 1) {
+            if (q * q > rest) {
+                q = rest;
+            }
+            if (rest % q != 0) {
+                continue;
+            }
+            while (rest % q == 0) {
+                rest /= q;
+            }
+            while (result % q == 0 && repeats(state, result / q, period)) {
+                result /= q;
+            }
+        }
+        return result;
+    }
+
+    /** Return true iff the substitutions applied after each step from
+     *  STATE, which lies on a cycle of length PERIOD, repeat after
+     *  SHIFT steps. */
+    private boolean repeats(long state, long shift, long period) {
+        long other = state;
+        for (long i = 0; i < shift; i += 1) {
+            other = next(other);
+        }
+        Machine a = machine(state), b = machine(other);
+        int[] coreA = new int[_size], coreB = new int[_size];
+        for (long i = 0; i < period; i += 1) {
+            a.stepCore(coreA);
+            b.stepCore(coreB);
+            if (!Arrays.equals(coreA, coreB)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return a machine with my rotors at the setting packed in STATE. */
+    private Machine machine(long state) {
+        Machine mach = _config.newMachine();
+        mach.insertRotors(_rotors);
+        int[] setting = new int[_slots - 1];
+        decode(state, setting);
+        mach.setRotors(setting);
+        mach.setPlugboard(new Permutation("", mach.alphabet()));
+        return mach;
+    }
+
+    /** The periods of one rotor order from one setting. */
+    static class Report {
+        /** The report for rotors ROTORS from SETTING: the walk takes
+         *  LEAD steps to reach a cycle of PERIOD settings, on which the
+         *  substitutions repeat every SUBSTITUTIONPERIOD steps.
+         *  EXHAUSTIVE if found by tabulating the settings. */
+        Report(String[] rotors, String setting, long lead, long period,
+               long substitutionPeriod, boolean exhaustive) {
+            _rotors = rotors;
+            _setting = setting;
+            _transient = lead;
+            _period = period;
+            _substitutionPeriod = substitutionPeriod;
+            _exhaustive = exhaustive;
+        }
+
+        /** Return the number of steps before the walk reaches its
+         *  cycle. */
+        long transientLength() {
+            return _transient;
+        }
+
+        /** Return the length of the cycle of settings. */
+        long period() {
+            return _period;
+        }
+
+        /** Return the period of the substitutions on the cycle. */
+        long substitutionPeriod() {
+            return _substitutionPeriod;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %s: transient %d, period %d, "
+                                 + "substitution period %d (%s)",
+                                 String.join(" ", _rotors), _setting,
+                                 _transient, _period, _substitutionPeriod,
+                                 _exhaustive ? "table" : "Brent");
+        }
+
+        /** Names of the rotors. */
+        private final String[] _rotors;
+        /** Initial setting. */
+        private final String _setting;
+        /** Transient length. */
+        private final long _transient;
+        /** Period of the settings. */
+        private final long _period;
+        /** Period of the substitutions. */
+        private final long _substitutionPeriod;
+        /** True if found by tabulating the settings. */
+        private final boolean _exhaustive;
+    }
+
+    /** Largest number of settings of the moving rotors that I tabulate. */
+    private static final long VISITED_LIMIT = 1 << 22;
+
+    /** My configuration. */
+    private final Configuration _config;
+
+    /** Names of my rotors. */
+    private final String[] _rotors;
+
+    /** Number of slots. */
+    private final int _slots;
+
+    /** Alphabet size. */
+    private final int _size;
+
+    /** Slot number of the fast rotor. */
+    private final int _fast;
+
+    /** Slot number of the leftmost pawl (at least 1). */
+    private final int _firstPawl;
+
+    /** Bits per slot in a packed setting. */
+    private final int _bits;
+
+    /** Mask of the bits of one slot. */
+    private final long _mask;
+
+    /** Whether each slot's rotor has a notch at each setting. */
+    private final boolean[][] _notches;
+
+    /** Whether each slot's rotor can move. */
+    private final boolean[] _rotates;
+
+    /** Number of settings of the moving rotors, or more than
+     *  VISITED_LIMIT if there are more than that. */
+    private final long _states;
+
+    /** Scratch settings for next. */
+    private final int[] _posn;
+}
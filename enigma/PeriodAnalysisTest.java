@@ -0,0 +1,88 @@
+package enigma;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the PeriodAnalysis class.
+ *  @author Cheng Zhu
+ */
+public class PeriodAnalysisTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /** Naval rotors with a double-stepping middle rotor. */
+    private static final String[] NAVAL = { "B", "Beta", "I", "II", "III" };
+
+    @Test
+    public void testStepsLikeMachine() {
+        Configuration config = config(NAVAL_CONFIG);
+        PeriodAnalysis analysis = new PeriodAnalysis(config, NAVAL);
+        Machine mach = config.newMachine();
+        mach.insertRotors(NAVAL);
+        mach.setPlugboard(new Permutation("", config.alphabet()));
+        Random random = new Random(3);
+        int[] setting = new int[4], core = new int[26];
+        for (int trial = 0; trial < 50; trial += 1) {
+            for (int k = 0; k < 4; k += 1) {
+                setting[k] = random.nextInt(26);
+            }
+            mach.setRotors(setting);
+            long state = analysis.encode(setting);
+            for (int i = 0; i < 700; i += 1) {
+                mach.stepCore(core);
+                state = analysis.next(state);
+                analysis.decode(state, setting);
+                for (int k = 1; k < 5; k += 1) {
+                    assertEquals(mach.getRotor(k).setting(),
+                                 setting[k - 1]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testPeriods() {
+        Configuration config = config(NAVAL_CONFIG);
+        PeriodAnalysis analysis = new PeriodAnalysis(config, NAVAL);
+        PeriodAnalysis.Report report = analysis.analyze("AAAA");
+        assertEquals(0, report.transientLength());
+        assertEquals(26 * 25 * 26, report.period());
+        assertEquals(26 * 25 * 26, report.substitutionPeriod());
+        report = analysis.analyze("AAEA");
+        assertEquals(1, report.transientLength());
+        assertEquals(26 * 25 * 26, report.period());
+        for (String setting : new String[] { "AAEA", "QQDV", "ZZZZ" }) {
+            int[] posn = indices(setting, config.alphabet());
+            long start = analysis.encode(posn);
+            assertArrayEquals(analysis.table(start), analysis.brent(start));
+        }
+    }
+
+    @Test
+    public void testAllOrders() {
+        Keyspace keys = new Keyspace(config(SMALL_CONFIG));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<PeriodAnalysis.Report> reports =
+                PeriodAnalysis.analyze(keys, "AA", executor);
+            assertEquals(keys.orders(), reports.size());
+            for (PeriodAnalysis.Report report : reports) {
+                assertEquals(0, report.transientLength());
+                assertEquals(26 * 26, report.period());
+            }
+            assertTrue(reports.get(0).toString().startsWith("B I II AA:"));
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -1,8 +1,7 @@
 package enigma;
 
 import static enigma.EnigmaException.*;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 
@@ -19,7 +18,11 @@ class Permutation {
      *  Whitespace is ignored. */
     Permutation(String cycles, Alphabet alphabet) {
         _alphabet = alphabet;
-        _cycle = new ArrayList<>();
+        _forward = new int[alphabet.size()];
+        _inverse = new int[alphabet.size()];
+        for (int i = 0; i < _forward.length; i += 1) {
+            _forward[i] = _inverse[i] = i;
+        }
         int[] alpArr = new int[alphabet.size()];
         Pattern myPattern = Pattern.compile("\\(([\\S\\s]+?)\\)");
         Pattern outsidePattern = Pattern.compile("\\)([\\S\\s]*?)\\(");
@@ -53,10 +56,9 @@ class Permutation {
         myMatcher = myPattern.matcher(cycles);
         while (myMatcher.find()) {
             String cycle = myMatcher.group(1);
-            char[] charsArr = cycle.toCharArray();
-            for (int i = 0; i < cycle.length(); i++) {
-                alpArr[alphabet().toInt(charsArr[i])]++;
-                if (alpArr[alphabet().toInt(charsArr[i])] > 1) {
+            for (int x : alphabet().toInts(cycle)) {
+                alpArr[x]++;
+                if (alpArr[x] > 1) {
                     throw new EnigmaException("Wrong permutation: "
                             + "there are duplicate characters in the cycles.");
                 }
@@ -65,10 +67,38 @@ class Permutation {
         }
     }
 
+    /** Set this Permutation to the one that maps each K in 0 ..
+     *  ALPHABET.size()-1 to TABLE[K], which must be a permutation of those
+     *  indices. */
+    Permutation(int[] table, Alphabet alphabet) {
+        _alphabet = alphabet;
+        if (table.length != alphabet.size()) {
+            throw new EnigmaException("Wrong permutation size.");
+        }
+        _forward = table.clone();
+        _inverse = new int[table.length];
+        boolean[] seen = new boolean[table.length];
+        for (int i = 0; i < table.length; i += 1) {
+            int to = table[i];
+            if (to < 0 || to >= table.length || seen[to]) {
+                throw new EnigmaException("Wrong permutation: "
+                        + "table is not one-to-one.");
+            }
+            seen[to] = true;
+            _inverse[to] = i;
+        }
+    }
+
     /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
      *  c0c1...cm. */
     private void addCycle(String cycle) {
-        _cycle.add(cycle);
+        int[] chars = _alphabet.toInts(cycle);
+        for (int i = 0; i < chars.length; i += 1) {
+            int from = chars[i];
+            int to = chars[(i + 1) % chars.length];
+            _forward[from] = to;
+            _inverse[to] = from;
+        }
     }
 
     /** Return the value of P modulo the size of this permutation. */
@@ -88,35 +118,30 @@ class Permutation {
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        char pChar = _alphabet.toChar(p);
-        for (String c : _cycle) {
-            int indexInC = c.indexOf(pChar);
-            if (indexInC != -1) {
-                if (indexInC == c.length() - 1) {
-                    return _alphabet.toInt(c.charAt(0));
-                } else {
-                    return _alphabet.toInt(c.charAt(indexInC + 1));
-                }
-            }
-        }
-        return p;
+        return _forward[wrap(p)];
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        char cChar = _alphabet.toChar(c);
-        for (String cy : _cycle) {
-            int indexInC = cy.indexOf(cChar);
-            if (indexInC != -1) {
-                if (indexInC == 0) {
-                    return _alphabet.toInt(cy.charAt(cy.length() - 1));
-                } else {
-                    return _alphabet.toInt(cy.charAt(indexInC - 1));
-                }
-            }
-        }
-        return c;
+        return _inverse[wrap(c)];
+    }
+
+    /** Return a new array whose K-th element is permute(K), for
+     *  0 <= K < size(). */
+    int[] toArray() {
+        return _forward.clone();
+    }
+
+    /** Return my table: its K-th element is permute(K).  The table is
+     *  shared, not copied, and must not be modified. */
+    int[] table() {
+        return _forward;
+    }
+
+    /** Return the table of my inverse, shared as for table(). */
+    int[] inverseTable() {
+        return _inverse;
     }
 
     /** Return the result of applying this permutation to the index of P
@@ -139,16 +164,121 @@ class Permutation {
      *  permutation for which no value maps to itself). */
     boolean derangement() {
         for (int i = 0; i < _alphabet.size(); i++) {
-            if (_alphabet.toChar(i) == permute(_alphabet.toChar(i))) {
+            if (permute(i) == i) {
                 return false;
             }
         }
         return true;
     }
 
+    /** Return the permutation that applies OTHER and then me. */
+    Permutation compose(Permutation other) {
+        int[] result = new int[size()];
+        compose(_forward, other._forward, result);
+        return new Permutation(result, _alphabet);
+    }
+
+    /** Return the inverse of this permutation. */
+    Permutation inverse() {
+        return new Permutation(_inverse, _alphabet);
+    }
+
+    /** Return this permutation applied K times (its inverse applied -K
+     *  times if K is negative). */
+    Permutation power(int k) {
+        int[] result = new int[size()];
+        power(_forward, k, result);
+        return new Permutation(result, _alphabet);
+    }
+
+    /** Return the conjugate of this permutation by BY: the permutation
+     *  that maps BY(X) to BY(permute(X)). */
+    Permutation conjugate(Permutation by) {
+        int[] result = new int[size()];
+        for (int x = 0; x < result.length; x += 1) {
+            result[by._forward[x]] = by._forward[_forward[x]];
+        }
+        return new Permutation(result, _alphabet);
+    }
+
+    /** Return the lengths of the cycles of this permutation, longest
+     *  first, counting fixed points as cycles of length 1. */
+    int[] cycleType() {
+        int[] lengths = new int[size()];
+        int count = cycleType(_forward, new boolean[size()], lengths);
+        return Arrays.copyOf(lengths, count);
+    }
+
+    /** Set RESULT to the composition of permutation tables F and G, which
+     *  applies G and then F.  RESULT must be distinct from G. */
+    static void compose(int[] f, int[] g, int[] result) {
+        for (int x = 0; x < g.length; x += 1) {
+            result[x] = f[g[x]];
+        }
+    }
+
+    /** Set RESULT, which must be distinct from F, to permutation table F
+     *  applied K times. */
+    static void power(int[] f, int k, int[] result) {
+        int n = f.length;
+        for (int x = 0; x < n; x += 1) {
+            result[x] = -1;
+        }
+        int[] cycle = new int[n];
+        for (int x = 0; x < n; x += 1) {
+            if (result[x] >= 0) {
+                continue;
+            }
+            int len = 0;
+            for (int y = x; len == 0 || y != x; y = f[y]) {
+                cycle[len] = y;
+                len += 1;
+            }
+            int shift = k % len;
+            if (shift < 0) {
+                shift += len;
+            }
+            for (int i = 0; i < len; i += 1) {
+                int j = i + shift < len ? i + shift : i + shift - len;
+                result[cycle[i]] = cycle[j];
+            }
+        }
+    }
+
+    /** Store the lengths of the cycles of permutation table F in LENGTHS,
+     *  longest first, using SEEN (which must be as long as F) as scratch
+     *  space, and return their number. */
+    static int cycleType(int[] f, boolean[] seen, int[] lengths) {
+        for (int x = 0; x < f.length; x += 1) {
+            seen[x] = false;
+        }
+        int count = 0;
+        for (int x = 0; x < f.length; x += 1) {
+            if (seen[x]) {
+                continue;
+            }
+            int len = 0;
+            for (int y = x; !seen[y]; y = f[y]) {
+                seen[y] = true;
+                len += 1;
+            }
+            int i = count;
+            while (i > 0 && lengths[i - 1] < len) {
+                lengths[i] = lengths[i - 1];
+                i -= 1;
+            }
+            lengths[i] = len;
+            count += 1;
+        }
+        return count;
+    }
+
     /** Alphabet of this permutation. */
     private final Alphabet _alphabet;
 
-    /** Private variable cycle. */
-    private final List<String> _cycle;
+    /** The image of each index under this permutation. */
+    private final int[] _forward;
+
+    /** The image of each index under the inverse of this permutation. */
+    private final int[] _inverse;
 }
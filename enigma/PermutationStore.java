@@ -0,0 +1,74 @@
+package enigma;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+
+/** A process-wide store of interned Permutations, so that every rotor
+ *  and plugboard with the same wiring, in every configuration and
+ *  session, shares one Permutation, and every machine built on them
+ *  shares its tables.  Permutations are immutable, so sharing them is
+ *  safe.  The store holds its entries only weakly: an entry that no
+ *  rotor, plugboard, or machine uses any longer is collected, and its
+ *  slot in the store is reclaimed on a later call.
+ *  @author Cheng Zhu
+ */
+final class PermutationStore {
+
+    /** Not instantiable. */
+    private PermutationStore() {
+    }
+
+    /** Return the Permutation described by CYCLES (as for the Permutation
+     *  constructor) on ALPHABET, which is the same object for all
+     *  alphabets with the same characters and all CYCLES that differ
+     *  only in whitespace between cycles. */
+    static synchronized Permutation get(String cycles, Alphabet alphabet) {
+        expunge();
+        String key = alphabet + " "
+            + cycles.trim().replaceAll("\\)\\s+\\(", ")(");
+        Entry entry = ENTRIES.get(key);
+        Permutation result = entry == null ? null : entry.get();
+        if (result == null) {
+            result = new Permutation(cycles, alphabet);
+            ENTRIES.put(key, new Entry(key, result));
+        }
+        return result;
+    }
+
+    /** Return the number of entries in the store, counting any that have
+     *  been collected but not yet reclaimed. */
+    static synchronized int size() {
+        expunge();
+        return ENTRIES.size();
+    }
+
+    /** Remove the entries whose Permutations have been collected. */
+    private static void expunge() {
+        for (Object ref = COLLECTED.poll(); ref != null;
+             ref = COLLECTED.poll()) {
+            Entry entry = (Entry) ref;
+            ENTRIES.remove(entry._key, entry);
+        }
+    }
+
+    /** A weak reference to an interned Permutation. */
+    private static final class Entry extends WeakReference<Permutation> {
+
+        /** A reference to PERM, interned under KEY. */
+        Entry(String key, Permutation perm) {
+            super(perm, COLLECTED);
+            _key = key;
+        }
+
+        /** Key under which my Permutation is interned. */
+        private final String _key;
+    }
+
+    /** The interned Permutations, keyed by alphabet and cycles. */
+    private static final HashMap<String, Entry> ENTRIES = new HashMap<>();
+
+    /** Entries whose Permutations have been collected. */
+    private static final ReferenceQueue<Permutation> COLLECTED =
+        new ReferenceQueue<>();
+}
@@ -265,4 +265,74 @@ public class PermutationTest {
         perm = new Permutation("(9) (9)",
                 new Alphabet("103456789"));
     }
+
+    @Test
+    public void testAlgebra() {
+        Alphabet alpha = new Alphabet("ABCDEF");
+        Permutation p = new Permutation("(ABC) (DE)", alpha);
+        Permutation q = new Permutation("(AF)", alpha);
+        Permutation pq = p.compose(q);
+        assertEquals('B', pq.permute('F'));
+        assertEquals('F', pq.permute('A'));
+        assertEquals('E', pq.permute('D'));
+        assertEquals('A', p.inverse().permute('B'));
+        assertEquals('C', p.power(2).permute('A'));
+        assertEquals('A', p.power(6).permute('A'));
+        assertEquals('C', p.power(-1).permute('A'));
+        assertEquals('D', p.power(-3).permute('E'));
+        Permutation c = p.conjugate(q);
+        assertEquals('B', c.permute('F'));
+        assertEquals('F', c.permute('C'));
+        assertArrayEquals(new int[] { 3, 2, 1 }, p.cycleType());
+        assertArrayEquals(p.cycleType(), c.cycleType());
+        assertArrayEquals(new int[] { 1, 1, 1, 1, 1, 1 },
+                          p.compose(p.inverse()).cycleType());
+    }
+
+    @Test
+    public void testFromTable() {
+        Alphabet alpha = new Alphabet("ABCD");
+        perm = new Permutation(new int[] { 1, 0, 3, 2 }, alpha);
+        checkPerm("table", "ABCD", "BADC");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testBadTable() {
+        new Permutation(new int[] { 1, 1, 3, 2 }, new Alphabet("ABCD"));
+    }
+
+    @Test
+    public void testInterned() {
+        Permutation p = PermutationStore.get("(AB) (CDE)", UPPER);
+        assertSame(p, PermutationStore.get(" (AB)(CDE) ",
+                                           new Alphabet(UPPER_STRING)));
+        assertNotSame(p, PermutationStore.get("(BA) (CDE)", UPPER));
+        assertNotSame(p, PermutationStore.get("(AB) (CDE)", WEIRDER));
+        perm = p;
+        checkPerm("interned", UPPER_STRING, "BAD" + "EC"
+                  + UPPER_STRING.substring(5));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testInternedBadCycles() {
+        PermutationStore.get("(AB) (CDE)", UPPER);
+        PermutationStore.get("(A B) (CDE)", UPPER);
+    }
+
+    @Test
+    public void testInternedCollected() throws InterruptedException {
+        int before = PermutationStore.size();
+        for (int k = 0; k < 100; k += 1) {
+            PermutationStore.get("(AB) (CD" + (char) ('E' + k % 20) + ")",
+                                 UPPER);
+        }
+        for (int tries = 0; tries < 50; tries += 1) {
+            System.gc();
+            Thread.sleep(10);
+            if (PermutationStore.size() <= before) {
+                return;
+            }
+        }
+        fail("interned permutations were not collected");
+    }
 }
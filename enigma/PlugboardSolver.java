@@ -0,0 +1,268 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** A solver for the plugboard of a message whose rotors and initial
+ *  setting are known.  The map that the rotors apply at each position of
+ *  the message (the core) does not depend on the plugboard, so all of
+ *  them are computed once; a plugboard P then decrypts ciphertext letter
+ *  C at position I to P(CORE_I(P(C))), which takes three table lookups.
+ *
+ *  The solver anneals: starting from some plugboard, it tries every move
+ *  (joining two letters, after freeing them from their partners, or
+ *  freeing one letter) in turn, keeping any that raises the N-gram score
+ *  of the decryption and, while the temperature is above zero, some that
+ *  lower it a little.  The temperature falls to zero over a fixed number
+ *  of rounds, after which moves are tried until none helps.  A move
+ *  changes only a few letters of the decryption, and only the N-grams
+ *  that cover them are rescored.  Independent restarts run in parallel.
+ *  @author Cheng Zhu
+ */
+class PlugboardSolver {
+
+    /** A solver for CIPHERTEXT (as alphabet indices) produced by a
+     *  machine from CONFIG with rotors named ROTORS at initial setting
+     *  SETTING, scoring decryptions with NGRAMS. */
+    PlugboardSolver(Configuration config, String[] rotors, String setting,
+                    int[] ciphertext, NGrams ngrams) {
+        if (ngrams.alphabet().size() != config.alphabet().size()) {
+            throw error("n-gram table is for a different alphabet");
+        }
+        _rotors = rotors;
+        _setting = setting;
+        _ciphertext = ciphertext;
+        _ngrams = ngrams;
+        _size = config.alphabet().size();
+        Machine mach = config.newMachine();
+        mach.insertRotors(rotors);
+        mach.setRotors(setting);
+        mach.setPlugboard(new Permutation("", config.alphabet()));
+        _cores = new int[ciphertext.length][_size];
+        for (int i = 0; i < ciphertext.length; i += 1) {
+            mach.stepCore(_cores[i]);
+        }
+    }
+
+    /** Return the best plugboard found by RESTARTS independent runs, run
+     *  on EXECUTOR, the K-th seeded with SEED + K, as a candidate whose
+     *  score is the N-gram score of its decryption. */
+    Candidate solve(int restarts, long seed, ExecutorService executor) {
+        List<Callable<int[]>> runs = new ArrayList<>();
+        for (int k = 0; k < restarts; k += 1) {
+            long s = seed + k;
+            boolean fresh = k == 0;
+            runs.add(() -> anneal(new Random(s), fresh));
+        }
+        int[] best = null;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        try {
+            for (Future<int[]> run : executor.invokeAll(runs)) {
+                int[] plug = run.get();
+                double score = score(plug);
+                if (score > bestScore) {
+                    best = plug;
+                    bestScore = score;
+                }
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("plugboard search interrupted");
+        } catch (ExecutionException excp) {
+            throw error("plugboard search failed: %s", excp.getCause());
+        }
+        if (best == null) {
+            throw error("no restarts");
+        }
+        return new Candidate(_rotors, _setting, cycles(best), bestScore);
+    }
+
+    /** Return the N-gram score of the decryption given by plugboard PLUG,
+     *  which maps each letter index to that of its partner. */
+    double score(int[] plug) {
+        int[] plain = new int[_ciphertext.length];
+        decrypt(plug, plain);
+        return _ngrams.score(plain, plain.length);
+    }
+
+    /** Store in PLAIN the decryption given by plugboard PLUG. */
+    void decrypt(int[] plug, int[] plain) {
+        for (int i = 0; i < plain.length; i += 1) {
+            plain[i] = plug[_cores[i][plug[_ciphertext[i]]]];
+        }
+    }
+
+    /** Return the best plugboard found by one annealing run using RANDOM,
+     *  starting from an empty plugboard if FRESH, and otherwise from one
+     *  with some random pairs. */
+    private int[] anneal(Random random, boolean fresh) {
+        Run run = new Run(random);
+        for (int k = 0; !fresh && k < _size / 3; k += 1) {
+            move(run._plug, random.nextInt(_size), random.nextInt(_size));
+        }
+        run.restart(run._plug);
+        for (int round = 0; round < ROUNDS; round += 1) {
+            run.sweep(START_TEMP * (1 - (double) round / ROUNDS));
+        }
+        run.restart(run._best);
+        while (run.sweep(0)) {
+            continue;
+        }
+        return run._best;
+    }
+
+    /** The state of one annealing run. */
+    private class Run {
+        /** A run that makes its random choices with RANDOM. */
+        Run(Random random) {
+            _random = random;
+            _plug = new int[_size];
+            for (int x = 0; x < _size; x += 1) {
+                _plug[x] = x;
+            }
+            _best = _plug.clone();
+            _plain = new int[_ciphertext.length];
+            _trial = new int[_ciphertext.length];
+        }
+
+        /** Continue from plugboard PLUG, which also becomes the best so
+         *  far. */
+        void restart(int[] plug) {
+            System.arraycopy(plug, 0, _plug, 0, _size);
+            System.arraycopy(plug, 0, _best, 0, _size);
+            decrypt(_plug, _plain);
+            _score = _bestScore = _ngrams.score(_plain, _plain.length);
+        }
+
+        /** Try every move once at temperature TEMP, returning true iff
+         *  the best score rose. */
+        boolean sweep(double temp) {
+            boolean improved = false;
+            int[] plug = _plug;
+            for (int a = 0; a < _size; a += 1) {
+                for (int b = a; b < _size; b += 1) {
+                    int pa = plug[a], pb = plug[b];
+                    if (a == b ? pa == a : pa == b) {
+                        continue;
+                    }
+                    move(plug, a, b);
+                    decrypt(plug, _trial);
+                    double delta = delta(_plain, _trial);
+                    if (delta > 0 || temp > 0
+                        && _random.nextDouble() < Math.exp(delta / temp)) {
+                        System.arraycopy(_trial, 0, _plain, 0,
+                                         _plain.length);
+                        _score += delta;
+                        if (_score > _bestScore + EPSILON) {
+                            _bestScore = _score;
+                            System.arraycopy(plug, 0, _best, 0, _size);
+                            improved = true;
+                        }
+                    } else {
+                        plug[pa] = a;
+                        plug[pb] = b;
+                        plug[a] = pa;
+                        plug[b] = pb;
+                    }
+                }
+            }
+            return improved;
+        }
+
+        /** Source of random choices. */
+        private final Random _random;
+        /** Current plugboard. */
+        private final int[] _plug;
+        /** Best plugboard so far. */
+        private final int[] _best;
+        /** Decryption under _plug. */
+        private final int[] _plain;
+        /** Decryption under a trial move. */
+        private final int[] _trial;
+        /** Score of _plain. */
+        private double _score;
+        /** Score of the decryption under _best. */
+        private double _bestScore;
+    }
+
+    /** Change plugboard PLUG so that letters A and B, after being freed
+     *  from their partners, are joined to each other (so that A is left
+     *  free if B is A). */
+    private static void move(int[] plug, int a, int b) {
+        int pa = plug[a], pb = plug[b];
+        plug[pa] = pa;
+        plug[pb] = pb;
+        plug[a] = b;
+        plug[b] = a;
+    }
+
+    /** Return the change in N-gram score from decryption PLAIN to
+     *  decryption TRIAL, rescoring only the N-grams that cover letters
+     *  that differ. */
+    private double delta(int[] plain, int[] trial) {
+        int n = _ngrams.length();
+        int last = plain.length - n;
+        double delta = 0;
+        int next = 0;
+        for (int i = 0; i < plain.length; i += 1) {
+            if (plain[i] != trial[i]) {
+                int hi = Math.min(i, last);
+                for (int s = Math.max(next, i - n + 1); s <= hi; s += 1) {
+                    delta += _ngrams.window(trial, s)
+                        - _ngrams.window(plain, s);
+                }
+                next = Math.max(next, hi + 1);
+            }
+        }
+        return delta;
+    }
+
+    /** Return plugboard PLUG in cycle notation. */
+    private String cycles(int[] plug) {
+        Alphabet alpha = _ngrams.alphabet();
+        StringBuilder result = new StringBuilder();
+        for (int x = 0; x < _size; x += 1) {
+            if (x < plug[x]) {
+                result.append(result.length() == 0 ? "(" : " (")
+                    .appendCodePoint(alpha.toCodePoint(x))
+                    .appendCodePoint(alpha.toCodePoint(plug[x]))
+                    .append(")");
+            }
+        }
+        return result.toString();
+    }
+
+    /** Number of rounds over which the temperature falls to zero. */
+    private static final int ROUNDS = 30;
+
+    /** Initial temperature, in units of log10 probability. */
+    private static final double START_TEMP = 2.0;
+
+    /** Smallest rise in score that counts as an improvement. */
+    private static final double EPSILON = 1e-6;
+
+    /** Names of the rotors. */
+    private final String[] _rotors;
+
+    /** Initial setting of the rotors. */
+    private final String _setting;
+
+    /** The message. */
+    private final int[] _ciphertext;
+
+    /** The scoring table. */
+    private final NGrams _ngrams;
+
+    /** Alphabet size. */
+    private final int _size;
+
+    /** The map applied by the rotors at each position of the message. */
+    private final int[][] _cores;
+}
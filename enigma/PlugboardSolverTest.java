@@ -0,0 +1,127 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the NGrams and PlugboardSolver
+ *  classes.
+ *  @author Cheng Zhu
+ */
+public class PlugboardSolverTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /** Rotors used to encrypt the test message. */
+    private static final String[] ROTORS = { "B", "III", "V" };
+
+    /** Plugboard used to encrypt the test message. */
+    private static final String PLUGBOARD =
+        "(AR) (BQ) (CL) (DW) (EV) (FJ) (GK) (HN) (OX) (TZ)";
+
+    /** Return a machine from CONFIG with ROTORS at setting KW and
+     *  plugboard PLUGS. */
+    private static Machine machine(Configuration config, String plugs) {
+        Machine mach = config.newMachine();
+        mach.insertRotors(ROTORS);
+        mach.setRotors("KW");
+        mach.setPlugboard(new Permutation(plugs, config.alphabet()));
+        return mach;
+    }
+
+    @Test
+    public void testNGrams() {
+        NGrams grams = new NGrams(UPPER, 2, "AB AB*BA");
+        assertEquals(2, grams.length());
+        int[] text = indices("ABA", UPPER);
+        assertEquals(Math.log10(2.0 / 3), grams.window(text, 0), 1e-6);
+        assertEquals(Math.log10(1.0 / 3), grams.window(text, 1), 1e-6);
+        assertTrue(grams.window(indices("AA", UPPER), 0)
+                   < Math.log10(1.0 / 3));
+        assertEquals(Math.log10(2.0 / 9), grams.score(text, 3), 1e-6);
+    }
+
+    @Test
+    public void testNGramsSupplementary() {
+        String upper = "\ud801\udc00\ud801\udc01";
+        String lower = "\ud801\udc28\ud801\udc29";
+        Alphabet alpha = new Alphabet(upper);
+        NGrams grams = new NGrams(alpha, 2,
+                                  lower + " " + lower + "*"
+                                  + new StringBuilder(upper).reverse()
+                                  .toString());
+        int[] text = alpha.toInts(upper + upper.substring(0, 2));
+        assertEquals(Math.log10(2.0 / 3), grams.window(text, 0), 1e-6);
+        assertEquals(Math.log10(1.0 / 3), grams.window(text, 1), 1e-6);
+        assertEquals(Math.log10(2.0 / 9), grams.score(text, 3), 1e-6);
+    }
+
+    @Test
+    public void testNGramOrders() {
+        NGrams grams = new NGrams(UPPER, 4, ENGLISH.toLowerCase());
+        int[] text = indices(ENGLISH.substring(0, 40), UPPER);
+        for (int k = 1; k <= 4; k += 1) {
+            float[] table = grams.table(k);
+            double expected = 0;
+            for (int i = 0; i + k <= text.length; i += 1) {
+                int index = 0;
+                for (int j = 0; j < k; j += 1) {
+                    index = index * 26 + text[i + j];
+                }
+                expected += table[index];
+            }
+            assertEquals(expected, grams.score(text, text.length, k), 1e-3);
+        }
+        assertEquals(grams.score(text, 40, 4), grams.score(text, 40), 0);
+    }
+
+    @Test
+    public void testNGramCache() throws IOException {
+        Path dir = Files.createTempDirectory("ngrams");
+        Path corpus = dir.resolve("corpus.txt");
+        Path cache = dir.resolve("corpus.cache");
+        try {
+            Files.write(corpus, ENGLISH.getBytes(LineInput.CHARSET));
+            int[] text = indices(ENGLISH.substring(100, 200), UPPER);
+            NGrams counted = NGrams.load(UPPER, 3, corpus, cache);
+            assertTrue(Files.exists(cache));
+            assertTrue(Files.size(cache) < Files.size(corpus) * 20);
+            double score = counted.score(text, text.length);
+            NGrams cached = NGrams.load(UPPER, 3, corpus, cache);
+            assertEquals(score, cached.score(text, text.length), 0);
+            assertEquals(counted.score(text, text.length, 1),
+                         cached.score(text, text.length, 1), 0);
+            Files.write(corpus, "ABABABAB".getBytes(LineInput.CHARSET));
+            NGrams recounted = NGrams.load(UPPER, 3, corpus, cache);
+            assertTrue(recounted.score(text, text.length) < score);
+        } finally {
+            Files.deleteIfExists(cache);
+            Files.deleteIfExists(corpus);
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testSolve() {
+        Configuration config = config(SMALL_CONFIG);
+        String plain = ENGLISH.substring(50, 250);
+        String cipher = machine(config, PLUGBOARD).convert(plain);
+        PlugboardSolver solver =
+            new PlugboardSolver(config, ROTORS, "KW",
+                                indices(cipher, config.alphabet()),
+                                new NGrams(config.alphabet(), 3, ENGLISH));
+        Candidate best = solver.solve(4, 1, new ForkJoinPool(4));
+        assertEquals(plain,
+                     machine(config, best.plugboard()).convert(cipher));
+        assertEquals("* B III V KW " + PLUGBOARD, best.toString());
+    }
+}
@@ -11,9 +11,6 @@ class Reflector extends FixedRotor {
      * is PERM. */
     Reflector(String name, Permutation perm) {
         super(name, perm);
-        _name = name;
-        _position = 0;
-        _positionChar = alphabet().toChar(0);
     }
 
     @Override
@@ -25,11 +22,17 @@ class Reflector extends FixedRotor {
 
     @Override
     void set(char cposn) {
-        if (Character.compare(cposn, _positionChar) != 0) {
+        if (cposn != alphabet().toChar(0)) {
             throw error("reflector has only one position");
         }
     }
 
+    /** Return a new reflector like me. */
+    @Override
+    Rotor copy() {
+        return new Reflector(name(), permutation());
+    }
+
     /** Return true iff I reflect. */
     @Override
     boolean reflecting() {
@@ -39,16 +42,6 @@ class Reflector extends FixedRotor {
     /** return the name of the reflector. */
     @Override
     public String toString() {
-        return "Reflector " + _name;
+        return "Reflector " + name();
     }
-
-    /** My name. */
-    private final String _name;
-
-    /** The int position of the rotor. */
-    private final int _position;
-
-    /** The char position of the rotor. */
-    private final char _positionChar;
-
 }
@@ -12,7 +12,6 @@ class Rotor {
         _name = name;
         _permutation = perm;
         _position = 0;
-        _positionChar = alphabet().toChar(0);
     }
 
     /** Return my name. */
@@ -53,13 +52,11 @@ class Rotor {
     /** Set setting() to POSN.  */
     void set(int posn) {
         _position = posn;
-        _positionChar = alphabet().toChar(posn);
     }
 
     /** Set setting() to character CPOSN. */
     void set(char cposn) {
         _position = alphabet().toInt(cposn);
-        _positionChar = cposn;
     }
 
 
@@ -70,7 +67,7 @@ class Rotor {
         result = permutation().wrap(permutation()
                 .permute(permutation().wrap(p + _position)) - _position);
         if (Main.verbose()) {
-            System.err.printf("%c -> ", alphabet().toChar(result));
+            System.err.printf("%c -> ", alphabet().toCodePoint(result));
         }
         return result;
     }
@@ -82,7 +79,7 @@ class Rotor {
         result = permutation().wrap(permutation().invert(permutation()
                 .wrap(e + _position)) - _position);
         if (Main.verbose()) {
-            System.err.printf("%c -> ", alphabet().toChar(result));
+            System.err.printf("%c -> ", alphabet().toCodePoint(result));
         }
         return result;
     }
@@ -96,13 +93,25 @@ class Rotor {
     /** Returns true iff I am positioned to allow the rotor to my left
      *  to advance. */
     boolean atNotch() {
-        return notches().indexOf(_positionChar) != -1;
+        return notchAt(_position);
+    }
+
+    /** Returns true iff I would be at a notch in setting POSN, where
+     *  0 <= POSN < size().  By default, I have no notches. */
+    boolean notchAt(int posn) {
+        return false;
     }
 
     /** Advance me one position, if possible. By default, does nothing. */
     void advance() {
     }
 
+    /** Return a new rotor like me, in its 0 setting, that shares my
+     *  permutation. */
+    Rotor copy() {
+        return new Rotor(_name, _permutation);
+    }
+
     @Override
     public String toString() {
         return "Rotor " + _name;
@@ -116,7 +125,4 @@ class Rotor {
 
     /** The int position of the rotor. */
     private int _position;
-
-    /** The char position of the rotor. */
-    private char _positionChar;
 }
@@ -0,0 +1,68 @@
+package enigma;
+
+import java.util.Collection;
+import java.util.HashMap;
+
+import static enigma.EnigmaException.*;
+
+/** An indexed collection of rotors.  Each rotor name is interned once to
+ *  a small integer id (its position in the collection it was built
+ *  from), so that rotors can be found by name in constant time and
+ *  referred to thereafter by id.
+ *  @author Cheng Zhu
+ */
+class RotorCatalog {
+
+    /** A catalog of ROTORS, whose ids follow their iteration order.  No
+     *  two rotors may have the same name. */
+    RotorCatalog(Collection<Rotor> rotors) {
+        _rotors = rotors.toArray(new Rotor[0]);
+        _ids = new HashMap<>(2 * _rotors.length);
+        for (int id = 0; id < _rotors.length; id += 1) {
+            if (_ids.put(_rotors[id].name(), id) != null) {
+                throw error("duplicate rotor name %s", _rotors[id].name());
+            }
+        }
+    }
+
+    /** Return the number of rotors in the catalog. */
+    int size() {
+        return _rotors.length;
+    }
+
+    /** Return the id of the rotor named NAME, or -1 if there is none. */
+    int id(String name) {
+        Integer id = _ids.get(name);
+        return id == null ? -1 : id;
+    }
+
+    /** Return the rotor whose id is ID. */
+    Rotor get(int id) {
+        return _rotors[id];
+    }
+
+    /** Return the rotor named NAME, or null if there is none. */
+    Rotor get(String name) {
+        int id = id(name);
+        return id < 0 ? null : _rotors[id];
+    }
+
+    /** Return the ids of the rotors named NAMES.  Throws an exception if
+     *  any is not in the catalog. */
+    int[] ids(String[] names) {
+        int[] result = new int[names.length];
+        for (int k = 0; k < names.length; k += 1) {
+            result[k] = id(names[k]);
+            if (result[k] < 0) {
+                throw error("unknown rotor %s", names[k]);
+            }
+        }
+        return result;
+    }
+
+    /** Rotors, indexed by id. */
+    private final Rotor[] _rotors;
+
+    /** Ids, indexed by rotor name. */
+    private final HashMap<String, Integer> _ids;
+}
@@ -0,0 +1,678 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Generates, for a given rotor order, a hidden class that steps and
+ *  converts with those rotors: an Engine.  The generated code has the
+ *  loop over the slots unrolled, so that each rotor's stepping and
+ *  passes are straight-line code, free of calls, branches, and
+ *  reductions by division, and holds each rotor's tables in static final
+ *  fields, which the JIT treats as constants.  Engines also count notch
+ *  events, in local variables, so that metrics and sampled Flight
+ *  Recorder events observe the same code that runs without them.
+ *  Engines are cached by rotor order.
+ *
+ *  The class file is assembled directly.  It is given class-file
+ *  version 49, whose verifier infers types itself, so that no stack map
+ *  frames need be computed.  Where hidden classes cannot be defined, or
+ *  a machine has too many slots, engine returns null and callers use
+ *  the generic RotorTree.
+ *  @author Cheng Zhu
+ */
+final class RotorCompiler {
+
+    /** Stepping and conversion specialized to one rotor order. */
+    interface Engine {
+
+        /** Store in RESULT[I] the conversion of MSG[I] (as alphabet
+         *  indices), for each I < LENGTH, stepping the rotors before each
+         *  character as a machine would.  The rotors start at the
+         *  settings POSN (indexed by slot, POSN[0] being the
+         *  reflector's), which are updated.  PLUGBOARD is the plugboard,
+         *  as a table.  Add to EVENTS[K] the number of steps in which the
+         *  pawl of slot K was engaged (its notch events), and return the
+         *  number of steps in which any pawl was. */
+        int convert(int[] posn, int[] plugboard, int[] msg, int[] result,
+                    int length, long[] events);
+    }
+
+    /** Not instantiable. */
+    private RotorCompiler() {
+    }
+
+    /** Return an engine for the rotors SLOTS (SLOTS[0] being the
+     *  reflector), of which the rightmost PAWLS have pawls, or null if
+     *  none can be generated. */
+    static synchronized Engine engine(Rotor[] slots, int pawls) {
+        if (_unavailable || slots.length > MAX_SLOTS
+            || slots[0].size() > Short.MAX_VALUE) {
+            return null;
+        }
+        Key key = new Key(slots, pawls);
+        Engine result = CACHE.get(key);
+        if (result == null) {
+            try {
+                result = compile(slots, pawls);
+            } catch (LinkageError | ReflectiveOperationException excp) {
+                if (Main.verbose()) {
+                    System.err.printf("rotor compiler unavailable: %s%n",
+                                      excp);
+                }
+                _unavailable = true;
+                return null;
+            }
+            CACHE.put(key, result);
+        }
+        return result;
+    }
+
+    /** Return a new engine for the rotors SLOTS with PAWLS pawls.  Throws
+     *  LinkageError or ReflectiveOperationException where the class
+     *  cannot be defined or instantiated. */
+    private static Engine compile(Rotor[] slots, int pawls)
+        throws ReflectiveOperationException {
+        int size = slots[0].size();
+        List<int[]> tables = new ArrayList<>();
+        for (Rotor r : slots) {
+            int[] wiring = r.permutation().table();
+            int[] inverse = r.permutation().inverseTable();
+            int[] forward = new int[2 * size];
+            int[] backward = new int[2 * size];
+            int[] notches = new int[size];
+            for (int x = 0; x < size; x += 1) {
+                forward[x] = forward[x + size] = wiring[x];
+                backward[x] = backward[x + size] = inverse[x];
+                notches[x] = r.notchAt(x) ? 1 : 0;
+            }
+            tables.add(forward);
+            tables.add(backward);
+            tables.add(notches);
+        }
+        byte[] bytes;
+        try {
+            bytes = new Generator(slots, pawls).generate();
+        } catch (IOException excp) {
+            throw new AssertionError(excp);
+        }
+        MethodHandles.Lookup lookup = MethodHandles.lookup()
+            .defineHiddenClassWithClassData(bytes, tables.toArray(), true);
+        return lookup.lookupClass().asSubclass(Engine.class)
+            .getDeclaredConstructor().newInstance();
+    }
+
+    /** The key under which an engine is cached: everything about the
+     *  rotors that the engine uses.  Rotors' permutations are compared by
+     *  identity, which suffices since PermutationStore gives rotors with
+     *  the same wiring the same Permutation, so that making a key and
+     *  comparing keys take time proportional to the number of slots and
+     *  notches rather than to the size of every table. */
+    private static final class Key {
+
+        /** The key of an engine for the rotors SLOTS with PAWLS pawls. */
+        Key(Rotor[] slots, int pawls) {
+            _pawls = pawls;
+            _perms = new Permutation[slots.length];
+            _notches = new String[slots.length];
+            _rotates = new boolean[slots.length];
+            int hash = pawls;
+            for (int k = 0; k < slots.length; k += 1) {
+                _perms[k] = slots[k].permutation();
+                _notches[k] = slots[k].notches();
+                _rotates[k] = slots[k].rotates();
+                hash = 31 * (31 * hash + System.identityHashCode(_perms[k]))
+                    + _notches[k].hashCode();
+            }
+            _hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            if (_hash != other._hash || _pawls != other._pawls
+                || _perms.length != other._perms.length
+                || !Arrays.equals(_rotates, other._rotates)) {
+                return false;
+            }
+            for (int k = 0; k < _perms.length; k += 1) {
+                if (_perms[k] != other._perms[k]
+                    || !_notches[k].equals(other._notches[k])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return _hash;
+        }
+
+        /** Number of pawls. */
+        private final int _pawls;
+
+        /** The permutation of each slot. */
+        private final Permutation[] _perms;
+
+        /** The notches of each slot. */
+        private final String[] _notches;
+
+        /** Whether each slot rotates. */
+        private final boolean[] _rotates;
+
+        /** My hash code. */
+        private final int _hash;
+    }
+
+    /** Assembles the class file of one engine.  Its convert method keeps
+     *  the setting of each slot K, whether its pawl is engaged, and its
+     *  count of notch events in local variables. */
+    private static final class Generator {
+
+        /** A generator for the rotors SLOTS with PAWLS pawls. */
+        Generator(Rotor[] slots, int pawls) {
+            _numSlots = slots.length;
+            _size = slots[0].size();
+            _firstPawl = _numSlots - pawls;
+            _rotates = new boolean[_numSlots];
+            for (int k = 0; k < _numSlots; k += 1) {
+                _rotates[k] = slots[k].rotates();
+            }
+        }
+
+        /** Return the class file. */
+        byte[] generate() throws IOException {
+            int thisClass = classRef(NAME);
+            int superClass = classRef("java/lang/Object");
+            int engine = classRef("enigma/RotorCompiler$Engine");
+            int[] fields = new int[3 * _numSlots];
+            for (int j = 0; j < fields.length; j += 1) {
+                fields[j] = utf8("t" + j);
+            }
+            int tableType = utf8("[I");
+            byte[] init = init(superClass);
+            byte[] clinit = clinit(thisClass, fields.length);
+            byte[] convert = convert(thisClass);
+            int initName = utf8("<init>"), voidType = utf8("()V");
+            int clinitName = utf8("<clinit>");
+            int convertName = utf8("convert");
+            int convertType = utf8("([I[I[I[II[J)I");
+            int code = utf8("Code");
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xcafebabe);
+            out.writeShort(0);
+            out.writeShort(VERSION);
+            out.writeShort(_pool.size() + 1);
+            for (byte[] entry : _pool) {
+                out.write(entry);
+            }
+            out.writeShort(ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(1);
+            out.writeShort(engine);
+            out.writeShort(fields.length);
+            for (int field : fields) {
+                out.writeShort(ACC_PRIVATE | ACC_STATIC | ACC_FINAL);
+                out.writeShort(field);
+                out.writeShort(tableType);
+                out.writeShort(0);
+            }
+            out.writeShort(3);
+            method(out, ACC_PUBLIC, initName, voidType, code, init, 1, 1);
+            method(out, ACC_STATIC, clinitName, voidType, code, clinit,
+                   3, 1);
+            method(out, ACC_PUBLIC, convertName, convertType, code,
+                   convert, MAX_STACK, L_POSN0 + 3 * _numSlots);
+            out.writeShort(0);
+            out.flush();
+            return bytes.toByteArray();
+        }
+
+        /** Return the code of the constructor. */
+        private byte[] init(int superClass) {
+            Code c = new Code();
+            c.op(ALOAD_0);
+            c.op(INVOKESPECIAL).u2(methodRef(superClass, "<init>", "()V"));
+            c.op(RETURN);
+            return c.bytes();
+        }
+
+        /** Return the code of the static initializer, which sets the
+         *  COUNT table fields from the class data of THISCLASS. */
+        private byte[] clinit(int thisClass, int count) {
+            Code c = new Code();
+            int handles = classRef("java/lang/invoke/MethodHandles");
+            c.op(INVOKESTATIC)
+                .u2(methodRef(handles, "lookup",
+                              "()Ljava/lang/invoke/MethodHandles$Lookup;"));
+            c.op(LDC_W).u2(string("_"));
+            c.op(LDC_W).u2(classRef("[Ljava/lang/Object;"));
+            c.op(INVOKESTATIC)
+                .u2(methodRef(handles, "classData",
+                              "(Ljava/lang/invoke/MethodHandles$Lookup;"
+                              + "Ljava/lang/String;Ljava/lang/Class;)"
+                              + "Ljava/lang/Object;"));
+            c.op(CHECKCAST).u2(classRef("[Ljava/lang/Object;"));
+            c.op(ASTORE_0);
+            int tableClass = classRef("[I");
+            for (int j = 0; j < count; j += 1) {
+                c.op(ALOAD_0);
+                c.constant(j);
+                c.op(AALOAD);
+                c.op(CHECKCAST).u2(tableClass);
+                c.op(PUTSTATIC).u2(table(thisClass, j));
+            }
+            c.op(RETURN);
+            return c.bytes();
+        }
+
+        /** Return the code of convert, whose tables are in THISCLASS.
+         *  The notch events of each slot K are counted in a local,
+         *  events(K), and the steps with any pawl engaged in
+         *  events(0), since slot 0 never has one. */
+        private byte[] convert(int thisClass) {
+            Code c = new Code();
+            int n = _numSlots;
+            for (int k = 0; k < n; k += 1) {
+                c.op(ALOAD).u1(L_POSN);
+                c.constant(k);
+                c.op(IALOAD);
+                c.op(ISTORE).u1(posn(k));
+                c.constant(0);
+                c.op(ISTORE).u1(events(k));
+            }
+            c.constant(0);
+            c.op(ISTORE).u1(L_I);
+            int top = c.position();
+            c.op(ILOAD).u1(L_I);
+            c.op(ILOAD).u1(L_LENGTH);
+            int exit = c.position();
+            c.op(IF_ICMPGE).u2(0);
+
+            boolean any = false;
+            for (int k = 1; k < n; k += 1) {
+                if (engages(k)) {
+                    c.op(GETSTATIC).u2(table(thisClass, 3 * k + 2));
+                    c.op(ILOAD).u1(posn(k));
+                    c.op(IALOAD);
+                    c.op(ISTORE).u1(engaged(k));
+                    count(c, k);
+                    c.op(ILOAD).u1(engaged(k));
+                    if (any) {
+                        c.op(IOR);
+                    }
+                    any = true;
+                }
+            }
+            if (any) {
+                c.op(ILOAD).u1(events(0));
+                c.op(IADD);
+                c.op(ISTORE).u1(events(0));
+            }
+            for (int k = 1; k < n; k += 1) {
+                step(c, k);
+            }
+
+            c.op(ALOAD).u1(L_PLUGBOARD);
+            c.op(ALOAD).u1(L_MSG);
+            c.op(ILOAD).u1(L_I);
+            c.op(IALOAD);
+            c.op(IALOAD);
+            c.op(ISTORE).u1(L_X);
+            for (int k = n - 1; k >= 0; k -= 1) {
+                pass(c, table(thisClass, 3 * k), k);
+            }
+            for (int k = 1; k < n; k += 1) {
+                pass(c, table(thisClass, 3 * k + 1), k);
+            }
+            c.op(ALOAD).u1(L_RESULT);
+            c.op(ILOAD).u1(L_I);
+            c.op(ALOAD).u1(L_PLUGBOARD);
+            c.op(ILOAD).u1(L_X);
+            c.op(IALOAD);
+            c.op(IASTORE);
+            c.op(IINC).u1(L_I).u1(1);
+            c.op(GOTO).u2(top - c.position() + 1);
+            c.patch(exit + 1, c.position() - exit);
+
+            for (int k = 1; k < n; k += 1) {
+                if (_rotates[k]) {
+                    c.op(ALOAD).u1(L_POSN);
+                    c.constant(k);
+                    c.op(ILOAD).u1(posn(k));
+                    c.op(IASTORE);
+                }
+                if (engages(k)) {
+                    c.op(ALOAD).u1(L_EVENTS);
+                    c.constant(k);
+                    c.op(DUP2);
+                    c.op(LALOAD);
+                    c.op(ILOAD).u1(events(k));
+                    c.op(I2L);
+                    c.op(LADD);
+                    c.op(LASTORE);
+                }
+            }
+            c.op(ILOAD).u1(events(0));
+            c.op(IRETURN);
+            return c.bytes();
+        }
+
+        /** Add to C the code that adds one to the notch events of slot K
+         *  if its pawl is engaged. */
+        private void count(Code c, int k) {
+            c.op(ILOAD).u1(events(k));
+            c.op(ILOAD).u1(engaged(k));
+            c.op(IADD);
+            c.op(ISTORE).u1(events(k));
+        }
+
+        /** Add to C the code that advances slot K if it moves this step:
+         *  the fast rotor always moves, and an engaged pawl moves its own
+         *  slot and the one to its left.  The setting P becomes P + 1,
+         *  less the alphabet size if that is not below it. */
+        private void step(Code c, int k) {
+            boolean fast = k == _numSlots - 1;
+            if (!_rotates[k] || !fast && !engages(k) && !engages(k + 1)) {
+                return;
+            }
+            c.op(ILOAD).u1(posn(k));
+            if (fast) {
+                c.constant(1);
+            } else if (engages(k) && engages(k + 1)) {
+                c.op(ILOAD).u1(engaged(k));
+                c.op(ILOAD).u1(engaged(k + 1));
+                c.op(IOR);
+            } else {
+                c.op(ILOAD).u1(engaged(engages(k) ? k : k + 1));
+            }
+            c.op(IADD);
+            c.op(ISTORE).u1(posn(k));
+            c.op(ILOAD).u1(posn(k));
+            c.constant(_size);
+            c.constant(_size - 1);
+            c.op(ILOAD).u1(posn(k));
+            c.op(ISUB);
+            c.constant(31);
+            c.op(ISHR);
+            c.op(IAND);
+            c.op(ISUB);
+            c.op(ISTORE).u1(posn(k));
+        }
+
+        /** Add to C the code that passes the letter in flight through
+         *  the doubled table in field TABLE at the setting of slot K:
+         *  x becomes TABLE[x + P] - P, plus the alphabet size if that is
+         *  negative. */
+        private void pass(Code c, int table, int k) {
+            c.op(GETSTATIC).u2(table);
+            c.op(ILOAD).u1(L_X);
+            c.op(ILOAD).u1(posn(k));
+            c.op(IADD);
+            c.op(IALOAD);
+            c.op(ILOAD).u1(posn(k));
+            c.op(ISUB);
+            c.op(ISTORE).u1(L_X);
+            c.op(ILOAD).u1(L_X);
+            c.op(ILOAD).u1(L_X);
+            c.constant(31);
+            c.op(ISHR);
+            c.constant(_size);
+            c.op(IAND);
+            c.op(IADD);
+            c.op(ISTORE).u1(L_X);
+        }
+
+        /** Return true iff slot K has a pawl that can engage: one with a
+         *  rotating rotor to its left. */
+        private boolean engages(int k) {
+            return k >= _firstPawl && k > 0 && k < _numSlots
+                && _rotates[k - 1];
+        }
+
+        /** Return the local variable holding the setting of slot K. */
+        private int posn(int k) {
+            return L_POSN0 + k;
+        }
+
+        /** Return the local variable holding whether the pawl of slot K
+         *  is engaged. */
+        private int engaged(int k) {
+            return L_POSN0 + _numSlots + k;
+        }
+
+        /** Return the local variable counting the notch events of slot K,
+         *  or for K = 0, the steps in which any pawl was engaged. */
+        private int events(int k) {
+            return L_POSN0 + 2 * _numSlots + k;
+        }
+
+        /** Write to OUT a method with access flags ACCESS, name NAME,
+         *  and descriptor TYPE (constant pool indices), whose CODE
+         *  attribute (named by pool index CODENAME) is CODE with at most
+         *  STACK operands and LOCALS local variables. */
+        private static void method(DataOutputStream out, int access,
+                                   int name, int type, int codeName,
+                                   byte[] code, int stack, int locals)
+            throws IOException {
+            out.writeShort(access);
+            out.writeShort(name);
+            out.writeShort(type);
+            out.writeShort(1);
+            out.writeShort(codeName);
+            out.writeInt(12 + code.length);
+            out.writeShort(stack);
+            out.writeShort(locals);
+            out.writeInt(code.length);
+            out.write(code);
+            out.writeShort(0);
+            out.writeShort(0);
+        }
+
+        /** Return the pool index of the field reference to table J of
+         *  class THISCLASS. */
+        private int table(int thisClass, int j) {
+            return ref(9, thisClass, "t" + j, "[I");
+        }
+
+        /** Return the pool index of a reference to method NAME, of
+         *  descriptor TYPE, of the class at pool index OWNER. */
+        private int methodRef(int owner, String name, String type) {
+            return ref(10, owner, name, type);
+        }
+
+        /** Return the pool index of a member reference with tag TAG to
+         *  NAME, of descriptor TYPE, of the class at pool index OWNER. */
+        private int ref(int tag, int owner, String name, String type) {
+            int nameAndType = entry(12, utf8(name), utf8(type));
+            return entry(tag, owner, nameAndType);
+        }
+
+        /** Return the pool index of the class named NAME. */
+        private int classRef(String name) {
+            return entry(7, utf8(name));
+        }
+
+        /** Return the pool index of the string constant TEXT. */
+        private int string(String text) {
+            return entry(8, utf8(text));
+        }
+
+        /** Return the pool index of the UTF-8 entry TEXT. */
+        private int utf8(String text) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try {
+                DataOutputStream out = new DataOutputStream(bytes);
+                out.writeByte(1);
+                out.writeUTF(text);
+            } catch (IOException excp) {
+                throw new AssertionError(excp);
+            }
+            return intern(bytes.toByteArray());
+        }
+
+        /** Return the pool index of the entry with tag TAG whose contents
+         *  are the two-byte pool indices INDICES. */
+        private int entry(int tag, int... indices) {
+            byte[] entry = new byte[1 + 2 * indices.length];
+            entry[0] = (byte) tag;
+            for (int i = 0; i < indices.length; i += 1) {
+                entry[1 + 2 * i] = (byte) (indices[i] >> 8);
+                entry[2 + 2 * i] = (byte) indices[i];
+            }
+            return intern(entry);
+        }
+
+        /** Return the pool index of ENTRY, adding it if need be. */
+        private int intern(byte[] entry) {
+            String key = Arrays.toString(entry);
+            Integer index = _indices.get(key);
+            if (index == null) {
+                _pool.add(entry);
+                index = _pool.size();
+                _indices.put(key, index);
+            }
+            return index;
+        }
+
+        /** Number of slots. */
+        private final int _numSlots;
+
+        /** Alphabet size. */
+        private final int _size;
+
+        /** Slot number of the leftmost pawl. */
+        private final int _firstPawl;
+
+        /** Whether each slot's rotor can move. */
+        private final boolean[] _rotates;
+
+        /** The constant pool entries, in order (from index 1). */
+        private final List<byte[]> _pool = new ArrayList<>();
+
+        /** Pool index of each entry, keyed by its contents. */
+        private final HashMap<String, Integer> _indices = new HashMap<>();
+    }
+
+    /** The body of a method being assembled. */
+    private static final class Code {
+
+        /** Append opcode OP, returning me. */
+        Code op(int op) {
+            return u1(op);
+        }
+
+        /** Append the byte B, returning me. */
+        Code u1(int b) {
+            if (_length == _bytes.length) {
+                _bytes = Arrays.copyOf(_bytes, 2 * _length);
+            }
+            _bytes[_length] = (byte) b;
+            _length += 1;
+            return this;
+        }
+
+        /** Append the two-byte value V, returning me. */
+        Code u2(int v) {
+            return u1(v >> 8).u1(v);
+        }
+
+        /** Append code pushing the int constant V, which must fit in a
+         *  short. */
+        void constant(int v) {
+            if (v >= -1 && v <= 5) {
+                op(ICONST_0 + v);
+            } else if (v >= Byte.MIN_VALUE && v <= Byte.MAX_VALUE) {
+                op(BIPUSH).u1(v);
+            } else {
+                op(SIPUSH).u2(v);
+            }
+        }
+
+        /** Return the offset of the next byte. */
+        int position() {
+            return _length;
+        }
+
+        /** Set the two bytes at offset AT to V. */
+        void patch(int at, int v) {
+            _bytes[at] = (byte) (v >> 8);
+            _bytes[at + 1] = (byte) v;
+        }
+
+        /** Return my bytes. */
+        byte[] bytes() {
+            return Arrays.copyOf(_bytes, _length);
+        }
+
+        /** My bytes, in _bytes[0 .. _length-1]. */
+        private byte[] _bytes = new byte[256];
+
+        /** Number of bytes in _bytes. */
+        private int _length;
+    }
+
+    /** Most slots for which engines are generated, so that every local
+     *  variable index fits in a byte and every branch in a short. */
+    private static final int MAX_SLOTS = 80;
+
+    /** Most engines cached. */
+    private static final int CACHE_SIZE = 64;
+
+    /** Cached engines by key, least recently used first. */
+    private static final Map<Key, Engine> CACHE =
+        new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Engine> e) {
+                return size() > CACHE_SIZE;
+            }
+        };
+
+    /** True once generation has failed, as where hidden classes are not
+     *  supported. */
+    private static boolean _unavailable;
+
+    /** Binary name of generated classes. */
+    private static final String NAME = "enigma/CompiledRotors";
+
+    /** Class-file version of generated classes. */
+    private static final int VERSION = 49;
+
+    /** Most operands any generated method pushes. */
+    private static final int MAX_STACK = 8;
+
+    /** Local variables of convert. */
+    private static final int
+        L_POSN = 1, L_PLUGBOARD = 2, L_MSG = 3, L_RESULT = 4, L_LENGTH = 5,
+        L_EVENTS = 6, L_I = 7, L_X = 8, L_POSN0 = 9;
+
+    /** Access flags. */
+    private static final int
+        ACC_PUBLIC = 0x1, ACC_PRIVATE = 0x2, ACC_STATIC = 0x8,
+        ACC_FINAL = 0x10, ACC_SUPER = 0x20;
+
+    /** Opcodes. */
+    private static final int
+        ICONST_0 = 0x03, BIPUSH = 0x10, SIPUSH = 0x11, LDC_W = 0x13,
+        ILOAD = 0x15, ALOAD = 0x19, ALOAD_0 = 0x2a, IALOAD = 0x2e,
+        AALOAD = 0x32, ISTORE = 0x36, ASTORE_0 = 0x4b, IASTORE = 0x4f,
+        LALOAD = 0x2f, LASTORE = 0x50, DUP2 = 0x5c, IADD = 0x60,
+        LADD = 0x61, ISUB = 0x64, ISHR = 0x7a, IAND = 0x7e, IOR = 0x80,
+        I2L = 0x85, IINC = 0x84, IF_ICMPGE = 0xa2, GOTO = 0xa7,
+        IRETURN = 0xac, RETURN = 0xb1, GETSTATIC = 0xb2, PUTSTATIC = 0xb3,
+        INVOKESPECIAL = 0xb7, INVOKESTATIC = 0xb8, CHECKCAST = 0xc0;
+}
@@ -0,0 +1,214 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the RotorCompiler class.
+ *  @author Cheng Zhu
+ */
+public class RotorCompilerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Return RESULT, after converting MSG with MACH a character at a
+     *  time, as Machine.convert(int) does. */
+    private static int[] convertEach(Machine mach, int[] msg, int[] result) {
+        for (int i = 0; i < msg.length; i += 1) {
+            result[i] = mach.convert(msg[i]);
+        }
+        return result;
+    }
+
+    /** Check that FAST, converting whole messages, and SLOW, converting
+     *  a character at a time, agree on the results and notch events of
+     *  random messages of RAND's choosing from settings SETTINGS. */
+    private static void compare(Machine fast, Machine slow,
+                                String[] settings, Random rand) {
+        int size = fast.alphabet().size();
+        for (String setting : settings) {
+            fast.setRotors(setting);
+            slow.setRotors(setting);
+            for (int part = 0; part < 4; part += 1) {
+                int[] msg = new int[rand.nextInt(3 * size * size)];
+                for (int i = 0; i < msg.length; i += 1) {
+                    msg[i] = rand.nextInt(size);
+                }
+                int[] got = new int[msg.length];
+                fast.convert(msg, got);
+                assertArrayEquals(convertEach(slow, msg, new int[msg.length]),
+                                  got);
+                assertArrayEquals(slow.takeNotchEvents(),
+                                  fast.takeNotchEvents());
+                for (int k = 1; k < fast.numRotors(); k += 1) {
+                    assertEquals(slow.getRotor(k).setting(),
+                                 fast.getRotor(k).setting());
+                }
+                int c = rand.nextInt(size);
+                assertEquals(slow.convert(c), fast.convert(c));
+            }
+        }
+    }
+
+    @Test
+    public void testNaval() {
+        Configuration config = config(NAVAL_CONFIG);
+        String[] rotors = { "B", "Beta", "III", "IV", "I" };
+        Machine fast = config.newMachine();
+        Machine slow = config.newMachine();
+        for (Machine mach : new Machine[] { fast, slow }) {
+            mach.insertRotors(rotors);
+            mach.setPlugboard(new Permutation("(YF) (ZH)", UPPER));
+        }
+        Rotor[] slots = new Rotor[rotors.length];
+        for (int k = 0; k < slots.length; k += 1) {
+            slots[k] = fast.getRotor(k);
+        }
+        assertNotNull(RotorCompiler.engine(slots, 3));
+        assertSame(RotorCompiler.engine(slots, 3),
+                   RotorCompiler.engine(slots, 3));
+        compare(fast, slow, new String[] { "AXLE", "AAQE", "ZZUD" },
+                new Random(44));
+
+        Machine other = config(NAVAL_CONFIG).newMachine();
+        other.insertRotors(rotors);
+        Rotor[] otherSlots = new Rotor[rotors.length];
+        for (int k = 0; k < slots.length; k += 1) {
+            otherSlots[k] = other.getRotor(k);
+        }
+        assertSame(RotorCompiler.engine(slots, 3),
+                   RotorCompiler.engine(otherSlots, 3));
+        assertNotSame(RotorCompiler.engine(slots, 3),
+                      RotorCompiler.engine(otherSlots, 2));
+
+        fast.setRotors("AXLE");
+        slow.setRotors("AXLE");
+        int[] want = convertEach(slow, indices(ENGLISH, UPPER),
+                                 new int[ENGLISH.length()]);
+        StringBuilder expected = new StringBuilder();
+        for (int c : want) {
+            expected.append(UPPER.toChar(c));
+        }
+        assertEquals(expected.toString(), fast.convert(ENGLISH));
+    }
+
+    /** Return a random permutation of the first SIZE characters of
+     *  UPPER_STRING plus digits in cycle notation, using RAND. */
+    private static String randomCycles(int size, Random rand) {
+        List<Character> chars = new ArrayList<>();
+        for (int x = 0; x < size; x += 1) {
+            chars.add(LETTERS.charAt(x));
+        }
+        StringBuilder result = new StringBuilder();
+        while (!chars.isEmpty()) {
+            result.append("(");
+            for (int n = 1 + rand.nextInt(chars.size()); n > 0; n -= 1) {
+                result.append(chars.remove(rand.nextInt(chars.size())));
+            }
+            result.append(")");
+        }
+        return result.toString();
+    }
+
+    /** Characters for random alphabets. */
+    private static final String LETTERS = UPPER_STRING + "0123456789";
+
+    @Test
+    public void testRandom() {
+        Random rand = new Random(1944);
+        for (int trial = 0; trial < 40; trial += 1) {
+            int size = 1 + rand.nextInt(LETTERS.length());
+            int numRotors = 2 + rand.nextInt(7);
+            int pawls = rand.nextInt(numRotors);
+            Alphabet alpha = new Alphabet(LETTERS.substring(0, size));
+            List<Rotor> all = new ArrayList<>();
+            String[] names = new String[numRotors];
+            names[0] = "R";
+            all.add(new Reflector("R",
+                                  new Permutation(randomCycles(size, rand),
+                                                  alpha)));
+            for (int k = 1; k < numRotors; k += 1) {
+                names[k] = "R" + k;
+                Permutation perm =
+                    new Permutation(randomCycles(size, rand), alpha);
+                if (k < numRotors - pawls || rand.nextInt(4) == 0) {
+                    all.add(new FixedRotor(names[k], perm));
+                } else {
+                    StringBuilder notches = new StringBuilder();
+                    for (int x = 0; x < size; x += 1) {
+                        if (rand.nextInt(3) == 0) {
+                            notches.append(alpha.toChar(x));
+                        }
+                    }
+                    all.add(new MovingRotor(names[k], perm,
+                                            notches.toString()));
+                }
+            }
+            List<Rotor> copies = new ArrayList<>();
+            for (Rotor r : all) {
+                copies.add(r.copy());
+            }
+            Machine fast = new Machine(alpha, numRotors, pawls, all);
+            Machine slow = new Machine(alpha, numRotors, pawls, copies);
+            Permutation plug =
+                new Permutation(rand.nextBoolean() ? "" : "(" + LETTERS
+                                .charAt(size - 1) + LETTERS.charAt(0) + ")",
+                                alpha);
+            for (Machine mach : new Machine[] { fast, slow }) {
+                mach.insertRotors(names);
+                mach.setPlugboard(plug);
+            }
+            String[] settings = new String[3];
+            for (int s = 0; s < settings.length; s += 1) {
+                StringBuilder setting = new StringBuilder();
+                for (int k = 1; k < numRotors; k += 1) {
+                    setting.append(alpha.toChar(rand.nextInt(size)));
+                }
+                settings[s] = setting.toString();
+            }
+            compare(fast, slow, settings, rand);
+        }
+    }
+
+    @Test
+    public void testTooManySlots() {
+        Alphabet alpha = new Alphabet("AB");
+        List<Rotor> all = new ArrayList<>();
+        String[] names = new String[150];
+        names[0] = "R";
+        all.add(new Reflector("R", new Permutation("(AB)", alpha)));
+        for (int k = 1; k < names.length; k += 1) {
+            names[k] = "R" + k;
+            all.add(new MovingRotor(names[k],
+                                    new Permutation("(AB)", alpha), "B"));
+        }
+        List<Rotor> copies = new ArrayList<>();
+        for (Rotor r : all) {
+            copies.add(r.copy());
+        }
+        Machine fast = new Machine(alpha, names.length, 10, all);
+        Machine slow = new Machine(alpha, names.length, 10, copies);
+        for (Machine mach : new Machine[] { fast, slow }) {
+            mach.insertRotors(names);
+            mach.setPlugboard(new Permutation("", alpha));
+        }
+        Rotor[] slots = new Rotor[names.length];
+        for (int k = 0; k < slots.length; k += 1) {
+            slots[k] = fast.getRotor(k);
+        }
+        assertNull(RotorCompiler.engine(slots, 10));
+        char[] setting = new char[names.length - 1];
+        Arrays.fill(setting, 'A');
+        compare(fast, slow, new String[] { new String(setting) },
+                new Random(3));
+    }
+}
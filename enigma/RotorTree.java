@@ -0,0 +1,352 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import static enigma.EnigmaException.*;
+
+/** The rotors of a machine, composed so that stepping and conversion
+ *  cost little more for a wide machine than for a narrow one.
+ *
+ *  Rotor #K at setting P acts as the map g_K(x) = W_K(x + P) - P (mod
+ *  the alphabet size), where W_K is its permutation.  The rotors as a
+ *  whole map x to f^-1(C(f(x))), where f is the fast rotor and C, the
+ *  core, is G^-1 R G: R is the reflector and G the composition of the
+ *  rotors between, applied from right to left.  G is kept in a balanced
+ *  (segment) tree whose leaves are those rotors and whose internal nodes
+ *  hold the composition of their subtrees, so a rotor that moves costs
+ *  one leaf-to-root path of table compositions.  As the fast rotor moves
+ *  on every step, it is applied directly and kept out of the tree.
+ *
+ *  Stepping uses carry propagation: the tree keeps the set of pawls
+ *  that are engaged (their rotor at a notch, with a rotating rotor to
+ *  its left), which changes only when a rotor moves, so a step visits
+ *  only the rotors that actually move.
+ *  @author Cheng Zhu
+ */
+class RotorTree {
+
+    /** A tree for the rotors in SLOTS (SLOTS[0] being the reflector and
+     *  SLOTS[SLOTS.length - 1] the fast rotor), at their current
+     *  settings, of which the rightmost PAWLS have pawls.  The settings
+     *  are kept packed (see PackedState) and stepped in that form; the
+     *  Rotors themselves are brought up to date only by store. */
+    RotorTree(Rotor[] slots, int pawls) {
+        _slots = slots;
+        _numSlots = slots.length;
+        _size = slots[0].size();
+        _fast = _numSlots - 1;
+        _firstPawl = _numSlots - pawls;
+        _wiring = new int[_numSlots][];
+        _inverse = new int[_numSlots][];
+        _packing = new PackedState.Packing(_size, _numSlots);
+        _state = _packing.newWords();
+        _rotates = new boolean[_numSlots];
+        for (int k = 0; k < _numSlots; k += 1) {
+            Rotor r = slots[k];
+            _wiring[k] = r.permutation().table();
+            _inverse[k] = r.permutation().inverseTable();
+            _rotates[k] = r.rotates();
+        }
+
+        int leaves = Math.max(1, _numSlots - 2);
+        int leafBase = Integer.highestOneBit(leaves);
+        _leafBase = leafBase < leaves ? 2 * leafBase : leafBase;
+        _nodes = new int[2 * _leafBase][];
+        for (int node = 1; node < 2 * _leafBase; node += 1) {
+            _nodes[node] = identity(_size);
+        }
+        _reflector = new int[_size];
+        _core = new int[_size];
+        _rootInverse = new int[_size];
+        _moved = new int[_numSlots];
+        _marked = new boolean[_numSlots];
+        _notchEvents = new long[_numSlots];
+        reset();
+    }
+
+    /** Reread the settings of all the rotors, which may have been changed
+     *  by Rotor.set since the last step. */
+    void reset() {
+        for (int k = 1; k < _numSlots; k += 1) {
+            _packing.set(_state, k, _slots[k].setting());
+        }
+        _fastPosn = posn(_fast);
+        _engaged.clear();
+        for (int k = _firstPawl; k < _numSlots; k += 1) {
+            rearm(k);
+        }
+        for (int k = 1; k < _fast; k += 1) {
+            shift(_wiring[k], posn(k), _nodes[_leafBase + k - 1]);
+        }
+        for (int node = _leafBase - 1; node >= 1; node -= 1) {
+            combine(node);
+        }
+        shift(_wiring[0], _slots[0].setting(), _reflector);
+        refreshCore();
+    }
+
+    /** Return a snapshot of the settings of all the rotors but the
+     *  reflector. */
+    PackedState snapshot() {
+        return new PackedState(_packing, _state.clone());
+    }
+
+    /** Set all the rotors but the reflector to the settings in STATE,
+     *  which must have been taken from a tree with the same number of
+     *  slots and alphabet size.  Only the leaves of rotors whose
+     *  settings change, and the nodes above them, are recomputed. */
+    void restore(PackedState state) {
+        if (!state.packing().sameAs(_packing)) {
+            throw error("snapshot is from a different kind of machine");
+        }
+        boolean treeChanged = false;
+        for (int k = 1; k < _numSlots; k += 1) {
+            treeChanged |= moveTo(k, state.setting(k));
+        }
+        _fastPosn = posn(_fast);
+        if (treeChanged) {
+            refreshCore();
+        }
+    }
+
+    /** Store the setting of each slot in POSN, indexed by slot. */
+    void settings(int[] posn) {
+        posn[0] = _slots[0].setting();
+        for (int k = 1; k < _numSlots; k += 1) {
+            posn[k] = posn(k);
+        }
+    }
+
+    /** Set the rotors but the reflector to the settings POSN, indexed by
+     *  slot, recomputing only what restore(PackedState) would. */
+    void restore(int[] posn) {
+        boolean treeChanged = false;
+        for (int k = 1; k < _numSlots; k += 1) {
+            treeChanged |= moveTo(k, posn[k]);
+        }
+        _fastPosn = posn(_fast);
+        if (treeChanged) {
+            refreshCore();
+        }
+    }
+
+    /** Set the Rotors in my slots to my current settings. */
+    void store() {
+        for (int k = 1; k < _numSlots; k += 1) {
+            _slots[k].set(posn(k));
+        }
+    }
+
+    /** Advance the rotors one step, exactly as the pawls of a machine
+     *  would: the fast rotor always moves, and a pawl that is engaged
+     *  moves both its own rotor and the one to its left.  Return the
+     *  number of pawls that were engaged. */
+    int step() {
+        int count = 0, engaged = 0;
+        for (int k = _engaged.nextSetBit(0); k >= 0;
+             k = _engaged.nextSetBit(k + 1)) {
+            count = mark(k, count);
+            count = mark(k - 1, count);
+            _notchEvents[k] += 1;
+            engaged += 1;
+        }
+        count = mark(_fast, count);
+        boolean treeChanged = false;
+        for (int i = 0; i < count; i += 1) {
+            int k = _moved[i];
+            _marked[k] = false;
+            if (!_rotates[k]) {
+                continue;
+            }
+            int p = posn(k) + 1;
+            _packing.set(_state, k, p == _size ? 0 : p);
+            rearm(k);
+            if (k != _fast) {
+                updateLeaf(k);
+                treeChanged = true;
+            }
+        }
+        _fastPosn = posn(_fast);
+        if (treeChanged) {
+            refreshCore();
+        }
+        return engaged;
+    }
+
+    /** Return the number of notch events of each slot since the last
+     *  call, indexed by slot: the steps in which the pawl of the slot
+     *  was engaged by the notch of its rotor. */
+    long[] takeNotchEvents() {
+        long[] result = _notchEvents.clone();
+        Arrays.fill(_notchEvents, 0);
+        return result;
+    }
+
+    /** Return the result of passing C (an index in 0 .. alphabet size-1)
+     *  through all the rotors, forward and back. */
+    int convert(int c) {
+        int p = _fastPosn;
+        int x = c + p;
+        if (x >= _size) {
+            x -= _size;
+        }
+        x = _wiring[_fast][x] - p;
+        x = _core[x < 0 ? x + _size : x] + p;
+        if (x >= _size) {
+            x -= _size;
+        }
+        x = _inverse[_fast][x] - p;
+        return x < 0 ? x + _size : x;
+    }
+
+    /** Add slot K, if it is not already there, to the first COUNT slots
+     *  of _moved, returning the new count. */
+    private int mark(int k, int count) {
+        if (!_marked[k]) {
+            _marked[k] = true;
+            _moved[count] = k;
+            count += 1;
+        }
+        return count;
+    }
+
+    /** Set slot K to setting P, updating its pawl and its leaf, and
+     *  return true iff the tree (but not yet _core) changed. */
+    private boolean moveTo(int k, int p) {
+        if (p == posn(k)) {
+            return false;
+        }
+        _packing.set(_state, k, p);
+        rearm(k);
+        if (k == _fast) {
+            return false;
+        }
+        updateLeaf(k);
+        return true;
+    }
+
+    /** Return the current setting of slot K. */
+    private int posn(int k) {
+        return _packing.get(_state, k);
+    }
+
+    /** Record whether the pawl of slot K is engaged. */
+    private void rearm(int k) {
+        if (k >= _firstPawl && k > 0) {
+            _engaged.set(k, _rotates[k - 1] && _slots[k].notchAt(posn(k)));
+        }
+    }
+
+    /** Recompute the leaf for slot K and the nodes above it. */
+    private void updateLeaf(int k) {
+        int node = _leafBase + k - 1;
+        shift(_wiring[k], posn(k), _nodes[node]);
+        for (node /= 2; node >= 1; node /= 2) {
+            combine(node);
+        }
+    }
+
+    /** Set internal NODE to the composition of its children, the left
+     *  (lower-numbered slots) applied after the right. */
+    private void combine(int node) {
+        int[] result = _nodes[node];
+        int[] left = _nodes[2 * node];
+        int[] right = _nodes[2 * node + 1];
+        for (int x = 0; x < _size; x += 1) {
+            result[x] = left[right[x]];
+        }
+    }
+
+    /** Recompute _core from the root of the tree and the reflector. */
+    private void refreshCore() {
+        int[] root = _nodes[1];
+        for (int x = 0; x < _size; x += 1) {
+            _rootInverse[root[x]] = x;
+        }
+        for (int x = 0; x < _size; x += 1) {
+            _core[x] = _rootInverse[_reflector[root[x]]];
+        }
+    }
+
+    /** Set RESULT to the map x -> WIRING(x + P) - P (mod its length). */
+    private static void shift(int[] wiring, int p, int[] result) {
+        int n = wiring.length;
+        for (int x = 0; x < n; x += 1) {
+            int y = x + p < n ? x + p : x + p - n;
+            y = wiring[y] - p;
+            result[x] = y < 0 ? y + n : y;
+        }
+    }
+
+    /** Return the identity table on N elements. */
+    private static int[] identity(int n) {
+        int[] result = new int[n];
+        for (int x = 0; x < n; x += 1) {
+            result[x] = x;
+        }
+        return result;
+    }
+
+    /** The Rotors in my slots. */
+    private final Rotor[] _slots;
+
+    /** Number of slots. */
+    private final int _numSlots;
+
+    /** Alphabet size. */
+    private final int _size;
+
+    /** Slot number of the fast rotor. */
+    private final int _fast;
+
+    /** Slot number of the leftmost pawl. */
+    private final int _firstPawl;
+
+    /** Permutation table of each slot's rotor in its 0 setting, shared
+     *  with the rotor's Permutation. */
+    private final int[][] _wiring;
+
+    /** Inverse of each entry of _wiring. */
+    private final int[][] _inverse;
+
+    /** Layout of _state. */
+    private final PackedState.Packing _packing;
+
+    /** Current settings of slots 1 .. _numSlots-1, packed. */
+    private final long[] _state;
+
+    /** Current setting of the fast rotor, unpacked. */
+    private int _fastPosn;
+
+    /** Whether each slot's rotor can move. */
+    private final boolean[] _rotates;
+
+    /** Slots whose pawls are engaged. */
+    private final BitSet _engaged = new BitSet();
+
+    /** Index of the first leaf in _nodes (a power of two). */
+    private final int _leafBase;
+
+    /** The tree: node 1 is the root, node K has children 2K and 2K+1,
+     *  and leaf _leafBase + J holds the map of slot J + 1. */
+    private final int[][] _nodes;
+
+    /** Map of the reflector at its setting. */
+    private final int[] _reflector;
+
+    /** Inverse of the map at the root of the tree. */
+    private final int[] _rootInverse;
+
+    /** The core map: inverse root, reflector, root. */
+    private final int[] _core;
+
+    /** Slots to move during a step. */
+    private final int[] _moved;
+
+    /** Whether each slot is among _moved. */
+    private final boolean[] _marked;
+
+    /** Notch events of each slot since the last takeNotchEvents. */
+    private final long[] _notchEvents;
+}
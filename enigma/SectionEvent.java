@@ -0,0 +1,32 @@
+package enigma;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** Flight Recorder event for one settings section of Main's input,
+ *  lasting from its settings line to the next one or the end of the
+ *  input.  Rotor settings and plugboards are keys, so they are not
+ *  recorded.  See enigma.jfc.
+ *  @author Cheng Zhu
+ */
+@Name("enigma.Section")
+@Label("Settings Section")
+@Category("Enigma")
+@Description("The conversion of the messages under one settings line")
+final class SectionEvent extends Event {
+
+    /** Names of the rotors, from the reflector to the fast rotor. */
+    @Label("Rotors")
+    String rotors;
+
+    /** Number of message lines converted. */
+    @Label("Lines")
+    int lines;
+
+    /** Number of characters converted. */
+    @Label("Characters")
+    long characters;
+}
@@ -1,6 +1,7 @@
 package enigma;
 
 import java.util.HashMap;
+import java.util.Scanner;
 
 /** Utility definitions for use in unit tests.
  *  @author P. N. Hilfinger and Cheng Zhu
@@ -143,4 +144,65 @@ class TestUtils {
         NAVALZ_MAP.put("Beta", "TMFZKWDOJYXQCRNESUBLAHGVIP");
         NAVALZ_MAP.put("Gamma", "EGTPLBOVFSINCUJZDXMRQAYWHK");
     }
+
+    /** A small configuration with three slots and two pawls, using the
+     *  naval reflectors and rotors I to V. */
+    static final String SMALL_CONFIG =
+        UPPER_STRING + " 3 2\n"
+        + "B R " + NAVALA.get("B") + "\n"
+        + "C R " + NAVALA.get("C") + "\n"
+        + "I MQ " + NAVALA.get("I") + "\n"
+        + "II ME " + NAVALA.get("II") + "\n"
+        + "III MV " + NAVALA.get("III") + "\n"
+        + "IV MJ " + NAVALA.get("IV") + "\n"
+        + "V MZ " + NAVALA.get("V") + "\n";
+
+    /** The naval configuration: five slots and three pawls, with the
+     *  thin reflectors written as B and C. */
+    static final String NAVAL_CONFIG =
+        UPPER_STRING + " 5 3\n"
+        + "B R " + NAVALA.get("B") + "\n"
+        + "C R " + NAVALA.get("C") + "\n"
+        + "Beta N " + NAVALA.get("Beta") + "\n"
+        + "Gamma N " + NAVALA.get("Gamma") + "\n"
+        + "I MQ " + NAVALA.get("I") + "\n"
+        + "II ME " + NAVALA.get("II") + "\n"
+        + "III MV " + NAVALA.get("III") + "\n"
+        + "IV MJ " + NAVALA.get("IV") + "\n"
+        + "V MZ " + NAVALA.get("V") + "\n";
+
+    /** Some English text, in upper case without spaces. */
+    static final String ENGLISH =
+        "THEMACHINEWASUSEDTHROUGHOUTTHEWARBYALLBRANCHESOFTHEMILITARY"
+        + "ANDWASBELIEVEDTOBESECUREBECAUSETHENUMBEROFPOSSIBLESETTINGS"
+        + "WASSOLARGETHATNOONECOULDHOPETOTRYTHEMALLBYHANDHOWEVERTHE"
+        + "CODEBREAKERSFOUNDTHATTHESTRUCTUREOFTHEMACHINEANDTHEHABITS"
+        + "OFITSOPERATORSMADETHEPROBLEMFARSMALLERTHANITFIRSTAPPEARED"
+        + "ANDWITHTHEHELPOFCLEVERMACHINESTHEYREADTHEMESSAGESDAILY";
+
+    /** Return the configuration described by TEXT. */
+    static Configuration config(String text) {
+        return new Configuration(new Scanner(text));
+    }
+
+    /** Return the indices of the characters of TEXT in ALPHA. */
+    static int[] indices(String text, Alphabet alpha) {
+        int[] result = new int[text.length()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = alpha.toInt(text.charAt(i));
+        }
+        return result;
+    }
+
+    /** Return ENGLISH encrypted by a machine from CONFIG with ROTORS at
+     *  SETTING and plugboard PLUGBOARD (in cycle notation), as
+     *  indices. */
+    static int[] encrypt(Configuration config, String[] rotors,
+                         String setting, String plugboard) {
+        Machine mach = config.newMachine();
+        mach.insertRotors(rotors);
+        mach.setRotors(setting);
+        mach.setPlugboard(new Permutation(plugboard, config.alphabet()));
+        return indices(mach.convert(ENGLISH), config.alphabet());
+    }
 }
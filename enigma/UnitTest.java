@@ -16,7 +16,21 @@ public class UnitTest {
         }
         System.exit(textui.runClasses(PermutationTest.class,
                 MovingRotorTest.class,
-                MachineTest.class));
+                MachineTest.class,
+                KeySearchTest.class,
+                BombeTest.class,
+                PlugboardSolverTest.class,
+                CycleCatalogTest.class,
+                CoordinatorTest.class,
+                PeriodAnalysisTest.class,
+                KeystreamCacheTest.class,
+                RotorCompilerTest.class,
+                AlphabetTest.class,
+                DifferentialTest.class,
+                MetricsTest.class,
+                LineInputTest.class,
+                CheckpointTest.class,
+                BatchTest.class));
     }
 
 }
@@ -0,0 +1,181 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.EnigmaException.*;
+
+/** A key-search worker process, run by a Coordinator.  The worker
+ *  connects to the coordinator's port on this host, sends its process
+ *  id, by which the coordinator can kill it if it hangs, and receives the
+ *  job: the text of a configuration file, the plugboard, the ciphertext
+ *  and the number of candidates to keep.  It then repeatedly receives a
+ *  lease (a range of keys), searches it, and replies with the number of
+ *  keys tried and the best candidates found, until told it is done.
+ *
+ *  The messages of the protocol are written and read by the static
+ *  methods here, which the Coordinator shares.
+ *  @author Cheng Zhu
+ */
+public final class Worker {
+
+    /** Run a worker for the coordinator listening on port ARGS[0] of
+     *  this host. */
+    public static void main(String... args) {
+        try {
+            if (args.length != 1 || !args[0].matches("[1-9][0-9]*")) {
+                throw error("Usage: java enigma.Worker PORT");
+            }
+            try (Socket socket =
+                     new Socket(InetAddress.getLoopbackAddress(),
+                                Integer.parseInt(args[0]))) {
+                DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(socket.getInputStream()));
+                DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(socket.getOutputStream()));
+                writeHello(out);
+                new Worker(in, out).run();
+                return;
+            } catch (IOException excp) {
+                throw error("lost coordinator: %s", excp.getMessage());
+            }
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A worker that reads its job and leases from IN and writes its
+     *  results to OUT. */
+    Worker(DataInputStream in, DataOutputStream out) {
+        _in = in;
+        _out = out;
+    }
+
+    /** Read my job, then search leases until told I am done. */
+    void run() throws IOException {
+        Configuration config =
+            new Configuration(new Scanner(readText(_in)));
+        Permutation plugboard =
+            PermutationStore.get(readText(_in), config.alphabet());
+        int[] ciphertext = new int[_in.readInt()];
+        for (int i = 0; i < ciphertext.length; i += 1) {
+            ciphertext[i] = _in.readInt();
+        }
+        int best = _in.readInt();
+        Keyspace keys = new Keyspace(config);
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        while (_in.readByte() == LEASE) {
+            int lease = _in.readInt();
+            long from = _in.readLong(), to = _in.readLong();
+            KeySearch search =
+                new KeySearch(keys, plugboard, ciphertext, best);
+            List<Candidate> found = search.search(from, to, pool);
+            writeResult(_out, lease, search.trials(), found);
+            _out.flush();
+        }
+    }
+
+    /** Write to OUT the first message of a worker: its process id. */
+    static void writeHello(DataOutputStream out) throws IOException {
+        out.writeLong(ProcessHandle.current().pid());
+        out.flush();
+    }
+
+    /** Return the process id of a worker read from IN. */
+    static long readHello(DataInputStream in) throws IOException {
+        return in.readLong();
+    }
+
+    /** Write the job described by the configuration text CONFIG, the
+     *  plugboard PLUGBOARD (in cycle notation), CIPHERTEXT (as alphabet
+     *  indices) and BEST to OUT. */
+    static void writeJob(DataOutputStream out, String config,
+                         String plugboard, int[] ciphertext, int best)
+        throws IOException {
+        writeText(out, config);
+        writeText(out, plugboard);
+        out.writeInt(ciphertext.length);
+        for (int c : ciphertext) {
+            out.writeInt(c);
+        }
+        out.writeInt(best);
+    }
+
+    /** Write to OUT the lease numbered LEASE, of keys FROM .. TO-1. */
+    static void writeLease(DataOutputStream out, int lease, long from,
+                           long to) throws IOException {
+        out.writeByte(LEASE);
+        out.writeInt(lease);
+        out.writeLong(from);
+        out.writeLong(to);
+    }
+
+    /** Write to OUT the message that there are no more leases. */
+    static void writeDone(DataOutputStream out) throws IOException {
+        out.writeByte(DONE);
+    }
+
+    /** Write to OUT the result of lease LEASE: TRIALS keys tried and the
+     *  candidates FOUND. */
+    static void writeResult(DataOutputStream out, int lease, long trials,
+                            List<Candidate> found) throws IOException {
+        out.writeInt(lease);
+        out.writeLong(trials);
+        out.writeInt(found.size());
+        for (Candidate candidate : found) {
+            writeCandidate(out, candidate);
+        }
+    }
+
+    /** Write CANDIDATE to OUT. */
+    static void writeCandidate(DataOutputStream out, Candidate candidate)
+        throws IOException {
+        out.writeUTF(String.join(" ", candidate.rotors()));
+        out.writeUTF(candidate.setting());
+        out.writeDouble(candidate.score());
+    }
+
+    /** Return the candidate read from IN. */
+    static Candidate readCandidate(DataInputStream in) throws IOException {
+        String[] rotors = in.readUTF().split(" ");
+        String setting = in.readUTF();
+        return new Candidate(rotors, setting, in.readDouble());
+    }
+
+    /** Write TEXT, of any length, to OUT. */
+    private static void writeText(DataOutputStream out, String text)
+        throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** Return the text written by writeText read from IN. */
+    private static String readText(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Tag of a lease message. */
+    private static final byte LEASE = 1;
+
+    /** Tag of the message that there are no more leases. */
+    private static final byte DONE = 0;
+
+    /** Where my job and leases come from. */
+    private final DataInputStream _in;
+
+    /** Where my results go. */
+    private final DataOutputStream _out;
+}